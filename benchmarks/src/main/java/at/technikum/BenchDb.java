@@ -0,0 +1,48 @@
+package at.technikum;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Random;
+
+// 为 benchmark 准备一个带 N 道题的临时 SQLite 文件（BankGenerator 生成，可复现）
+final class BenchDb {
+
+    private static final String[] WORDS = {
+            "class", "object", "method", "variable", "loop", "array", "interface", "inheritance",
+            "exception", "thread", "stream", "lambda", "generic", "package", "compile", "runtime",
+            "which", "what", "explain", "describe", "difference", "between", "example", "keyword"
+    };
+
+    private BenchDb() {}
+
+    static Path seed(int questions, long seed) throws IOException, SQLException {
+        Path file = Files.createTempFile("exam-bench-", ".db");
+        Files.delete(file);
+        file.toFile().deleteOnExit();
+
+        BankGenerator.Options o = new BankGenerator.Options();
+        o.out = file;
+        o.questions = questions;
+        o.categories = 5;
+        o.seed = seed;
+        o.quiet = true;
+        BankGenerator.generate(o);
+        return file;
+    }
+
+    static Connection open(Path file) throws SQLException {
+        return Database.open(file);
+    }
+
+    static String sentence(Random rnd, int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(WORDS[rnd.nextInt(WORDS.length)]);
+        }
+        return sb.append('?').toString();
+    }
+}
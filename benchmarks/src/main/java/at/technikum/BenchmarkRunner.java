@@ -0,0 +1,31 @@
+package at.technikum;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+// java -jar benchmarks/target/benchmarks.jar [JMH 参数]
+// 默认把结果写成 JSON：bench-results/jmh-<时间>.json，方便每次运行之间对比
+public class BenchmarkRunner {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        ChainedOptionsBuilder opts = new OptionsBuilder().parent(cmd);
+
+        if (!cmd.getResult().hasValue()) {
+            Path dir = Path.of(System.getProperty("bench.out", "bench-results"));
+            Files.createDirectories(dir);
+            String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            Path out = dir.resolve("jmh-" + stamp + ".json");
+            opts.resultFormat(ResultFormatType.JSON).result(out.toString());
+            System.out.println("JMH results -> " + out.toAbsolutePath());
+        }
+        new Runner(opts.build()).run();
+    }
+}
@@ -0,0 +1,70 @@
+package at.technikum;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// 带约束组卷：每个分类 10 道（其中 2 道 Any），总分区间 + 时长 + 每主题上限 + 避开最近 20 份试卷
+// BankIndex 在 setUp 里建好，测的是求解本身
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlueprintSolverBenchmark {
+
+    @Param({"10000", "100000"})
+    public int bankSize;
+
+    private final BlueprintSolver solver = new BlueprintSolver();
+    private Path file;
+    private Connection conn;
+    private final Map<String, Integer> categoryIds = new HashMap<>();
+    private BlueprintSolver.Blueprint blueprint;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = BenchDb.seed(bankSize, 42);
+        conn = BenchDb.open(file);
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT id, name FROM Categories")) {
+            while (rs.next()) categoryIds.put(rs.getString("name"), rs.getInt("id"));
+        }
+        blueprint = new BlueprintSolver.Blueprint();
+        for (String cat : categoryIds.keySet()) {
+            Map<String, Integer> cells = new LinkedHashMap<>();
+            cells.put("Easy", 3);
+            cells.put("Medium", 3);
+            cells.put("Hard", 2);
+            cells.put(BlueprintSolver.ANY, 2);
+            blueprint.cells.put(cat, cells);
+        }
+        blueprint.minPoints = 100;
+        blueprint.maxPoints = 102;
+        blueprint.maxMinutes = 205;
+        blueprint.maxPerTopic = 3;
+        blueprint.avoidLastExams = 20;
+        BankIndex.current(conn);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        conn.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public BlueprintSolver.Result solve() throws Exception {
+        BlueprintSolver.Result r = solver.solve(conn, categoryIds, blueprint);
+        if (!r.feasible()) throw new IllegalStateException(String.join("; ", r.problems));
+        return r;
+    }
+}
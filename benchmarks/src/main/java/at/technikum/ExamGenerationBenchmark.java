@@ -0,0 +1,60 @@
+package at.technikum;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// 每个 分类 × 难度 单元一次 ORDER BY RANDOM() 查询
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExamGenerationBenchmark {
+
+    @Param({"1000", "10000"})
+    public int bankSize;
+
+    @Param({"2"})
+    public int perCell;
+
+    private final ExamGenerator generator = new ExamGenerator();
+    private Path file;
+    private Connection conn;
+    private final Map<String, Integer> categoryIds = new HashMap<>();
+    private final Map<String, Map<String, Integer>> selections = new LinkedHashMap<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = BenchDb.seed(bankSize, 42);
+        conn = BenchDb.open(file);
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT id, name FROM Categories")) {
+            while (rs.next()) categoryIds.put(rs.getString("name"), rs.getInt("id"));
+        }
+        for (String cat : categoryIds.keySet()) {
+            Map<String, Integer> diffs = new LinkedHashMap<>();
+            for (String d : ExamGenerator.DIFFICULTIES) diffs.put(d, perCell);
+            selections.put(cat, diffs);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        conn.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public ExamGenerator.Exam generate() throws Exception {
+        return generator.generate(conn, categoryIds, selections);
+    }
+}
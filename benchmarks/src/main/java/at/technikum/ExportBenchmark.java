@@ -0,0 +1,61 @@
+package at.technikum;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 同一份试卷三种导出的成本对比：PDF（排版 + 保存）/ HTML / Markdown（流式写出）
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportBenchmark {
+
+    @Param({"30", "1000"})
+    public int questions;
+
+    private List<ExamQuestionItem> items;
+    private List<String> lines;
+    private final ExamExporter exporter = new ExamExporter(null, null);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random rnd = new Random(42);
+        items = new ArrayList<>();
+        for (int i = 1; i <= questions; i++) {
+            items.add(new ExamQuestionItem(i, BenchDb.sentence(rnd, 10 + rnd.nextInt(40)), "Easy", "Java"));
+        }
+        lines = ExamGenerator.toLines(items);
+    }
+
+    @Benchmark
+    public void pdf() throws Exception {
+        PDFGenerator.write(OutputStream.nullOutputStream(), "Benchmark", lines);
+    }
+
+    @Benchmark
+    public void html() throws Exception {
+        export(ExamExporter.Format.HTML);
+    }
+
+    @Benchmark
+    public void markdown() throws Exception {
+        export(ExamExporter.Format.MARKDOWN);
+    }
+
+    private void export(ExamExporter.Format format) throws Exception {
+        try (Writer w = new BufferedWriter(new OutputStreamWriter(OutputStream.nullOutputStream(), StandardCharsets.UTF_8))) {
+            exporter.write(w, format, "Benchmark", items.iterator());
+        }
+    }
+}
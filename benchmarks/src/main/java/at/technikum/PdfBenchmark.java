@@ -0,0 +1,84 @@
+package at.technikum;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PdfBenchmark {
+
+    private static final float FONT_SIZE = 12f;
+    private static final float WIDTH = 495f;
+
+    @Param({"10", "100", "1000"})
+    public int questions;
+
+    private String paragraph;
+    private String longWord;
+    private List<String> lines;
+    private List<String> answers;
+    private PDDocument doc;
+    private PdfFonts.Lease font;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Random rnd = new Random(42);
+        paragraph = BenchDb.sentence(rnd, 120);
+        longWord = "x".repeat(400);
+        lines = new ArrayList<>();
+        answers = new ArrayList<>();
+        for (int i = 1; i <= questions; i++) {
+            lines.add(i + ". " + BenchDb.sentence(rnd, 10 + rnd.nextInt(40)));
+            answers.add("Answer: " + BenchDb.sentence(rnd, 5 + rnd.nextInt(20)) + "\nPoints: " + (1 + rnd.nextInt(3)));
+        }
+        doc = new PDDocument();
+        font = PdfFonts.shared().lease(doc);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        font.close();
+        doc.close();
+    }
+
+    @Benchmark
+    public List<String> wrapText() throws Exception {
+        return PDFGenerator.wrapText(paragraph, font, FONT_SIZE, WIDTH);
+    }
+
+    @Benchmark
+    public List<String> breakLongWord() throws Exception {
+        return PDFGenerator.breakLongWord(longWord, font, FONT_SIZE, WIDTH);
+    }
+
+    // 完整文档：排版 + 保存（嵌入字体时包括子集化；字体程序在多次调用之间复用）
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void saveDocument() throws Exception {
+        PDFGenerator.write(OutputStream.nullOutputStream(), "Benchmark", lines);
+    }
+
+    // 学生版 + 教师版：分两次排（各排各的）和一次排出两份
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void editionsSeparately() throws Exception {
+        PDFGenerator.write(OutputStream.nullOutputStream(), "Benchmark", lines);
+        PDFGenerator.writeEditions(null, OutputStream.nullOutputStream(), "Benchmark", lines, answers, null);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void editionsSinglePass() throws Exception {
+        PDFGenerator.writeEditions(OutputStream.nullOutputStream(), OutputStream.nullOutputStream(), "Benchmark", lines, answers, null);
+    }
+}
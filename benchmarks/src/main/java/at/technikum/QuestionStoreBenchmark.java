@@ -0,0 +1,86 @@
+package at.technikum;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QuestionStoreBenchmark {
+
+    @Param({"1000", "10000"})
+    public int bankSize;
+
+    private final QuestionStore store = new QuestionStore();
+    private Path file;
+    private Connection conn;
+    private int maxId;
+    private String asOf;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = BenchDb.seed(bankSize, 42);
+        conn = BenchDb.open(file);
+        maxId = store.findAll(conn).stream().mapToInt(q -> q.id).max().orElse(1);
+        // 历史中间的一个时刻：一部分题还没建，一部分题还停在旧版本
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT created_at FROM QuestionVersions ORDER BY created_at"
+                     + " LIMIT 1 OFFSET (SELECT COUNT(*) / 2 FROM QuestionVersions)")) {
+            asOf = rs.next() ? rs.getString(1) : QuestionStore.timestamp(Instant.now());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        conn.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Question> findAll() throws Exception {
+        return store.findAll(conn);
+    }
+
+    @Benchmark
+    public List<QuestionStore.QuestionVersion> findVersions() throws Exception {
+        return store.findVersions(conn, 1 + ThreadLocalRandom.current().nextInt(maxId));
+    }
+
+    // 整个题库在 asOf 时的样子：一条窗口查询流式读出
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int snapshotAsOf() throws Exception {
+        int[] sum = {0};
+        store.streamAsOf(conn, asOf, null, q -> sum[0] += q.version());
+        return sum[0];
+    }
+
+    // 对照：每道题各查一次版本历史，再挑 asOf 之前的最后一个
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int snapshotPerQuestion() throws Exception {
+        int sum = 0;
+        for (int id = 1; id <= maxId; id++) {
+            for (QuestionStore.QuestionVersion v : store.findVersions(conn, id)) {
+                if (v.createdAt != null && v.createdAt.compareTo(asOf) <= 0) {
+                    sum += v.version;
+                    break;
+                }
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,66 @@
+package at.technikum;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 主表过滤栏：200k 行上按分类 + 难度求交、全表文字匹配、接着打字（只扫上次命中的行）
+// 一帧 16 ms；每次调用前换一个分类，保证不是直接拿上次的结果
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TableFilterBenchmark {
+
+    static final int CATEGORIES = 40;
+
+    @Param({"200000"})
+    public int rows;
+
+    private final TableIndex index = new TableIndex();
+    private int flip;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random rnd = new Random(42);
+        TableIndex.CategorySets sets = new TableIndex.CategorySets(id -> "Category " + id);
+        int[] buf = new int[3];
+        for (int i = 1; i <= rows; i++) {
+            int n = 1 + rnd.nextInt(3);
+            for (int k = 0; k < n; k++) buf[k] = 1 + rnd.nextInt(CATEGORIES);
+            index.add(new QuestionRow(i, ExamGenerator.DIFFICULTIES.get(rnd.nextInt(3)),
+                    BenchDb.sentence(rnd, 10 + rnd.nextInt(30)), sets.of(buf, n)));
+        }
+    }
+
+    private int nextCategory() {
+        return 1 + (flip++ & 1);
+    }
+
+    @Benchmark
+    public BitSet categoryAndDifficulty() {
+        return index.match(new TableIndex.Filter(nextCategory(), (byte) 1, ""));
+    }
+
+    @Benchmark
+    public BitSet textAllRows() {
+        index.match(new TableIndex.Filter(0, (byte) -1, ""));
+        return index.match(new TableIndex.Filter(0, (byte) -1, "lamb"));
+    }
+
+    @Benchmark
+    public BitSet textInCategory() {
+        return index.match(new TableIndex.Filter(nextCategory(), (byte) -1, "lamb"));
+    }
+
+    // "lam" -> "lamb"：第二次只看第一次命中的行
+    @Benchmark
+    public BitSet typeOneMoreLetter() {
+        index.match(new TableIndex.Filter(0, (byte) -1, "lam"));
+        return index.match(new TableIndex.Filter(0, (byte) -1, "lamb"));
+    }
+}
@@ -0,0 +1,21 @@
+#!/usr/bin/env bash
+# Fast desktop start with an AppCDS archive (JDK 19+).
+#
+#   mvn -Pfast-start package -DskipTests
+#   scripts/fast-start.sh [App arguments...]
+#
+# The first run records the classes it loads and writes target/app.jsa on exit.
+# Later runs map that archive instead of loading and verifying the classes again.
+# The JVM recreates the archive by itself when the JDK or the jar changes.
+# Extra JVM options can be passed in JAVA_OPTS (e.g. -Dexam.db=...).
+set -euo pipefail
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+JAR=$(ls "$ROOT"/target/ExamManagerandGenerator-*.jar 2>/dev/null | head -n 1 || true)
+if [[ -z "$JAR" || ! -d "$ROOT/target/lib" ]]; then
+  echo "run 'mvn -Pfast-start package -DskipTests' first" >&2
+  exit 1
+fi
+
+exec java -XX:+AutoCreateSharedArchive -XX:SharedArchiveFile="$ROOT/target/app.jsa" \
+     ${JAVA_OPTS:-} -jar "$JAR" "$@"
@@ -0,0 +1,41 @@
+#!/usr/bin/env bash
+# Load test for the embedded exam server (App --serve).
+#
+#   scripts/loadtest.sh [base-url] [requests] [concurrency] [category]
+#
+# Fires POST /api/exams (JSON) and GET /api/questions in parallel with curl,
+# reports requests/second and the server-side latency summary from /api/metrics.
+set -euo pipefail
+
+BASE=${1:-http://localhost:8080}
+REQUESTS=${2:-2000}
+CONCURRENCY=${3:-32}
+CATEGORY=${4:-Java}
+
+BODY=$(printf '{"name":"Load test","blueprint":{"%s":{"Easy":2,"Medium":2,"Hard":1}}}' "$CATEGORY")
+export BASE BODY CATEGORY
+
+one() {
+  if (( $1 % 2 == 0 )); then
+    curl -s -o /dev/null -w '%{http_code}\n' -X POST -H 'Content-Type: application/json' \
+         --data "$BODY" "$BASE/api/exams?format=json"
+  else
+    curl -s -o /dev/null -w '%{http_code}\n' -G --data-urlencode "category=$CATEGORY" \
+         --data-urlencode "q=a" "$BASE/api/questions?limit=50"
+  fi
+}
+export -f one
+
+curl -sf "$BASE/api/health" > /dev/null || { echo "server not reachable at $BASE" >&2; exit 1; }
+
+start=$(date +%s.%N)
+codes=$(seq 1 "$REQUESTS" | xargs -P "$CONCURRENCY" -I{} bash -c 'one {}')
+end=$(date +%s.%N)
+
+ok=$(grep -c '^200$' <<< "$codes" || true)
+printf 'requests: %d  ok: %d  concurrency: %d\n' "$REQUESTS" "$ok" "$CONCURRENCY"
+awk -v s="$start" -v e="$end" -v n="$REQUESTS" \
+    'BEGIN { printf "elapsed: %.2f s  throughput: %.1f req/s\n", e - s, n / (e - s) }'
+echo
+echo "server-side latency (seconds):"
+curl -s "$BASE/api/metrics" | grep -E '^exam_http_(exams|questions)_seconds' || true
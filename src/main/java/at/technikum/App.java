@@ -2,12 +2,86 @@ package at.technikum;
 
 import javafx.application.Application;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 public class App {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        Startup.mark("main");
+
+        if (args.length > 0 && args[0].equals("--generate-bank")) {
+            BankGenerator.main(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--check-query-plans")) {
+            QueryAudit.main(args);
+            return;
+        }
+        if (args.length > 0 && args[0].startsWith("--sync=")) {
+            BankSync.main(args);
+            return;
+        }
+        if (args.length > 0 && (args[0].equals("--backup") || args[0].equals("--list-backups") || args[0].startsWith("--restore="))) {
+            DatabaseBackup.main(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--write-stress")) {
+            WriteStress.main(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--print-tables")) {
+            Database.printTables();
+            return;
+        }
+        if (args.length > 0 && (args[0].equals("--duplicate-report") || args[0].startsWith("--duplicate-report="))) {
+            SimilarityIndex.main(args);
+            return;
+        }
+        boolean serve = false;
+
+        for (String a : args) {
+            if (a.equals("--serve") || a.startsWith("--serve=")) serve = true;
+            if (a.equals("--metrics")) Metrics.enable();
+            if (a.equals("--audit-sql")) {
+                QueryAudit.enable();
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.print(QueryAudit.report()), "sql-audit"));
+            }
+            if (a.equals("--jfr")) ExamEvents.startRecording(null);
+            if (a.startsWith("--jfr=")) ExamEvents.startRecording(a.substring("--jfr=".length()));
+            if (a.startsWith("--metrics-dump=")) {
+                Metrics.enable();
+                dumpMetricsOnExit(a.substring("--metrics-dump=".length()));
+            }
+        }
 
-        Database.printTables();
+        DatabaseBackup.scheduleFromProperties();
 
+        if (serve) {
+            ExamServer.main(args);
+            return;
+        }
 
+        // 不在这里碰数据库：连接、迁移、缓存都由 UiApp 在窗口出来之后在后台预热
         Application.launch(UiApp.class, args);
     }
+
+    // --metrics-dump=json | prometheus，可选 ":文件路径"，否则打印到 stdout
+    private static void dumpMetricsOnExit(String spec) {
+        int colon = spec.indexOf(':');
+        String format = colon < 0 ? spec : spec.substring(0, colon);
+        String file = colon < 0 ? null : spec.substring(colon + 1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            String out = format.equalsIgnoreCase("prometheus") ? Metrics.toPrometheus() : Metrics.toJson();
+            if (file == null) {
+                System.out.print(out);
+                return;
+            }
+            try {
+                Files.writeString(Path.of(file), out);
+            } catch (IOException e) {
+                System.err.println("Failed to write metrics: " + e.getMessage());
+            }
+        }, "metrics-dump"));
+    }
 }
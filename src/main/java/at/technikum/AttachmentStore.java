@@ -0,0 +1,80 @@
+package at.technikum;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+// 内容寻址的附件存储（表 Attachments，见 V5 迁移）：同样的图片只存一份，按 SHA-256 引用
+// 题干里写 [[image:<hash>]]，导出 PDF 时在那个位置画图；公式先渲染成图片再附上
+public class AttachmentStore {
+
+    public static final Pattern MARKER = Pattern.compile("\\[\\[image:([0-9a-f]{64})]]");
+
+    static final String INSERT_SQL = """
+            INSERT OR IGNORE INTO Attachments (hash, mime, width, height, size, data)
+            VALUES (?, ?, ?, ?, ?, ?)
+            """;
+    static final String DATA_SQL = "SELECT data FROM Attachments WHERE hash = ?";
+
+    // 存一张图片（PNG / JPEG / GIF / BMP），返回它的 hash；已经有同样内容的就直接返回
+    public String put(Connection c, byte[] data) throws SQLException, IOException {
+        long t = Metrics.start();
+        try {
+            String mime = mimeOf(data);
+            if (mime == null) throw new IOException("Unsupported image format (use PNG, JPEG, GIF or BMP)");
+            BufferedImage img = ImageIO.read(new ByteArrayInputStream(data));
+            if (img == null) throw new IOException("Image cannot be decoded");
+            String hash = hash(data);
+            PreparedStatement ps = StatementCache.of(c).prepare(INSERT_SQL);
+            ps.setString(1, hash);
+            ps.setString(2, mime);
+            ps.setInt(3, img.getWidth());
+            ps.setInt(4, img.getHeight());
+            ps.setInt(5, data.length);
+            ps.setBytes(6, data);
+            Metrics.count(ps.executeUpdate() > 0 ? "attach.stored" : "attach.deduplicated");
+            return hash;
+        } finally {
+            Metrics.stop("attach.put", t);
+        }
+    }
+
+    // 找不到返回 null
+    public byte[] get(Connection c, String hash) throws SQLException {
+        PreparedStatement ps = StatementCache.of(c).prepare(DATA_SQL);
+        ps.setString(1, hash);
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getBytes(1) : null;
+        }
+    }
+
+    public static String marker(String hash) {
+        return "[[image:" + hash + "]]";
+    }
+
+    static String hash(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // 按文件头判断格式
+    static String mimeOf(byte[] d) {
+        if (d.length > 8 && (d[0] & 0xFF) == 0x89 && d[1] == 'P' && d[2] == 'N' && d[3] == 'G') return "image/png";
+        if (d.length > 3 && (d[0] & 0xFF) == 0xFF && (d[1] & 0xFF) == 0xD8) return "image/jpeg";
+        if (d.length > 6 && d[0] == 'G' && d[1] == 'I' && d[2] == 'F') return "image/gif";
+        if (d.length > 2 && d[0] == 'B' && d[1] == 'M') return "image/bmp";
+        return null;
+    }
+}
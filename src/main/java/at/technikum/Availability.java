@@ -0,0 +1,77 @@
+package at.technikum;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 每个 分类 × 难度 有多少道题（CategoryDifficultyCounts，由 V7 的触发器维护）
+//   组卷对话框用它显示可用数量、给数量框封顶；点 OK 前用它校验整个蓝图，
+//   一次读完这张小表（每个分类最多几行），不用对每个单元格跑抽题查询
+//   这里的数量是上限：去重、曝光加权、约束求解都只会让能抽到的更少
+public final class Availability {
+
+    static final String COUNTS_SQL = "SELECT category_id, difficulty, n FROM CategoryDifficultyCounts WHERE n > 0";
+
+    private final Map<Integer, Map<String, Integer>> counts;
+
+    private Availability(Map<Integer, Map<String, Integer>> counts) {
+        this.counts = counts;
+    }
+
+    public static Availability read(Connection c) throws SQLException {
+        long t = Metrics.start();
+        Map<Integer, Map<String, Integer>> counts = new HashMap<>();
+        PreparedStatement ps = StatementCache.of(c).prepare(COUNTS_SQL);
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                counts.computeIfAbsent(rs.getInt(1), k -> new HashMap<>()).put(rs.getString(2), rs.getInt(3));
+            }
+        } finally {
+            Metrics.stop("availability.read", t);
+        }
+        return new Availability(counts);
+    }
+
+    public int of(int categoryId, String difficulty) {
+        return counts.getOrDefault(categoryId, Map.of()).getOrDefault(difficulty, 0);
+    }
+
+    // Any 能用的题：三种标准难度的总和（别的写法抽题时用不上）
+    public int total(int categoryId) {
+        int n = 0;
+        for (String d : ExamGenerator.DIFFICULTIES) n += of(categoryId, d);
+        return n;
+    }
+
+    // 蓝图里哪些地方题不够；空列表 = 至少数量上没问题
+    // selections: 分类名 -> (难度 / Any -> 数量)；categoryIds: 分类名 -> id
+    public List<String> shortfalls(Map<String, Integer> categoryIds, Map<String, Map<String, Integer>> selections) {
+        List<String> problems = new ArrayList<>();
+        for (var entry : selections.entrySet()) {
+            String cat = entry.getKey();
+            Integer catId = categoryIds.get(cat);
+            int requested = 0;
+            for (var cell : entry.getValue().entrySet()) {
+                int need = cell.getValue() == null ? 0 : cell.getValue();
+                if (need <= 0) continue;
+                requested += need;
+                if (catId == null) {
+                    problems.add(cat + ": unknown category");
+                    break;
+                }
+                if (BlueprintSolver.ANY.equals(cell.getKey())) continue;
+                int have = of(catId, cell.getKey());
+                if (need > have) problems.add(cat + " / " + cell.getKey() + ": " + need + " requested, " + have + " available");
+            }
+            if (catId != null && requested > total(catId)) {
+                problems.add(cat + ": " + requested + " requested in total, " + total(catId) + " available");
+            }
+        }
+        return problems;
+    }
+}
@@ -0,0 +1,300 @@
+package at.technikum;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+// 合成题库生成器：可复现（同一个 seed 得到同一个库），用于压测 / benchmark / 内存测试
+// 用法：App --generate-bank --out=big.db --questions=1000000 --seed=42
+public class BankGenerator {
+
+    private static final String[] SUBJECTS = {
+            "Java", "OOP", "Databases", "Networks", "Algorithms", "Operating Systems",
+            "Web", "Security", "Testing", "Math", "Statistics", "Software Engineering"
+    };
+    private static final String[] TOPICS = {
+            "basics", "syntax", "collections", "inheritance", "generics", "exceptions", "streams",
+            "concurrency", "io", "sql", "indexes", "transactions", "sorting", "graphs", "complexity",
+            "http", "tcp", "crypto", "unit tests", "design patterns"
+    };
+    private static final String[] TEMPLATES = {
+            "Which keyword is used in %s to %s?",
+            "Explain the difference between %s and %s.",
+            "What happens when %s is used with %s?",
+            "Describe how %s handles %s.",
+            "Give an example of %s used together with %s.",
+            "Why is %s preferred over %s in most cases?"
+    };
+    private static final String[] TERMS = {
+            "a class", "an interface", "a subclass", "an abstract method", "a static field", "a loop",
+            "an array", "a list", "a map", "a thread", "a lock", "a transaction", "an index",
+            "a primary key", "a foreign key", "a join", "a stream", "a lambda", "an exception",
+            "a socket", "a packet", "a hash", "a tree", "a queue", "a stack", "recursion",
+            "create a subclass", "override a method", "declare a constant", "handle an error",
+            "close a resource", "compare two objects", "sort a collection", "start a thread"
+    };
+    private static final String[] DIFFS = {"Easy", "Easy", "Medium", "Medium", "Hard"};
+    private static final DateTimeFormatter TS = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss", Locale.ROOT);
+    private static final LocalDateTime EPOCH = LocalDateTime.of(2024, 1, 1, 8, 0);
+
+    public static final class Options {
+        public Path out = Path.of("exam_manager_generated.db");
+        public int questions = 10_000;
+        public int categories = 20;
+        public double linksPerQuestion = 1.5;      // 平均每题关联几个分类（至少 1 个）
+        public double versionsPerQuestion = 0.5;   // 平均每题额外的编辑次数（走触发器生成版本）
+        public double duplicateRate = 0.02;        // 近似重复题的比例
+        public int exams = 100;
+        public int questionsPerExam = 30;
+        public long seed = 42;
+        public int batchSize = 10_000;             // 每个事务的行数
+        public boolean quiet = false;
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            for (String a : args) {
+                if (!a.startsWith("--") || !a.contains("=")) continue;
+                String k = a.substring(2, a.indexOf('='));
+                String v = a.substring(a.indexOf('=') + 1);
+                switch (k) {
+                    case "out" -> o.out = Path.of(v);
+                    case "questions" -> o.questions = Integer.parseInt(v);
+                    case "categories" -> o.categories = Integer.parseInt(v);
+                    case "links" -> o.linksPerQuestion = Double.parseDouble(v);
+                    case "versions" -> o.versionsPerQuestion = Double.parseDouble(v);
+                    case "duplicates" -> o.duplicateRate = Double.parseDouble(v);
+                    case "exams" -> o.exams = Integer.parseInt(v);
+                    case "exam-size" -> o.questionsPerExam = Integer.parseInt(v);
+                    case "seed" -> o.seed = Long.parseLong(v);
+                    case "batch" -> o.batchSize = Integer.parseInt(v);
+                    default -> throw new IllegalArgumentException("Unknown option: --" + k);
+                }
+            }
+            return o;
+        }
+    }
+
+    public static final class Report {
+        public int firstQuestionId, questions, categories, links, versions, exams, examQuestions;
+        public long millis;
+
+        @Override
+        public String toString() {
+            long rows = (long) questions + categories + links + versions + exams + examQuestions;
+            return String.format(Locale.ROOT,
+                    "%d questions, %d categories, %d links, %d versions, %d exams (%d exam rows) in %.1f s (%.0f rows/s)",
+                    questions, categories, links, versions, exams, examQuestions,
+                    millis / 1000.0, rows * 1000.0 / Math.max(1, millis));
+        }
+    }
+
+    public static void main(String[] args) throws SQLException {
+        Options o = Options.parse(args);
+        Report r = generate(o);
+        System.out.println("Generated " + o.out.toAbsolutePath() + ": " + r);
+    }
+
+    public static Report generate(Options o) throws SQLException {
+        long t0 = System.currentTimeMillis();
+        Report r = new Report();
+        SplittableRandom rnd = new SplittableRandom(o.seed);
+
+        try (Connection c = Database.open(o.out)) {
+            Database.createSchema(c);
+            try (Statement st = c.createStatement()) {
+                st.execute("PRAGMA synchronous = OFF");
+                st.execute("PRAGMA temp_store = MEMORY");
+                st.execute("PRAGMA cache_size = -65536");
+            }
+            c.setAutoCommit(false);
+
+            int firstCat = maxId(c, "Categories") + 1;
+            int firstQ = maxId(c, "Questions") + 1;
+            r.firstQuestionId = firstQ;
+
+            // V6 迁移给新库一个随机的 BankInfo.uuid；新生成的库改成由 seed 决定，同一个 seed 得到同样的文件
+            // （往已有的库里追加时不动，它的同步身份不变）
+            if (firstQ == 1) {
+                try (PreparedStatement ps = c.prepareStatement("UPDATE BankInfo SET uuid = ? WHERE id = 1")) {
+                    ps.setString(1, uuidFor(o.seed));
+                    ps.executeUpdate();
+                }
+                c.commit();
+            }
+
+            // 1) 分类
+            try (PreparedStatement ps = c.prepareStatement("INSERT INTO Categories (id, name) VALUES (?, ?)")) {
+                for (int i = 0; i < o.categories; i++) {
+                    ps.setInt(1, firstCat + i);
+                    ps.setString(2, SUBJECTS[i % SUBJECTS.length] + " " + (firstCat + i));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            c.commit();
+            r.categories = o.categories;
+            log(o, "categories: " + o.categories);
+
+            // 2) 题目 + 分类关联（插入触发器生成 V1）
+            try (PreparedStatement q = c.prepareStatement("""
+                    INSERT INTO Questions (id, text, type, difficulty, topic, metadata, created_at, updated_at, version)
+                    VALUES (?, ?, 'short', ?, ?, ?, ?, ?, 1)""");
+                 PreparedStatement link = c.prepareStatement(
+                         "INSERT OR IGNORE INTO Question_Categories (question_id, category_id) VALUES (?, ?)")) {
+                int pending = 0;
+                for (int i = 0; i < o.questions; i++) {
+                    int id = firstQ + i;
+                    String text = (i > 0 && rnd.nextDouble() < o.duplicateRate)
+                            ? nearDuplicate(textFor(o.seed, rnd.nextInt(i)), rnd)
+                            : textFor(o.seed, i);
+                    String created = EPOCH.plusSeconds(rnd.nextLong(365L * 24 * 3600)).format(TS);
+                    q.setInt(1, id);
+                    q.setString(2, text);
+                    q.setString(3, DIFFS[rnd.nextInt(DIFFS.length)]);
+                    q.setString(4, TOPICS[rnd.nextInt(TOPICS.length)]);
+                    q.setString(5, "Answer: " + TERMS[rnd.nextInt(TERMS.length)]);
+                    q.setString(6, created);
+                    q.setString(7, created);
+                    q.addBatch();
+
+                    // 分类大小不均：前面的分类更大
+                    int links = 1;
+                    while (rnd.nextDouble() < (o.linksPerQuestion - 1) / o.linksPerQuestion && links < o.categories) links++;
+                    for (int k = 0; k < links; k++) {
+                        int cat = (int) (o.categories * Math.pow(rnd.nextDouble(), 1.5));
+                        link.setInt(1, id);
+                        link.setInt(2, firstCat + Math.min(cat, o.categories - 1));
+                        link.addBatch();
+                    }
+
+                    if (++pending >= o.batchSize) {
+                        q.executeBatch();
+                        r.links += written(link.executeBatch());
+                        c.commit();
+                        pending = 0;
+                        if ((i + 1) % (o.batchSize * 10) == 0) log(o, "questions: " + (i + 1));
+                    }
+                }
+                q.executeBatch();
+                r.links += written(link.executeBatch());
+                c.commit();
+            }
+            r.questions = o.questions;
+            r.versions = o.questions;
+            log(o, "questions: " + o.questions);
+
+            // 3) 版本历史：UPDATE 触发 trg_q_update_versions
+            try (PreparedStatement up = c.prepareStatement(
+                    "UPDATE Questions SET text = ?, updated_at = ? WHERE id = ?")) {
+                int pending = 0;
+                double p = o.versionsPerQuestion / (1 + o.versionsPerQuestion);
+                for (int i = 0; i < o.questions; i++) {
+                    int edits = 0;
+                    while (rnd.nextDouble() < p) edits++;
+                    for (int e = 1; e <= edits; e++) {
+                        up.setString(1, textFor(o.seed, i) + " (rev. " + e + ")");
+                        up.setString(2, EPOCH.plusDays(365 + e).format(TS));
+                        up.setInt(3, firstQ + i);
+                        up.addBatch();
+                        r.versions++;
+                        if (++pending >= o.batchSize) {
+                            up.executeBatch();
+                            c.commit();
+                            pending = 0;
+                        }
+                    }
+                }
+                up.executeBatch();
+                c.commit();
+            }
+            // 触发器写的是 datetime('now')，改成可复现的时间：第 v 版 = 创建时间 + 3*(v-1) 天
+            try (PreparedStatement ps = c.prepareStatement("""
+                    UPDATE QuestionVersions
+                    SET created_at = datetime((SELECT q.created_at FROM Questions q WHERE q.id = QuestionVersions.question_id),
+                                              '+' || ((version - 1) * 3) || ' days')
+                    WHERE question_id >= ?""")) {
+                ps.setInt(1, firstQ);
+                ps.executeUpdate();
+            }
+            c.commit();
+            log(o, "versions: " + r.versions);
+
+            // 4) 试卷
+            int firstExam = maxId(c, "Exams") + 1;
+            try (PreparedStatement ex = c.prepareStatement("INSERT INTO Exams (id, title, created_at) VALUES (?, ?, ?)");
+                 PreparedStatement eq = c.prepareStatement(
+                         "INSERT OR IGNORE INTO Exam_Questions (exam_id, question_id, order_index) VALUES (?, ?, ?)")) {
+                int size = Math.min(o.questionsPerExam, o.questions);
+                for (int e = 0; e < o.exams; e++) {
+                    int examId = firstExam + e;
+                    ex.setInt(1, examId);
+                    ex.setString(2, "Generated Exam " + examId);
+                    ex.setString(3, EPOCH.plusDays(e % 365).format(TS));
+                    ex.addBatch();
+                    for (int k = 1; k <= size; k++) {
+                        eq.setInt(1, examId);
+                        eq.setInt(2, firstQ + rnd.nextInt(o.questions));
+                        eq.setInt(3, k);
+                        eq.addBatch();
+                    }
+                }
+                ex.executeBatch();
+                r.examQuestions = written(eq.executeBatch());
+                c.commit();
+            }
+            r.exams = o.exams;
+        }
+
+        r.millis = System.currentTimeMillis() - t0;
+        return r;
+    }
+
+    static String uuidFor(long seed) {
+        SplittableRandom r = new SplittableRandom(seed ^ 0x5DEECE66DL);
+        return String.format(Locale.ROOT, "%016x%016x", r.nextLong(), r.nextLong());
+    }
+
+    // 第 i 道题的题干只取决于 (seed, i)，近似重复题可以据此重新生成原题
+    static String textFor(long seed, int i) {
+        SplittableRandom r = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + i);
+        String tpl = TEMPLATES[r.nextInt(TEMPLATES.length)];
+        String a = TERMS[r.nextInt(TERMS.length)];
+        String b = TERMS[r.nextInt(TERMS.length)];
+        String subject = SUBJECTS[r.nextInt(SUBJECTS.length)];
+        String s = tpl.startsWith("Which keyword") ? String.format(tpl, subject, b.replaceFirst("^an? ", ""))
+                : String.format(tpl, a, b);
+        return s + " [" + subject + " #" + i + "]";
+    }
+
+    private static String nearDuplicate(String text, SplittableRandom rnd) {
+        return switch (rnd.nextInt(3)) {
+            case 0 -> text.replace("?", " ?");
+            case 1 -> "Q: " + text;
+            default -> text + " (short answer)";
+        };
+    }
+
+    // INSERT OR IGNORE 抽到重复的行不会写入：按 executeBatch 返回的每条影响行数累加，而不是按 addBatch 的次数
+    private static int written(int[] counts) {
+        int n = 0;
+        for (int k : counts) if (k > 0) n += k;
+        return n;
+    }
+
+    private static int maxId(Connection c, String table) throws SQLException {
+        try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + table)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static void log(Options o, String msg) {
+        if (!o.quiet) System.out.println("[generate-bank] " + msg);
+    }
+}
@@ -0,0 +1,176 @@
+package at.technikum;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// 题库的紧凑内存索引（组卷求解用）：每道题一个位置，全部是基本类型数组
+//   位置 -> id（升序）/ 难度 / 主题 / 分值 / 用时；分类 id -> 题目位置（升序）
+// 分值和用时默认按难度：Easy 1 分 2 分钟、Medium 2 分 4 分钟、Hard 3 分 6 分钟，
+// metadata 里有 "Points: n" / "Minutes: n" 行时以它为准
+// current(c) 取共享实例：数据指纹（QuestionVersions 最大 id + BankChanges 计数）变了才重建
+public final class BankIndex {
+
+    static final String QUESTIONS_SQL = "SELECT id, difficulty, topic, metadata FROM Questions ORDER BY id";
+    static final String LINKS_SQL = "SELECT category_id, question_id FROM Question_Categories ORDER BY category_id, question_id";
+    // 删除题目 / 改分类不会动 QuestionVersions 的最大 id，由 BankChanges 上的计数补上（见 V4 迁移）
+    static final String FINGERPRINT_SQL = """
+            SELECT (SELECT COALESCE(MAX(id), 0) FROM QuestionVersions),
+                   (SELECT COALESCE(MAX(n), 0) FROM BankChanges)
+            """;
+
+    static final int[] DEFAULT_POINTS = {1, 2, 3};
+    static final int[] DEFAULT_MINUTES = {2, 4, 6};
+    private static final Pattern POINTS = Pattern.compile("(?im)^\\s*points\\s*:\\s*(\\d+)");
+    private static final Pattern MINUTES = Pattern.compile("(?im)^\\s*minutes\\s*:\\s*(\\d+)");
+    private static final int[] NONE = new int[0];
+
+    private static volatile BankIndex shared;
+
+    final String fingerprint;
+    final int size;
+    final int[] ids;
+    final byte[] difficulty;     // ExamGenerator.DIFFICULTIES 里的下标，-1 = 其他 / 空
+    final int[] topic;           // topics 里的下标，-1 = 没有主题
+    final String[] topics;
+    final short[] points;
+    final short[] minutes;
+    private final Map<Integer, int[]> byCategory;
+
+    private BankIndex(String fingerprint, int size, int[] ids, byte[] difficulty, int[] topic,
+                      String[] topics, short[] points, short[] minutes, Map<Integer, int[]> byCategory) {
+        this.fingerprint = fingerprint;
+        this.size = size;
+        this.ids = ids;
+        this.difficulty = difficulty;
+        this.topic = topic;
+        this.topics = topics;
+        this.points = points;
+        this.minutes = minutes;
+        this.byCategory = byCategory;
+    }
+
+    // 共享索引；指纹没变就直接复用（查指纹是两次主键查找）
+    public static BankIndex current(Connection c) throws SQLException {
+        BankIndex index = shared;
+        if (index != null && index.fingerprint.equals(fingerprint(c))) {
+            Metrics.count("bank.hits");
+            return index;
+        }
+        synchronized (BankIndex.class) {
+            index = shared;
+            if (index == null || !index.fingerprint.equals(fingerprint(c))) {
+                index = load(c);
+                shared = index;
+            }
+            return index;
+        }
+    }
+
+    // 指纹和数据在同一个读事务里读，保证对得上
+    public static BankIndex load(Connection c) throws SQLException {
+        long t = Metrics.start();
+        boolean oldAuto = c.getAutoCommit();
+        c.setAutoCommit(false);
+        try (Statement st = c.createStatement()) {
+            String fp = fingerprint(c);
+
+            int n = 0;
+            int[] ids = new int[1024];
+            byte[] diff = new byte[1024];
+            int[] topic = new int[1024];
+            short[] points = new short[1024];
+            short[] minutes = new short[1024];
+            Map<String, Integer> topicIds = new HashMap<>();
+            try (ResultSet rs = st.executeQuery(QUESTIONS_SQL)) {
+                while (rs.next()) {
+                    if (n == ids.length) {
+                        ids = Arrays.copyOf(ids, n * 2);
+                        diff = Arrays.copyOf(diff, n * 2);
+                        topic = Arrays.copyOf(topic, n * 2);
+                        points = Arrays.copyOf(points, n * 2);
+                        minutes = Arrays.copyOf(minutes, n * 2);
+                    }
+                    ids[n] = rs.getInt(1);
+                    int d = ExamGenerator.DIFFICULTIES.indexOf(rs.getString(2));
+                    diff[n] = (byte) d;
+                    String tp = rs.getString(3);
+                    topic[n] = tp == null || tp.isBlank() ? -1 : topicIds.computeIfAbsent(tp.trim(), k -> topicIds.size());
+                    String meta = rs.getString(4);
+                    points[n] = (short) number(meta, POINTS, d < 0 ? DEFAULT_POINTS[0] : DEFAULT_POINTS[d]);
+                    minutes[n] = (short) number(meta, MINUTES, d < 0 ? DEFAULT_MINUTES[0] : DEFAULT_MINUTES[d]);
+                    n++;
+                }
+            }
+            String[] topics = new String[topicIds.size()];
+            topicIds.forEach((name, i) -> topics[i] = name);
+
+            Map<Integer, int[]> byCategory = new HashMap<>();
+            int[] buf = new int[1024];
+            int len = 0, current = Integer.MIN_VALUE;
+            try (ResultSet rs = st.executeQuery(LINKS_SQL)) {
+                while (rs.next()) {
+                    int cat = rs.getInt(1);
+                    if (cat != current) {
+                        if (len > 0) byCategory.put(current, Arrays.copyOf(buf, len));
+                        current = cat;
+                        len = 0;
+                    }
+                    int pos = Arrays.binarySearch(ids, 0, n, rs.getInt(2));
+                    if (pos < 0) continue;   // 孤儿关联
+                    if (len == buf.length) buf = Arrays.copyOf(buf, len * 2);
+                    buf[len++] = pos;
+                }
+                if (len > 0) byCategory.put(current, Arrays.copyOf(buf, len));
+            }
+            c.commit();
+            Metrics.count("bank.loads");
+            return new BankIndex(fp, n, Arrays.copyOf(ids, n), Arrays.copyOf(diff, n), Arrays.copyOf(topic, n),
+                    topics, Arrays.copyOf(points, n), Arrays.copyOf(minutes, n), byCategory);
+        } catch (SQLException ex) {
+            try { c.rollback(); } catch (SQLException ignore) {}
+            throw ex;
+        } finally {
+            try { c.setAutoCommit(oldAuto); } catch (SQLException ignore) {}
+            Metrics.stop("bank.load", t);
+        }
+    }
+
+    static String fingerprint(Connection c) throws SQLException {
+        try (ResultSet rs = StatementCache.of(c).prepare(FINGERPRINT_SQL).executeQuery()) {
+            rs.next();
+            return rs.getLong(1) + "|" + rs.getLong(2);
+        }
+    }
+
+    // 分类里的题目位置（升序，不要修改）
+    int[] inCategory(int categoryId) {
+        return byCategory.getOrDefault(categoryId, NONE);
+    }
+
+    // 题目 id -> 位置，找不到返回负数
+    int positionOf(int id) {
+        return Arrays.binarySearch(ids, id);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static int number(String meta, Pattern p, int fallback) {
+        if (meta == null || meta.indexOf(':') < 0) return fallback;
+        Matcher m = p.matcher(meta);
+        if (!m.find()) return fallback;
+        try {
+            return Math.min(Short.MAX_VALUE, Integer.parseInt(m.group(1)));
+        } catch (NumberFormatException tooBig) {
+            return Short.MAX_VALUE;
+        }
+    }
+}
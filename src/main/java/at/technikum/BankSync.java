@@ -0,0 +1,428 @@
+package at.technikum;
+
+import org.sqlite.Function;
+import org.sqlite.SQLiteConnection;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Set;
+
+// 把另一位老师的题库文件合并进本库（US-10）：ATTACH 对方文件（只读），全部用集合 SQL 完成，不逐题往返
+//   题目：按来源记在 SyncMap 里（来源 id -> 本库 id + 上次同步时的内容 hash）
+//     没映射过的：本库有内容完全一样的题就直接对上，否则作为新题插入，连同全部历史版本
+//     映射过的：比较 来源 / 本库 / 基线 三个 hash——只有来源改了就快进（本库多一个版本），
+//     只有本库改了就不动，两边都改了记进 SyncConflicts，本库内容不动
+//   分类按名字对应，本库没有的新建；分类关联只增不删；来源里的附件图片本库没有的一并拷过来
+//   来源里删掉的题不会删本库的；本库删掉的题也不会被重新加回来
+// 水位：SyncState 记着来源 QuestionVersions 的最大 id，再次同步只看这之后有新版本的题；
+//       来源 BankChanges 计数变了（只改了分类）才重新合并全部关联
+// 试卷 / 使用统计是各自的，不合并
+public final class BankSync {
+
+    static final String HASH_FUNCTION = "content_hash";
+
+    static final String SOURCE_TABLES_SQL = "SELECT name FROM src.sqlite_master WHERE type = 'table'";
+    static final String SOURCE_UUID_SQL = "SELECT uuid FROM src.BankInfo WHERE id = 1";
+    static final String LOCAL_UUID_SQL = "SELECT uuid FROM main.BankInfo WHERE id = 1";
+    static final String SOURCE_MARKS_SQL = """
+            SELECT (SELECT COALESCE(MAX(id), 0) FROM src.QuestionVersions),
+                   %s
+            """;
+    static final String STATE_SQL = "SELECT version_mark, links_mark FROM SyncState WHERE source = ?";
+
+    static final String CHANGED_DDL = """
+            CREATE TEMP TABLE IF NOT EXISTS SyncChanged (
+              remote_id   INTEGER PRIMARY KEY,
+              version     INTEGER,
+              hash        TEXT NOT NULL,
+              local_id    INTEGER,
+              base_hash   TEXT,
+              local_hash  TEXT,
+              status      TEXT
+            )
+            """;
+    static final String LOCAL_HASH_DDL = "CREATE TEMP TABLE IF NOT EXISTS SyncLocal (hash TEXT PRIMARY KEY, id INTEGER NOT NULL)";
+
+    // 第一次同步（水位 0）取来源全部题目，之后只取水位之后有新版本的
+    static final String CHANGED_SQL = """
+            INSERT INTO temp.SyncChanged (remote_id, version, hash)
+            SELECT q.id,
+                   (SELECT MAX(v.version) FROM src.QuestionVersions v WHERE v.question_id = q.id),
+                   content_hash(q.text, q.type, q.difficulty, q.topic, q.metadata)
+            FROM src.Questions q
+            WHERE ?1 = 0 OR q.id IN (SELECT question_id FROM src.QuestionVersions WHERE id > ?1)
+            """;
+    static final String MAPPED_SQL = """
+            UPDATE temp.SyncChanged SET local_id = m.local_id, base_hash = m.hash
+            FROM main.SyncMap m
+            WHERE m.source = ? AND m.remote_id = SyncChanged.remote_id
+            """;
+    static final String GONE_SQL = """
+            UPDATE temp.SyncChanged SET status = 'gone'
+            WHERE local_id IS NOT NULL AND local_id NOT IN (SELECT id FROM main.Questions)
+            """;
+    static final String LOCAL_HASHES_OF_MAPPED_SQL = """
+            UPDATE temp.SyncChanged SET local_hash = content_hash(q.text, q.type, q.difficulty, q.topic, q.metadata)
+            FROM main.Questions q
+            WHERE q.id = SyncChanged.local_id AND SyncChanged.status IS NULL
+            """;
+    static final String CLASSIFY_SQL = """
+            UPDATE temp.SyncChanged SET status = CASE
+                WHEN local_hash = hash      THEN 'same'
+                WHEN local_hash = base_hash THEN 'update'
+                WHEN hash = base_hash       THEN 'ahead'
+                ELSE 'conflict' END
+            WHERE status IS NULL AND local_id IS NOT NULL
+            """;
+    static final String UNMAPPED_COUNT_SQL = "SELECT COUNT(*) FROM temp.SyncChanged WHERE local_id IS NULL";
+    // 已经映射给这个来源的本库题不参与按内容对应
+    static final String LOCAL_HASHES_SQL = """
+            INSERT OR IGNORE INTO temp.SyncLocal (hash, id)
+            SELECT content_hash(q.text, q.type, q.difficulty, q.topic, q.metadata), q.id
+            FROM main.Questions q
+            WHERE q.id NOT IN (SELECT local_id FROM main.SyncMap WHERE source = ?)
+            ORDER BY q.id
+            """;
+    // 来源里有几道内容相同的题时，一道本库题只对应其中 id 最小的那道，其余的按新题导入
+    static final String MATCH_SQL = """
+            UPDATE temp.SyncChanged SET local_id = m.id, status = 'matched'
+            FROM (SELECT ch.remote_id, l.id, ROW_NUMBER() OVER (PARTITION BY l.id ORDER BY ch.remote_id) AS rn
+                  FROM temp.SyncChanged ch
+                  JOIN temp.SyncLocal l ON l.hash = ch.hash
+                  WHERE ch.local_id IS NULL) m
+            WHERE m.rn = 1 AND m.remote_id = SyncChanged.remote_id
+            """;
+    // 新题在本库的 id 直接排在现有最大 id（含已删除的自增序号）后面，这样历史版本能先按新 id 拷进来
+    static final String NEXT_ID_SQL = """
+            SELECT MAX(COALESCE((SELECT MAX(id) FROM main.Questions), 0),
+                       COALESCE((SELECT seq FROM main.sqlite_sequence WHERE name = 'Questions'), 0))
+            """;
+    static final String ASSIGN_NEW_SQL = """
+            UPDATE temp.SyncChanged SET local_id = ? + n.rn, status = 'new'
+            FROM (SELECT remote_id, ROW_NUMBER() OVER (ORDER BY remote_id) AS rn
+                  FROM temp.SyncChanged WHERE local_id IS NULL) n
+            WHERE n.remote_id = SyncChanged.remote_id
+            """;
+    static final String COPY_VERSIONS_SQL = """
+            INSERT INTO main.QuestionVersions (question_id, version, text, type, difficulty, topic, metadata, created_at)
+            SELECT ch.local_id, v.version, v.text, v.type, v.difficulty, v.topic, v.metadata, v.created_at
+            FROM temp.SyncChanged ch
+            JOIN src.QuestionVersions v ON v.question_id = ch.remote_id
+            WHERE ch.status = 'new'
+            """;
+    // 版本 1 已经拷过来了，插入触发器不会再生成
+    static final String INSERT_NEW_SQL = """
+            INSERT INTO main.Questions (id, text, type, difficulty, topic, metadata, created_at, updated_at, version)
+            SELECT ch.local_id, r.text, r.type, r.difficulty, r.topic, r.metadata, r.created_at, r.updated_at, ch.version
+            FROM temp.SyncChanged ch
+            JOIN src.Questions r ON r.id = ch.remote_id
+            WHERE ch.status = 'new'
+            """;
+    // 更新触发器会给每道题追加一个版本
+    static final String FAST_FORWARD_SQL = """
+            UPDATE main.Questions
+            SET text = r.text, type = r.type, difficulty = r.difficulty, topic = r.topic, metadata = r.metadata,
+                updated_at = CURRENT_TIMESTAMP
+            FROM temp.SyncChanged ch
+            JOIN src.Questions r ON r.id = ch.remote_id
+            WHERE ch.status = 'update' AND main.Questions.id = ch.local_id
+            """;
+    static final String CONFLICTS_SQL = """
+            INSERT INTO main.SyncConflicts (source, local_id, remote_id, local_version, remote_version, local_hash, remote_hash)
+            SELECT ?, ch.local_id, ch.remote_id,
+                   (SELECT MAX(version) FROM main.QuestionVersions WHERE question_id = ch.local_id),
+                   ch.version, ch.local_hash, ch.hash
+            FROM temp.SyncChanged ch
+            WHERE ch.status = 'conflict'
+            """;
+    // 基线统一记成来源当前的 hash：冲突的题以后来源再改，还是会再报冲突
+    static final String MAP_SQL = """
+            INSERT INTO main.SyncMap (source, remote_id, local_id, remote_version, hash)
+            SELECT ?, remote_id, local_id, version, hash
+            FROM temp.SyncChanged
+            WHERE status <> 'gone'
+            ON CONFLICT (source, remote_id) DO UPDATE SET
+              local_id = excluded.local_id, remote_version = excluded.remote_version, hash = excluded.hash
+            """;
+    static final String STATUS_COUNTS_SQL = "SELECT status, COUNT(*) FROM temp.SyncChanged GROUP BY status";
+    static final String NEW_CATEGORIES_SQL = """
+            INSERT INTO main.Categories (name)
+            SELECT DISTINCT rc.name FROM src.Categories rc
+            WHERE rc.name IS NOT NULL AND NOT EXISTS (SELECT 1 FROM main.Categories c WHERE c.name = rc.name)
+            """;
+    static final String LINKS_SQL = """
+            INSERT OR IGNORE INTO main.Question_Categories (question_id, category_id)
+            SELECT m.local_id, lc.id
+            FROM src.Question_Categories rqc
+            JOIN main.SyncMap m ON m.source = ?1 AND m.remote_id = rqc.question_id
+            JOIN src.Categories rc ON rc.id = rqc.category_id
+            JOIN (SELECT name, MIN(id) AS id FROM main.Categories GROUP BY name) lc ON lc.name = rc.name
+            WHERE m.local_id IN (SELECT id FROM main.Questions)
+              AND (?2 OR rqc.question_id IN (SELECT remote_id FROM temp.SyncChanged))
+            """;
+    static final String ATTACHMENTS_SQL = """
+            INSERT OR IGNORE INTO main.Attachments (hash, mime, width, height, size, data, created_at)
+            SELECT a.hash, a.mime, a.width, a.height, a.size, a.data, a.created_at
+            FROM src.Attachments a
+            WHERE a.hash NOT IN (SELECT hash FROM main.Attachments)
+            """;
+    static final String SAVE_STATE_SQL = """
+            INSERT INTO main.SyncState (source, path, version_mark, links_mark, synced_at)
+            VALUES (?, ?, ?, ?, datetime('now'))
+            ON CONFLICT (source) DO UPDATE SET
+              path = excluded.path, version_mark = excluded.version_mark,
+              links_mark = excluded.links_mark, synced_at = excluded.synced_at
+            """;
+
+    public static final class Report {
+        public String source;
+        public boolean firstSync;
+        public int scanned;          // 水位之后变过的来源题目
+        public int added;
+        public int matched;          // 本库已有同样内容的题，只建映射
+        public int updated;          // 来源改了，本库快进
+        public int unchanged;
+        public int localAhead;       // 只有本库改了
+        public int conflicts;
+        public int deletedLocally;
+        public int categories;
+        public int links;
+        public int attachments;
+        public long millis;
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%s sync: %d changed questions scanned in %d ms. %d added, %d matched by content, %d updated, "
+                            + "%d unchanged, %d newer here, %d conflicts, %d deleted here; %d categories, %d links, %d attachments added",
+                    firstSync ? "First" : "Incremental", scanned, millis, added, matched, updated,
+                    unchanged, localAhead, conflicts, deletedLocally, categories, links, attachments);
+        }
+    }
+
+    private BankSync() {}
+
+    // c：已经迁移过的本库连接（Database.get() / 连接池）；file：对方的题库文件，只读打开
+    public static Report merge(Connection c, Path file) throws SQLException {
+        if (!Files.isRegularFile(file)) throw new SQLException("Bank file not found: " + file);
+        long t = Metrics.start();
+        long t0 = System.nanoTime();
+        registerHashFunction(c);
+        try (Statement st = c.createStatement()) {
+            st.execute("ATTACH DATABASE '" + sourceUri(file) + "' AS src");
+        }
+        try {
+            Report r = mergeAttached(c, file);
+            r.millis = (System.nanoTime() - t0) / 1_000_000;
+            return r;
+        } finally {
+            try (Statement st = c.createStatement()) {
+                st.execute("DETACH DATABASE src");
+            }
+            Metrics.stop("sync.merge", t);
+        }
+    }
+
+    private static Report mergeAttached(Connection c, Path file) throws SQLException {
+        Report r = new Report();
+        boolean oldAuto = c.getAutoCommit();
+        c.setAutoCommit(false);
+        try (Statement st = c.createStatement()) {
+            Set<String> tables = new HashSet<>();
+            try (ResultSet rs = st.executeQuery(SOURCE_TABLES_SQL)) {
+                while (rs.next()) tables.add(rs.getString(1));
+            }
+            for (String required : new String[]{"Questions", "QuestionVersions", "Categories", "Question_Categories"}) {
+                if (!tables.contains(required)) throw new SQLException(file + " is not an exam bank (no " + required + " table)");
+            }
+            r.source = sourceId(st, tables, file);
+
+            long versionMark, linksMark;
+            try (ResultSet rs = st.executeQuery(String.format(SOURCE_MARKS_SQL,
+                    tables.contains("BankChanges") ? "(SELECT COALESCE(MAX(n), 0) FROM src.BankChanges)" : "-1"))) {
+                rs.next();
+                versionMark = rs.getLong(1);
+                linksMark = rs.getLong(2);
+            }
+            long lastVersionMark = 0, lastLinksMark = -1;
+            try (PreparedStatement ps = c.prepareStatement(STATE_SQL)) {
+                ps.setString(1, r.source);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        lastVersionMark = rs.getLong(1);
+                        lastLinksMark = rs.getLong(2);
+                    }
+                }
+            }
+            r.firstSync = lastVersionMark == 0;
+            // 新题带着历史版本先插进 QuestionVersions，外键检查推迟到提交
+            st.execute("PRAGMA defer_foreign_keys = ON");
+
+            st.execute(CHANGED_DDL);
+            st.execute("DELETE FROM temp.SyncChanged");
+            try (PreparedStatement ps = c.prepareStatement(CHANGED_SQL)) {
+                ps.setLong(1, lastVersionMark);
+                r.scanned = ps.executeUpdate();
+            }
+            update(c, MAPPED_SQL, r.source);
+            st.executeUpdate(GONE_SQL);
+            st.executeUpdate(LOCAL_HASHES_OF_MAPPED_SQL);
+            st.executeUpdate(CLASSIFY_SQL);
+
+            int unmapped;
+            try (ResultSet rs = st.executeQuery(UNMAPPED_COUNT_SQL)) {
+                unmapped = rs.next() ? rs.getInt(1) : 0;
+            }
+            if (unmapped > 0) {
+                st.execute(LOCAL_HASH_DDL);
+                st.execute("DELETE FROM temp.SyncLocal");
+                update(c, LOCAL_HASHES_SQL, r.source);
+                st.executeUpdate(MATCH_SQL);
+                long nextId;
+                try (ResultSet rs = st.executeQuery(NEXT_ID_SQL)) {
+                    nextId = rs.next() ? rs.getLong(1) : 0;
+                }
+                try (PreparedStatement ps = c.prepareStatement(ASSIGN_NEW_SQL)) {
+                    ps.setLong(1, nextId);
+                    ps.executeUpdate();
+                }
+                st.executeUpdate(COPY_VERSIONS_SQL);
+                st.executeUpdate(INSERT_NEW_SQL);
+            }
+            st.executeUpdate(FAST_FORWARD_SQL);
+            update(c, CONFLICTS_SQL, r.source);
+            update(c, MAP_SQL, r.source);
+
+            try (ResultSet rs = st.executeQuery(STATUS_COUNTS_SQL)) {
+                while (rs.next()) {
+                    int n = rs.getInt(2);
+                    switch (rs.getString(1)) {
+                        case "new" -> r.added = n;
+                        case "matched" -> r.matched = n;
+                        case "update" -> r.updated = n;
+                        case "same" -> r.unchanged = n;
+                        case "ahead" -> r.localAhead = n;
+                        case "conflict" -> r.conflicts = n;
+                        case "gone" -> r.deletedLocally = n;
+                        default -> { }
+                    }
+                }
+            }
+
+            r.categories = st.executeUpdate(NEW_CATEGORIES_SQL);
+            boolean allLinks = r.firstSync || linksMark < 0 || linksMark != lastLinksMark;
+            try (PreparedStatement ps = c.prepareStatement(LINKS_SQL)) {
+                ps.setString(1, r.source);
+                ps.setBoolean(2, allLinks);
+                r.links = ps.executeUpdate();
+            }
+            if (tables.contains("Attachments")) r.attachments = st.executeUpdate(ATTACHMENTS_SQL);
+
+            try (PreparedStatement ps = c.prepareStatement(SAVE_STATE_SQL)) {
+                ps.setString(1, r.source);
+                ps.setString(2, file.toAbsolutePath().toString());
+                ps.setLong(3, versionMark);
+                ps.setLong(4, linksMark);
+                ps.executeUpdate();
+            }
+            c.commit();
+            Metrics.count("sync.added", r.added);
+            Metrics.count("sync.updated", r.updated);
+            Metrics.count("sync.conflicts", r.conflicts);
+            return r;
+        } catch (SQLException ex) {
+            try { c.rollback(); } catch (SQLException ignore) {}
+            throw ex;
+        } finally {
+            try (Statement st = c.createStatement()) {
+                st.execute("DROP TABLE IF EXISTS temp.SyncChanged");
+                st.execute("DROP TABLE IF EXISTS temp.SyncLocal");
+            } catch (SQLException ignore) {}
+            try { c.setAutoCommit(oldAuto); } catch (SQLException ignore) {}
+        }
+    }
+
+    private static int update(Connection c, String sql, String source) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, source);
+            return ps.executeUpdate();
+        }
+    }
+
+    // 来源有 BankInfo 就用它的 uuid，老文件退回用绝对路径
+    private static String sourceId(Statement st, Set<String> tables, Path file) throws SQLException {
+        String local = null;
+        try (ResultSet rs = st.executeQuery(LOCAL_UUID_SQL)) {
+            if (rs.next()) local = rs.getString(1);
+        }
+        if (tables.contains("BankInfo")) {
+            try (ResultSet rs = st.executeQuery(SOURCE_UUID_SQL)) {
+                if (rs.next()) {
+                    String uuid = rs.getString(1);
+                    if (uuid.equals(local)) throw new SQLException(file + " is this bank (or a copy of it)");
+                    return uuid;
+                }
+            }
+        }
+        return "path:" + file.toAbsolutePath().normalize();
+    }
+
+    private static String sourceUri(Path file) {
+        String path = file.toAbsolutePath().toUri().getRawPath();
+        return "file:" + path.replace("'", "''") + "?mode=ro";
+    }
+
+    // content_hash(text, type, difficulty, topic, metadata)：128 位 SHA-256 前缀，两边的题按它比较内容
+    static void registerHashFunction(Connection c) throws SQLException {
+        Function.create(c.unwrap(SQLiteConnection.class), HASH_FUNCTION, new Function() {
+            private final MessageDigest sha = sha256();
+            private final StringBuilder sb = new StringBuilder();
+
+            @Override
+            protected void xFunc() throws SQLException {
+                sb.setLength(0);
+                for (int i = 0; i < args(); i++) {
+                    String v = value_text(i);
+                    // 分隔符和 NULL 标记都不会出现在正常文本里
+                    sb.append(v == null ? "\u0000" : v).append('\u0001');
+                }
+                byte[] digest = sha.digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+                result(HexFormat.of().formatHex(digest, 0, 16));
+            }
+        }, Function.FLAG_DETERMINISTIC);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // App --sync=other.db：把 other.db 合并进 -Dexam.db 指向的库
+    public static void main(String[] args) throws SQLException {
+        Path file = null;
+        for (String a : args) {
+            if (a.startsWith("--sync=")) file = Path.of(a.substring("--sync=".length()));
+        }
+        if (file == null) {
+            System.err.println("usage: App --sync=<other bank .db>");
+            System.exit(2);
+        }
+        try (Connection c = Database.get()) {
+            System.out.println(merge(c, file));
+        }
+    }
+}
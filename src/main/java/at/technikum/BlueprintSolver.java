@@ -0,0 +1,479 @@
+package at.technikum;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+// 带约束的组卷：在 BankIndex 上做随机贪心 + 局部搜索
+//   蓝图   = 分类 × 难度 的题数（难度可以写 "Any"，由求解器挑）
+//   约束   = 总分区间、总时长上限、每个主题最多几道、必选题、不和最近 N 份试卷重题
+// 先做便宜的可行性检查（单元格候选不够、分值 / 时长的上下界、主题上限），明显做不到的直接报告原因；
+// 其余交给搜索：贪心填满空位，再随机换题把违反量降到 0；
+// 超时（-Dexam.solver.timeout 毫秒，默认 500）仍降不到 0 就报告最好的那个解还违反了什么
+public final class BlueprintSolver {
+
+    public static final String ANY = "Any";
+    static final long TIMEOUT_MS = Long.getLong("exam.solver.timeout", 500);
+    static final int SAMPLES = 8;          // 每次换题看几个候选
+    static final int KICK_AFTER = 2000;    // 连续这么多步没变好就随机扰动一下
+
+    static final String RECENT_EXAMS_SQL = """
+            SELECT DISTINCT question_id FROM Exam_Questions
+            WHERE exam_id IN (SELECT id FROM Exams ORDER BY id DESC LIMIT ?)
+            """;
+    static final String TEXT_SQL = "SELECT text FROM QuestionLatest WHERE question_id = ?";
+
+    public static final class Blueprint {
+        public final Map<String, Map<String, Integer>> cells = new LinkedHashMap<>();   // 分类名 -> (难度 / Any -> 数量)
+        public int minPoints = 0;
+        public int maxPoints = Integer.MAX_VALUE;
+        public int maxMinutes = Integer.MAX_VALUE;
+        public int maxPerTopic = Integer.MAX_VALUE;
+        public final Set<Integer> mandatory = new LinkedHashSet<>();
+        public int avoidLastExams = 0;
+        public long seed = System.nanoTime();
+    }
+
+    public static final class Result {
+        public final List<ExamQuestionItem> questions;   // 不可行时为空
+        public final List<String> problems;              // 空 = 可行
+        public final String dataVersion;
+        public final int points, minutes, iterations;
+        public final long micros;
+
+        Result(List<ExamQuestionItem> questions, List<String> problems, String dataVersion,
+               int points, int minutes, int iterations, long micros) {
+            this.questions = questions;
+            this.problems = problems;
+            this.dataVersion = dataVersion;
+            this.points = points;
+            this.minutes = minutes;
+            this.iterations = iterations;
+            this.micros = micros;
+        }
+
+        public boolean feasible() { return problems.isEmpty(); }
+
+        public ExamGenerator.Exam exam() { return new ExamGenerator.Exam(questions, dataVersion); }
+    }
+
+    // 一个 分类 × 难度 单元格：candidates 是可选的题目位置（升序，已去掉最近试卷里的题）
+    private static final class Cell {
+        final String category, difficulty;
+        final int need;
+        final int[] candidates;
+        int fixed;   // 被必选题占掉的名额
+
+        Cell(String category, String difficulty, int need, int[] candidates) {
+            this.category = category;
+            this.difficulty = difficulty;
+            this.need = need;
+            this.candidates = candidates;
+        }
+
+        String label() { return category + " / " + difficulty; }
+    }
+
+    public Result solve(Connection c, Map<String, Integer> categoryIds, Blueprint bp) throws SQLException {
+        long t = Metrics.start();
+        long t0 = System.nanoTime();
+        try {
+            BankIndex bank = BankIndex.current(c);
+            List<String> problems = new ArrayList<>();
+            boolean[] banned = recentlyUsed(c, bank, bp.avoidLastExams);
+
+            // 1) 单元格和候选
+            List<Cell> cells = new ArrayList<>();
+            for (var cat : bp.cells.entrySet()) {
+                Integer catId = categoryIds.get(cat.getKey());
+                if (catId == null) {
+                    problems.add("Unknown category: " + cat.getKey());
+                    continue;
+                }
+                int[] posting = bank.inCategory(catId);
+                for (var d : cat.getValue().entrySet()) {
+                    int need = d.getValue() == null ? 0 : d.getValue();
+                    if (need <= 0) continue;
+                    int diff = ANY.equals(d.getKey()) ? -1 : ExamGenerator.DIFFICULTIES.indexOf(d.getKey());
+                    if (diff < 0 && !ANY.equals(d.getKey())) {
+                        problems.add("Unknown difficulty: " + d.getKey());
+                        continue;
+                    }
+                    int[] cand = new int[posting.length];
+                    int n = 0;
+                    for (int p : posting) {
+                        if (banned[p] || bank.difficulty[p] < 0 || (diff >= 0 && bank.difficulty[p] != diff)) continue;
+                        cand[n++] = p;
+                    }
+                    cells.add(new Cell(cat.getKey(), d.getKey(), need, Arrays.copyOf(cand, n)));
+                }
+            }
+            int slots = 0;
+            for (Cell cell : cells) slots += cell.need;
+            if (slots == 0 && problems.isEmpty()) problems.add("The blueprint asks for no questions");
+
+            // 2) 必选题放进能容纳它的单元格：先找难度完全匹配的，再找 Any
+            int[] slotCell = new int[slots];
+            int[] slotPos = new int[slots];
+            boolean[] slotFixed = new boolean[slots];
+            int[] cellStart = new int[cells.size()];
+            for (int i = 0, s = 0; i < cells.size(); s += cells.get(i).need, i++) cellStart[i] = s;
+            for (int i = 0; i < cells.size(); i++) {
+                for (int k = 0; k < cells.get(i).need; k++) slotCell[cellStart[i] + k] = i;
+            }
+            Arrays.fill(slotPos, -1);
+            boolean[] taken = new boolean[bank.size];
+            for (int id : bp.mandatory) {
+                int p = bank.positionOf(id);
+                if (p < 0) {
+                    problems.add("Mandatory question #" + id + " does not exist");
+                    continue;
+                }
+                if (banned[p]) {
+                    problems.add("Mandatory question #" + id + " was used in one of the last " + bp.avoidLastExams + " exams");
+                    continue;
+                }
+                if (taken[p]) continue;
+                int home = -1;
+                for (int pass = 0; pass < 2 && home < 0; pass++) {
+                    for (int i = 0; i < cells.size() && home < 0; i++) {
+                        Cell cell = cells.get(i);
+                        if (ANY.equals(cell.difficulty) != (pass == 1) || cell.fixed == cell.need) continue;
+                        if (Arrays.binarySearch(cell.candidates, p) >= 0) home = i;
+                    }
+                }
+                if (home < 0) {
+                    problems.add("Mandatory question #" + id + " fits no category/difficulty cell with room left");
+                    continue;
+                }
+                Cell cell = cells.get(home);
+                int s = cellStart[home] + cell.fixed++;
+                slotPos[s] = p;
+                slotFixed[s] = true;
+                taken[p] = true;
+            }
+
+            // 3) 便宜的必要条件：都满足也不代表一定可行，交给搜索
+            checkBounds(bank, bp, cells, slotPos, problems);
+            if (!problems.isEmpty()) return infeasible(bank, problems, 0, t0);
+
+            // 4) 搜索
+            Search search = new Search(bank, bp, cells, slotCell, slotPos, slotFixed, taken, new SplittableRandom(bp.seed));
+            if (!search.fill()) {
+                for (Cell cell : cells) {
+                    if (search.missing(cell) > 0) {
+                        problems.add(cell.label() + ": not enough distinct questions (candidates are shared with other cells)");
+                    }
+                }
+                return infeasible(bank, problems, 0, t0);
+            }
+            search.improve(t0 + TIMEOUT_MS * 1_000_000);
+            if (search.bestViolation > 0) {
+                search.restoreBest();
+                problems.add(String.format(Locale.ROOT, "No feasible exam found within %d ms; the best attempt still breaks:", TIMEOUT_MS));
+                problems.addAll(search.violations());
+                return infeasible(bank, problems, search.iterations, t0);
+            }
+
+            // 5) 结果：按蓝图顺序，单元格里必选题在前
+            List<ExamQuestionItem> out = new ArrayList<>(slots);
+            PreparedStatement ps = StatementCache.of(c).prepare(TEXT_SQL);
+            for (int s = 0; s < slots; s++) {
+                int p = slotPos[s];
+                ps.setInt(1, bank.ids[p]);
+                String text;
+                try (ResultSet rs = ps.executeQuery()) {
+                    text = rs.next() ? rs.getString(1) : "";
+                }
+                out.add(new ExamQuestionItem(bank.ids[p], text,
+                        ExamGenerator.DIFFICULTIES.get(bank.difficulty[p]), cells.get(slotCell[s]).category));
+            }
+            Metrics.count("solver.iterations", search.iterations);
+            return new Result(out, List.of(), bank.fingerprint, search.points, search.minutes, search.iterations,
+                    (System.nanoTime() - t0) / 1000);
+        } finally {
+            Metrics.stop("solver.solve", t);
+        }
+    }
+
+    private static Result infeasible(BankIndex bank, List<String> problems, int iterations, long t0) {
+        Metrics.count("solver.infeasible");
+        return new Result(List.of(), problems, bank.fingerprint, 0, 0, iterations, (System.nanoTime() - t0) / 1000);
+    }
+
+    private static boolean[] recentlyUsed(Connection c, BankIndex bank, int lastExams) throws SQLException {
+        boolean[] banned = new boolean[bank.size];
+        if (lastExams <= 0) return banned;
+        PreparedStatement ps = StatementCache.of(c).prepare(RECENT_EXAMS_SQL);
+        ps.setInt(1, lastExams);
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                int p = bank.positionOf(rs.getInt(1));
+                if (p >= 0) banned[p] = true;
+            }
+        }
+        return banned;
+    }
+
+    // 每个单元格：候选够不够、主题上限下最多能放几道；全卷：分值 / 时长能达到的范围
+    private static void checkBounds(BankIndex bank, Blueprint bp, List<Cell> cells, int[] slotPos, List<String> problems) {
+        long minP = 0, maxP = 0, minM = 0;
+        int[] fixedTopic = new int[bank.topics.length];
+        for (int p : slotPos) {
+            if (p < 0) continue;
+            minP += bank.points[p];
+            maxP += bank.points[p];
+            minM += bank.minutes[p];
+            if (bank.topic[p] >= 0) fixedTopic[bank.topic[p]]++;
+        }
+        for (int tp = 0; tp < fixedTopic.length; tp++) {
+            if (fixedTopic[tp] > bp.maxPerTopic) {
+                problems.add("Mandatory questions alone exceed the limit of " + bp.maxPerTopic + " for topic '" + bank.topics[tp] + "'");
+            }
+        }
+
+        String after = bp.avoidLastExams > 0 ? " after excluding the last " + bp.avoidLastExams + " exams" : "";
+        int[] perTopic = new int[bank.topics.length];
+        for (Cell cell : cells) {
+            if (cell.candidates.length < cell.need) {
+                problems.add(String.format(Locale.ROOT, "%s: needs %d questions, only %d available%s",
+                        cell.label(), cell.need, cell.candidates.length, after));
+                continue;
+            }
+            int free = cell.need - cell.fixed;
+            int lo = Integer.MAX_VALUE, hi = 0, loM = Integer.MAX_VALUE, untagged = 0;
+            Arrays.fill(perTopic, 0);
+            for (int p : cell.candidates) {
+                lo = Math.min(lo, bank.points[p]);
+                hi = Math.max(hi, bank.points[p]);
+                loM = Math.min(loM, bank.minutes[p]);
+                if (bank.topic[p] < 0) untagged++;
+                else perTopic[bank.topic[p]]++;
+            }
+            minP += (long) lo * free;
+            maxP += (long) hi * free;
+            minM += (long) loM * free;
+            if (bp.maxPerTopic < Integer.MAX_VALUE) {
+                long room = untagged;
+                for (int n : perTopic) room += Math.min(n, bp.maxPerTopic);
+                if (room < cell.need) {
+                    problems.add(String.format(Locale.ROOT, "%s: at most %d questions possible with %d per topic, needs %d",
+                            cell.label(), room, bp.maxPerTopic, cell.need));
+                }
+            }
+        }
+        if (!problems.isEmpty()) return;
+        if (maxP < bp.minPoints) {
+            problems.add(String.format(Locale.ROOT, "Points: at least %d required, the blueprint reaches at most %d", bp.minPoints, maxP));
+        }
+        if (minP > bp.maxPoints) {
+            problems.add(String.format(Locale.ROOT, "Points: at most %d allowed, the blueprint needs at least %d", bp.maxPoints, minP));
+        }
+        if (minM > bp.maxMinutes) {
+            problems.add(String.format(Locale.ROOT, "Time: budget is %d minutes, the blueprint needs at least %d", bp.maxMinutes, minM));
+        }
+    }
+
+    // 搜索状态：每个空位一个题目位置；违反量 = 分值越界 + 时长超出 + 各主题超出的题数
+    private static final class Search {
+        final BankIndex bank;
+        final Blueprint bp;
+        final List<Cell> cells;
+        final int[] slotCell, slotPos;
+        final boolean[] taken;
+        final int[] free;            // 可以换的空位（非必选）
+        final int[] topicCount;
+        final SplittableRandom rnd;
+        int points, minutes, topicOver, iterations;
+        int bestViolation = Integer.MAX_VALUE;
+        int[] best;
+
+        Search(BankIndex bank, Blueprint bp, List<Cell> cells, int[] slotCell, int[] slotPos, boolean[] slotFixed,
+               boolean[] taken, SplittableRandom rnd) {
+            this.bank = bank;
+            this.bp = bp;
+            this.cells = cells;
+            this.slotCell = slotCell;
+            this.slotPos = slotPos;
+            this.taken = taken;
+            this.rnd = rnd;
+            this.topicCount = new int[bank.topics.length];
+            int n = 0;
+            for (boolean f : slotFixed) if (!f) n++;
+            free = new int[n];
+            for (int s = 0, k = 0; s < slotPos.length; s++) if (!slotFixed[s]) free[k++] = s;
+            for (int p : slotPos) if (p >= 0) add(p);
+        }
+
+        // 随机顺序填空位；每个空位从几个随机候选里挑主题不超限、离分值区间最近的
+        boolean fill() {
+            int[] order = free.clone();
+            for (int i = order.length - 1; i > 0; i--) {
+                int j = rnd.nextInt(i + 1), tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            }
+            boolean complete = true;
+            for (int s : order) {
+                Cell cell = cells.get(slotCell[s]);
+                int pick = -1, pickCost = Integer.MAX_VALUE;
+                for (int k = 0; k < SAMPLES; k++) {
+                    int p = randomFree(cell);
+                    if (p < 0) break;
+                    int cost = violation(points + bank.points[p], minutes + bank.minutes[p], topicOver + overIfAdded(p));
+                    if (cost < pickCost) {
+                        pick = p;
+                        pickCost = cost;
+                    }
+                }
+                if (pick < 0) {
+                    complete = false;
+                    continue;
+                }
+                slotPos[s] = pick;
+                taken[pick] = true;
+                add(pick);
+            }
+            return complete;
+        }
+
+        // 换题直到违反量为 0 或到时间；只接受不变差的换法，久不见好就随机踢一下
+        void improve(long deadline) {
+            int v = violation(points, minutes, topicOver);
+            keepIfBest(v);
+            int stall = 0;
+            while (v > 0 && free.length > 0) {
+                if ((iterations & 255) == 0 && System.nanoTime() > deadline) break;
+                iterations++;
+                int s = free[rnd.nextInt(free.length)];
+                Cell cell = cells.get(slotCell[s]);
+                int old = slotPos[s];
+                boolean kick = stall > KICK_AFTER;
+                int pick = -1, pickCost = kick ? Integer.MAX_VALUE : v;
+                for (int k = 0; k < SAMPLES; k++) {
+                    int p = randomFree(cell);
+                    if (p < 0) break;
+                    int cost = costOfSwap(old, p);
+                    if (cost < pickCost || (cost == pickCost && pick < 0 && rnd.nextInt(4) == 0)) {
+                        pick = p;
+                        pickCost = cost;
+                    }
+                }
+                if (pick < 0) {
+                    stall++;
+                    continue;
+                }
+                remove(old);
+                taken[old] = false;
+                slotPos[s] = pick;
+                taken[pick] = true;
+                add(pick);
+                stall = pickCost < v ? 0 : kick ? 0 : stall + 1;
+                v = pickCost;
+                keepIfBest(v);
+            }
+        }
+
+        int missing(Cell cell) {
+            int i = cells.indexOf(cell), n = 0;
+            for (int s = 0; s < slotPos.length; s++) if (slotCell[s] == i && slotPos[s] < 0) n++;
+            return n;
+        }
+
+        void restoreBest() {
+            for (int p : slotPos) if (p >= 0) taken[p] = false;
+            System.arraycopy(best, 0, slotPos, 0, best.length);
+            points = minutes = topicOver = 0;
+            Arrays.fill(topicCount, 0);
+            for (int p : slotPos) {
+                taken[p] = true;
+                add(p);
+            }
+        }
+
+        List<String> violations() {
+            List<String> out = new ArrayList<>();
+            if (points < bp.minPoints || points > bp.maxPoints) {
+                out.add(String.format(Locale.ROOT, "Points: %d, allowed %d..%s", points, bp.minPoints,
+                        bp.maxPoints == Integer.MAX_VALUE ? "" : Integer.toString(bp.maxPoints)));
+            }
+            if (minutes > bp.maxMinutes) {
+                out.add(String.format(Locale.ROOT, "Time: %d minutes, budget %d", minutes, bp.maxMinutes));
+            }
+            for (int tp = 0; tp < topicCount.length; tp++) {
+                if (topicCount[tp] > bp.maxPerTopic) {
+                    out.add(String.format(Locale.ROOT, "Topic '%s': %d questions, limit %d", bank.topics[tp], topicCount[tp], bp.maxPerTopic));
+                }
+            }
+            return out;
+        }
+
+        private void keepIfBest(int v) {
+            if (v >= bestViolation) return;
+            bestViolation = v;
+            best = slotPos.clone();
+        }
+
+        // 先随机试几次，候选大多被占时从随机起点顺序找
+        private int randomFree(Cell cell) {
+            int[] cand = cell.candidates;
+            if (cand.length == 0) return -1;
+            for (int k = 0; k < 4; k++) {
+                int p = cand[rnd.nextInt(cand.length)];
+                if (!taken[p]) return p;
+            }
+            int start = rnd.nextInt(cand.length);
+            for (int k = 0; k < cand.length; k++) {
+                int p = cand[(start + k) % cand.length];
+                if (!taken[p]) return p;
+            }
+            return -1;
+        }
+
+        private int costOfSwap(int old, int p) {
+            int over = topicOver;
+            int to = bank.topic[old], tn = bank.topic[p];
+            if (to != tn) {
+                if (to >= 0 && topicCount[to] > bp.maxPerTopic) over--;
+                if (tn >= 0 && topicCount[tn] >= bp.maxPerTopic) over++;
+            }
+            return violation(points - bank.points[old] + bank.points[p],
+                    minutes - bank.minutes[old] + bank.minutes[p], over);
+        }
+
+        private int overIfAdded(int p) {
+            int tp = bank.topic[p];
+            return tp >= 0 && topicCount[tp] >= bp.maxPerTopic ? 1 : 0;
+        }
+
+        private int violation(int p, int m, int over) {
+            long v = Math.max(0, bp.minPoints - p) + Math.max(0L, (long) p - bp.maxPoints)
+                    + Math.max(0L, (long) m - bp.maxMinutes) + over;
+            return (int) Math.min(Integer.MAX_VALUE - 1, v);
+        }
+
+        private void add(int p) {
+            points += bank.points[p];
+            minutes += bank.minutes[p];
+            int tp = bank.topic[p];
+            if (tp >= 0 && ++topicCount[tp] > bp.maxPerTopic) topicOver++;
+        }
+
+        private void remove(int p) {
+            points -= bank.points[p];
+            minutes -= bank.minutes[p];
+            int tp = bank.topic[p];
+            if (tp >= 0 && topicCount[tp]-- > bp.maxPerTopic) topicOver--;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package at.technikum;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 换题对话框的候选题搜索：同分类 + 同难度，可选关键词，排除当前题
+//   查询在后台线程、专用连接上跑，FX 线程不碰数据库
+//   新查询一来，还在跑的旧查询用 Statement.cancel 打断（sqlite3_interrupt，只会打断这条专用连接），
+//   排在队列里的旧查询直接跳过，结果以 CancellationException 结束
+//   被取消过的语句在 sqlite-jdbc 里就不能再用了，所以这里每次现 prepare，不进 StatementCache
+//   按 id 键集分页（question_id < 上一页最后一个），每页 -Dexam.ui.candidatePage=100 条，翻多深都一样快
+public final class CandidateSearch implements AutoCloseable {
+
+    static final int PAGE_SIZE = Integer.getInteger("exam.ui.candidatePage", 100);
+
+    static final String PAGE_SQL = """
+            SELECT ql.question_id AS id, ql.text, ql.difficulty
+            FROM QuestionLatest ql
+            JOIN Question_Categories qc ON ql.question_id = qc.question_id
+            WHERE qc.category_id = ?
+              AND ql.difficulty = ?
+              AND qc.question_id <> ?
+              AND qc.question_id < ?
+            """;
+    static final String KEYWORD_SQL = PAGE_SQL + "  AND LOWER(ql.text) LIKE ?\n";
+    // 范围和排序写在 qc 上：沿 idx_qc_category (category_id, question_id) 倒着走，凑够一页就停；
+    // 写在视图的 ql.question_id 上时用不上索引的范围，要把整个分类排一遍序（第一页 500+ ms）
+    static final String ORDER = "ORDER BY qc.question_id DESC LIMIT ?";
+
+    // more = 后面可能还有；下一页从 lastId 往下接着取
+    public record Page(List<ExamQuestionItem> items, boolean more, int lastId) {}
+
+    private final int categoryId;
+    private final String difficulty;
+    private final int excludeId;
+    private final String categoryName;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            r -> Thread.ofPlatform().daemon().name("candidate-search").unstarted(r));
+    private final AtomicLong generation = new AtomicLong();
+    private final Object lock = new Object();
+    private Connection conn;                 // 只在后台线程上用
+    private PreparedStatement running;       // 正在执行的语句（lock 保护）
+
+    public CandidateSearch(int categoryId, String difficulty, int excludeId, String categoryName) {
+        this.categoryId = categoryId;
+        this.difficulty = difficulty;
+        this.excludeId = excludeId;
+        this.categoryName = categoryName;
+    }
+
+    // 第一页：beforeId = Integer.MAX_VALUE；翻页：上一页的 lastId
+    public CompletableFuture<Page> fetch(String keyword, int beforeId) {
+        long gen = generation.incrementAndGet();
+        synchronized (lock) {
+            if (running != null) {
+                try {
+                    running.cancel();
+                    Metrics.count("candidates.cancelled");
+                } catch (SQLException ignore) {}
+            }
+        }
+        String kw = keyword == null || keyword.isBlank() ? null : keyword.strip().toLowerCase(Locale.ROOT);
+        CompletableFuture<Page> f = new CompletableFuture<>();
+        executor.execute(() -> {
+            if (gen != generation.get()) {
+                // 还没开始就已经过时了
+                Metrics.count("candidates.skipped");
+                f.cancel(false);
+                return;
+            }
+            try {
+                f.complete(query(gen, kw, beforeId));
+            } catch (SQLException e) {
+                if (gen != generation.get()) f.cancel(false);
+                else f.completeExceptionally(e);
+            }
+        });
+        return f;
+    }
+
+    private Page query(long gen, String keyword, int beforeId) throws SQLException {
+        long t = Metrics.start();
+        if (conn == null) conn = Database.get();
+        try (PreparedStatement ps = conn.prepareStatement((keyword == null ? PAGE_SQL : KEYWORD_SQL) + ORDER)) {
+            return page(gen, ps, keyword, beforeId);
+        } finally {
+            Metrics.stop("candidates.page", t);
+        }
+    }
+
+    private Page page(long gen, PreparedStatement ps, String keyword, int beforeId) throws SQLException {
+        int i = 1;
+        ps.setInt(i++, categoryId);
+        ps.setString(i++, difficulty);
+        ps.setInt(i++, excludeId);
+        ps.setInt(i++, beforeId);
+        if (keyword != null) ps.setString(i++, "%" + keyword + "%");
+        ps.setInt(i, PAGE_SIZE);
+
+        List<ExamQuestionItem> out = new ArrayList<>(PAGE_SIZE);
+        synchronized (lock) {
+            // fetch() 取消的是登记在这里的语句；登记前已经过时就不用跑了
+            if (gen != generation.get()) throw new SQLException("Superseded");
+            running = ps;
+        }
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                out.add(new ExamQuestionItem(rs.getInt("id"), rs.getString("text"), rs.getString("difficulty"), categoryName));
+            }
+        } finally {
+            synchronized (lock) {
+                running = null;
+            }
+        }
+        int last = out.isEmpty() ? beforeId : out.get(out.size() - 1).id;
+        return new Page(out, out.size() == PAGE_SIZE, last);
+    }
+
+    // 对话框关闭时调用：取消在跑的查询，关掉专用连接
+    @Override
+    public void close() {
+        generation.incrementAndGet();
+        synchronized (lock) {
+            if (running != null) {
+                try { running.cancel(); } catch (SQLException ignore) {}
+            }
+        }
+        executor.execute(() -> {
+            if (conn == null) return;
+            try {
+                conn.close();
+            } catch (SQLException ignore) {}
+        });
+        executor.shutdown();
+    }
+}
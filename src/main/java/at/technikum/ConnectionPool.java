@@ -0,0 +1,115 @@
+package at.technikum;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 简单的连接池：close() 不会真正关闭，而是把连接还回池里
+// 服务器模式和桌面界面都用它（SQLite 可以多个连接并发读），连接寿命长，StatementCache 才有意义
+public final class ConnectionPool implements AutoCloseable {
+
+    private static volatile ConnectionPool shared;
+
+    private final BlockingQueue<Connection> idle;
+    private final int maxSize;
+    private final AtomicInteger opened = new AtomicInteger();
+    private volatile boolean closed;
+
+    public ConnectionPool(int maxSize) {
+        this.maxSize = maxSize;
+        this.idle = new ArrayBlockingQueue<>(maxSize);
+    }
+
+    // 进程内共享的池，大小用 -Dexam.pool.size 调整
+    public static ConnectionPool shared() {
+        ConnectionPool p = shared;
+        if (p == null) {
+            synchronized (ConnectionPool.class) {
+                if (shared == null) shared = new ConnectionPool(Integer.getInteger("exam.pool.size", 8));
+                p = shared;
+            }
+        }
+        return p;
+    }
+
+    public Connection get() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+        long t = Metrics.start();
+        try {
+            Connection c = idle.poll();
+            if (c == null && opened.incrementAndGet() <= maxSize) {
+                try {
+                    c = Database.get();
+                } catch (SQLException e) {
+                    opened.decrementAndGet();
+                    throw e;
+                }
+            } else if (c == null) {
+                opened.decrementAndGet();
+                Metrics.count("pool.waits");
+                c = idle.poll(30, TimeUnit.SECONDS);
+                if (c == null) throw new SQLException("Timed out waiting for a pooled connection");
+            }
+            return lease(c);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a pooled connection", e);
+        } finally {
+            Metrics.stop("pool.get", t);
+        }
+    }
+
+    private Connection lease(Connection real) {
+        boolean[] returned = {false};
+        return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, m, args) -> {
+                    switch (m.getName()) {
+                        case "close" -> {
+                            if (!returned[0]) {
+                                returned[0] = true;
+                                release(real);
+                            }
+                            return null;
+                        }
+                        case "isClosed" -> { return returned[0] || real.isClosed(); }
+                        default -> {
+                            if (returned[0]) throw new SQLException("Connection already returned to pool");
+                            try {
+                                return m.invoke(real, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        }
+                    }
+                });
+    }
+
+    private void release(Connection real) throws SQLException {
+        // 归还前复位：回滚未提交的事务
+        if (!real.getAutoCommit()) {
+            real.rollback();
+            real.setAutoCommit(true);
+        }
+        StatementCache.of(real).endLease();
+        if (closed || !idle.offer(real)) {
+            opened.decrementAndGet();
+            real.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection c;
+        while ((c = idle.poll()) != null) {
+            try {
+                c.close();
+            } catch (SQLException ignore) {}
+        }
+    }
+}
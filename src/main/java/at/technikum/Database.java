@@ -1,11 +1,18 @@
 package at.technikum;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
 
 public final class Database {
 
-    private static final String URL = "jdbc:sqlite:" + Path.of("exam_manager.db").toAbsolutePath();
+    // -Dexam.db=... 可以指向别的数据库文件（例如生成的大规模测试库）
+    private static final Path FILE = Path.of(System.getProperty("exam.db", "exam_manager.db")).toAbsolutePath();
+    private static final String URL = "jdbc:sqlite:" + FILE;
 
     static {
 
@@ -16,17 +23,127 @@ public final class Database {
         }
     }
 
+    // 按顺序追加，不要修改已发布的迁移
+    private static final String[] MIGRATIONS = {
+            "V1__query_indexes.sql",
+            "V2__exam_question_index.sql",
+            "V3__question_usage.sql",
+            "V4__bank_changes.sql",
+            "V5__attachments.sql",
+            "V6__bank_sync.sql",
+            "V7__category_difficulty_counts.sql",
+            "V8__question_versions_as_of.sql",
+    };
+
+    // 别的连接 / 进程拿着写锁时，最多等这么久再报 SQLITE_BUSY（驱动默认 3 秒，这里显式设置）
+    static final int BUSY_TIMEOUT_MS = Integer.getInteger("exam.db.busyTimeout", 5000);
+
+    private static volatile boolean migrated;
+
     private Database() {}
 
+    // 当前使用的数据库文件
+    public static Path file() {
+        return FILE;
+    }
+
 
     public static Connection get() throws SQLException {
-        Connection conn = DriverManager.getConnection(URL);
+        long t = Metrics.start();
+        try {
+            Connection conn = DriverManager.getConnection(URL);
+            try (Statement st = conn.createStatement()) {
+                st.execute("PRAGMA foreign_keys = ON;");
+                st.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS);
+            }
+            if (!migrated) migrateOnce(conn);
+            Metrics.count("db.connections");
+            return StatementCache.attach(QueryAudit.wrap(conn));
+        } finally {
+            Metrics.stop("db.get", t);
+        }
+    }
+
+
+    // 打开任意一个数据库文件（工具 / benchmark 用）
+    public static Connection open(Path file) throws SQLException {
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:" + file.toAbsolutePath());
         try (Statement st = conn.createStatement()) {
             st.execute("PRAGMA foreign_keys = ON;");
+            st.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS);
+        }
+        return StatementCache.attach(QueryAudit.wrap(conn));
+    }
+
+    // 按 schema.sql 建表（全部 IF NOT EXISTS，已有的库不受影响），再执行迁移
+    public static void createSchema(Connection c) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            for (String sql : statements(readResource("/schema.sql"))) st.execute(sql);
         }
-        return conn;
+        migrate(c);
     }
 
+    private static synchronized void migrateOnce(Connection c) throws SQLException {
+        if (migrated) return;
+        migrate(c);
+        // WAL：读事务拿到的是一致的快照，而且不会挡住写入（设置会持久化在文件里）
+        try (Statement st = c.createStatement()) {
+            st.execute("PRAGMA journal_mode = WAL");
+        }
+        migrated = true;
+    }
+
+    // 依次执行 migrations/V<n>__*.sql，已执行到第几个记在 PRAGMA user_version
+    public static void migrate(Connection c) throws SQLException {
+        int current;
+        try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery("PRAGMA user_version")) {
+            current = rs.next() ? rs.getInt(1) : 0;
+        }
+        for (int v = current + 1; v <= MIGRATIONS.length; v++) {
+            String script = readResource("/migrations/" + MIGRATIONS[v - 1]);
+            boolean oldAuto = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try (Statement st = c.createStatement()) {
+                for (String sql : statements(script)) st.execute(sql);
+                st.execute("PRAGMA user_version = " + v);
+                c.commit();
+            } catch (SQLException ex) {
+                try { c.rollback(); } catch (SQLException ignore) {}
+                throw new SQLException("Migration " + MIGRATIONS[v - 1] + " failed: " + ex.getMessage(), ex);
+            } finally {
+                c.setAutoCommit(oldAuto);
+            }
+        }
+    }
+
+    private static String readResource(String name) {
+        try (InputStream in = Database.class.getResourceAsStream(name)) {
+            if (in == null) throw new IllegalStateException(name + " not found on classpath");
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read " + name, e);
+        }
+    }
+
+    static List<String> statements(String script) {
+        // 按 ";" 行尾切分；触发器体内的 ";" 要等到 END; 才算结束
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean inTrigger = false;
+        for (String line : script.split("\\R")) {
+            String t = line.trim();
+            if (cur.length() == 0 && (t.isEmpty() || t.startsWith("--"))) continue;
+            cur.append(line).append('\n');
+            if (t.toUpperCase().startsWith("CREATE TRIGGER")) inTrigger = true;
+            boolean end = inTrigger ? t.equalsIgnoreCase("END;") : t.endsWith(";");
+            if (end) {
+                out.add(cur.toString());
+                cur.setLength(0);
+                inTrigger = false;
+            }
+        }
+        return out;
+    }
 
     public static void printTables() {
         String sql = "SELECT name FROM sqlite_master WHERE type='table' ORDER BY name";
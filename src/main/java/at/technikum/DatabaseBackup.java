@@ -0,0 +1,309 @@
+package at.technikum;
+
+import org.sqlite.SQLiteConnection;
+import org.sqlite.core.DB;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// 在线备份（SQLite backup API），程序开着、有人在编辑时也能做
+//   用单独的连接，每步拷 -Dexam.backup.pages=256 页，步与步之间歇 -Dexam.backup.pauseMs=5 毫秒；
+//   每一步只在拷页时占着源库，步长就是报告里的 longest pause（非 WAL 库上编辑最多被挡这么久）
+//   WAL 库：备份连接先开一个读事务，整个备份都读同一个快照——别的连接照常写，备份也不会因为它们而从头重拷
+//   非 WAL 库不能这样（读事务会挡住写），别的连接一改库 SQLite 就从头重拷；发现重拷后就不再歇，尽快拷完
+// 快照：<dir>/exam_manager-yyyyMMdd-HHmmss.db，先写 .partial，quick_check 通过再改名，半截的文件不会被当成快照
+//   目录 -Dexam.backup.dir（默认数据库旁边的 backups/），只保留最新的 -Dexam.backup.keep=10 份
+//   -Dexam.backup.every=分钟 定时快照（默认 0 = 不做）
+// 恢复：先给当前库拍一份 -pre-restore 快照（恢复也能撤销），再用同一个 API 反向拷回，最后补跑迁移
+public final class DatabaseBackup {
+
+    static final String PREFIX = "exam_manager-";
+    static final String SUFFIX = ".db";
+    static final String PRE_RESTORE = "-pre-restore";
+    static final String PARTIAL = ".partial";
+    // 快照的 -wal / -shm / -journal：快照只读打开时不会再有，旧版本留下的在轮换时一起清掉
+    static final List<String> SIDECARS = List.of("-wal", "-shm", "-journal");
+    // 读一下就开始读事务，固定住快照
+    static final String SNAPSHOT_SQL = "SELECT COUNT(*) FROM sqlite_master";
+    static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss", Locale.ROOT);
+    static final int PAGES_PER_STEP = Integer.getInteger("exam.backup.pages", 256);
+    static final int PAUSE_MS = Integer.getInteger("exam.backup.pauseMs", 5);
+    // 源库 / 目标库忙时每次等 50 ms，最多等 100 次
+    static final int BUSY_SLEEP_MS = 50;
+    static final int BUSY_RETRIES = 100;
+
+    private static volatile DatabaseBackup shared;
+
+    public static final class Result {
+        public final Path file;
+        public final int pages;
+        public final long bytes;
+        public final long millis;
+        public final int steps;
+        public final long maxStepMicros;   // 最长的一步 = 编辑最多被挡住的时间
+        public final int restarts;
+
+        Result(Path file, int pages, long bytes, long millis, int steps, long maxStepMicros, int restarts) {
+            this.file = file;
+            this.pages = pages;
+            this.bytes = bytes;
+            this.millis = millis;
+            this.steps = steps;
+            this.maxStepMicros = maxStepMicros;
+            this.restarts = restarts;
+        }
+
+        public double mbPerSecond() {
+            return millis == 0 ? 0 : bytes / 1048576.0 / (millis / 1000.0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s: %d pages (%.1f MB) in %d ms, %.0f MB/s; %d steps, longest pause %.1f ms, %d restarts",
+                    file.getFileName(), pages, bytes / 1048576.0, millis, mbPerSecond(), steps, maxStepMicros / 1000.0, restarts);
+        }
+    }
+
+    private final Path database;
+    private final Path dir;
+    private final int keep;
+
+    public DatabaseBackup(Path database, Path dir, int keep) {
+        this.database = database.toAbsolutePath();
+        this.dir = dir.toAbsolutePath();
+        this.keep = Math.max(1, keep);
+    }
+
+    // 按系统属性配置、备份当前数据库的共享实例（界面、定时任务共用，操作互相排队）
+    public static DatabaseBackup shared() {
+        DatabaseBackup b = shared;
+        if (b != null) return b;
+        synchronized (DatabaseBackup.class) {
+            if (shared == null) {
+                Path db = Database.file();
+                String d = System.getProperty("exam.backup.dir");
+                shared = new DatabaseBackup(db, d != null ? Path.of(d) : db.resolveSibling("backups"),
+                        Integer.getInteger("exam.backup.keep", 10));
+            }
+            return shared;
+        }
+    }
+
+    public Path dir() {
+        return dir;
+    }
+
+    // 拍一份新快照，然后轮换
+    public synchronized Result snapshot() throws SQLException, IOException {
+        return snapshot("");
+    }
+
+    private Result snapshot(String suffix) throws SQLException, IOException {
+        long t = Metrics.start();
+        try {
+            Files.createDirectories(dir);
+            String base = PREFIX + STAMP.format(LocalDateTime.now()) + suffix;
+            Path target = dir.resolve(base + SUFFIX);
+            for (int i = 2; Files.exists(target); i++) target = dir.resolve(base + "-" + i + SUFFIX);
+            Result r = copy(target);
+            rotate();
+            Metrics.count("backup.snapshots");
+            return r;
+        } finally {
+            Metrics.stop("backup.snapshot", t);
+        }
+    }
+
+    // 快照，最新的在前
+    public List<Path> list() throws IOException {
+        if (!Files.isDirectory(dir)) return List.of();
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(DatabaseBackup::isSnapshot)
+                    .sorted(Comparator.comparing((Path p) -> p.getFileName().toString()).reversed())
+                    .toList();
+        }
+    }
+
+    private static boolean isSnapshot(Path p) {
+        String name = p.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX) && Files.isRegularFile(p);
+    }
+
+    // 多余的旧快照和中断留下的 .partial 一起清掉，快照旁边的 -wal / -shm 也删
+    void rotate() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : files.filter(p -> p.getFileName().toString().endsWith(PARTIAL)).toList()) deletePartial(p);
+        }
+        List<Path> all = list();
+        for (Path old : all.subList(Math.min(keep, all.size()), all.size())) {
+            Files.deleteIfExists(old);
+            Metrics.count("backup.rotated");
+        }
+        for (Path p : all) deleteSidecars(p);
+    }
+
+    private static void deleteSidecars(Path file) throws IOException {
+        for (String s : SIDECARS) Files.deleteIfExists(file.resolveSibling(file.getFileName() + s));
+    }
+
+    private Result copy(Path target) throws SQLException, IOException {
+        Path partial = target.resolveSibling(target.getFileName() + PARTIAL);
+        Steps steps = new Steps(PAUSE_MS);
+        long t0 = System.nanoTime();
+        try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + database)) {
+            boolean wal;
+            try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery("PRAGMA journal_mode")) {
+                wal = rs.next() && "wal".equalsIgnoreCase(rs.getString(1));
+            }
+            if (wal) {
+                c.setAutoCommit(false);
+                try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery(SNAPSHOT_SQL)) {
+                    rs.next();
+                }
+            }
+            int rc = c.unwrap(SQLiteConnection.class).getDatabase()
+                    .backup("main", partial.toString(), steps, BUSY_SLEEP_MS, BUSY_RETRIES, PAGES_PER_STEP);
+            if (wal) c.commit();
+            if (rc != 0) throw new SQLException("Backup of " + database + " failed (SQLite code " + rc + ")");
+            check(partial);
+            Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            deletePartial(partial);
+        }
+        return steps.result(target, Files.size(target), System.nanoTime() - t0);
+    }
+
+    private static void deletePartial(Path partial) throws IOException {
+        Files.deleteIfExists(partial);
+        deleteSidecars(partial);
+    }
+
+    // 从快照恢复到当前数据库；恢复期间写入会等着（单步锁，完成即放）
+    public synchronized Result restore(Path snapshot) throws SQLException, IOException {
+        if (!Files.isRegularFile(snapshot)) throw new IOException("Snapshot not found: " + snapshot);
+        check(snapshot);
+        snapshot(PRE_RESTORE);
+        long t = Metrics.start();
+        Steps steps = new Steps(0);
+        long t0 = System.nanoTime();
+        try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + database)) {
+            int rc = c.unwrap(SQLiteConnection.class).getDatabase()
+                    .restore("main", readOnly(snapshot), steps, BUSY_SLEEP_MS, BUSY_RETRIES, PAGES_PER_STEP);
+            if (rc != 0) throw new SQLException("Restore from " + snapshot + " failed (SQLite code " + rc + ")");
+            // 快照可能是旧版本的表结构
+            Database.migrate(c);
+        } finally {
+            Metrics.stop("backup.restore", t);
+        }
+        return steps.result(snapshot, Files.size(snapshot), System.nanoTime() - t0);
+    }
+
+    // 快照只读 + immutable 打开：WAL 库拷出来的快照头里还是 WAL 模式，普通打开会在 backups/ 里留下 -wal / -shm
+    static String readOnly(Path file) {
+        return file.toAbsolutePath().toUri() + "?mode=ro&immutable=1";
+    }
+
+    private static void check(Path file) throws SQLException {
+        try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + readOnly(file));
+             Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA quick_check")) {
+            String result = rs.next() ? rs.getString(1) : null;
+            if (!"ok".equals(result)) throw new SQLException(file.getFileName() + " failed quick_check: " + result);
+        }
+    }
+
+    // 每拷完一步回调一次：量这一步用了多久，再歇一下
+    private static final class Steps implements DB.ProgressObserver {
+        private final int pauseMs;
+        private long stepStart = System.nanoTime();
+        private int steps;
+        private int restarts;
+        private int pageCount;
+        private int lastRemaining = Integer.MAX_VALUE;
+        private long maxStep;
+
+        Steps(int pauseMs) {
+            this.pauseMs = pauseMs;
+        }
+
+        @Override
+        public void progress(int remaining, int pageCount) {
+            long step = System.nanoTime() - stepStart;
+            Metrics.record("backup.step", step);
+            maxStep = Math.max(maxStep, step);
+            steps++;
+            if (remaining > lastRemaining) {
+                restarts++;
+                Metrics.count("backup.restarts");
+            }
+            lastRemaining = remaining;
+            this.pageCount = pageCount;
+            if (remaining > 0 && restarts == 0 && pauseMs > 0) {
+                try {
+                    Thread.sleep(pauseMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            stepStart = System.nanoTime();
+        }
+
+        Result result(Path file, long bytes, long nanos) {
+            Metrics.count("backup.pages", pageCount);
+            return new Result(file, pageCount, bytes, nanos / 1_000_000, steps, maxStep / 1000, restarts);
+        }
+    }
+
+    // -Dexam.backup.every=分钟 时启动定时快照（守护线程）
+    public static void scheduleFromProperties() {
+        long every = Long.getLong("exam.backup.every", 0);
+        if (every <= 0) return;
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread th = new Thread(r, "db-backup");
+            th.setDaemon(true);
+            return th;
+        });
+        timer.scheduleWithFixedDelay(() -> {
+            try {
+                System.out.println("Backup " + shared().snapshot());
+            } catch (Exception e) {
+                System.err.println("Scheduled backup failed: " + e.getMessage());
+            }
+        }, every, every, TimeUnit.MINUTES);
+    }
+
+    // App --backup | --list-backups | --restore=<snapshot>
+    public static void main(String[] args) throws SQLException, IOException {
+        DatabaseBackup b = shared();
+        for (String a : args) {
+            if (a.equals("--backup")) {
+                System.out.println("Backup " + b.snapshot());
+            } else if (a.equals("--list-backups")) {
+                List<String> lines = new ArrayList<>();
+                for (Path p : b.list()) lines.add(String.format(Locale.ROOT, "%-48s %8.1f MB", p.getFileName(), Files.size(p) / 1048576.0));
+                System.out.println(lines.isEmpty() ? "No snapshots in " + b.dir() : String.join("\n", lines));
+            } else if (a.startsWith("--restore=")) {
+                Path p = Path.of(a.substring("--restore=".length()));
+                if (!p.isAbsolute() && !Files.exists(p)) p = b.dir().resolve(p);
+                System.out.println("Restored " + b.restore(p));
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package at.technikum;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+// JFR 自定义事件：抽题 / QuestionStore 查询 / PDF 导出
+// 用 JMC 或 "jfr print --events at.technikum.* rec.jfr" 查看
+public final class ExamEvents {
+
+    private ExamEvents() {}
+
+    @Name("at.technikum.ExamCellSampled")
+    @Label("Exam Cell Sampled")
+    @Category({"Exam Manager", "Generation"})
+    @Description("One category x difficulty cell of an exam blueprint")
+    public static final class CellSampled extends Event {
+        @Label("Category") public String category;
+        @Label("Difficulty") public String difficulty;
+        @Label("Requested") public int requested;
+        @Label("Rows") public int rows;
+    }
+
+    @Name("at.technikum.StoreQuery")
+    @Label("QuestionStore Query")
+    @Category({"Exam Manager", "Database"})
+    public static final class StoreQuery extends Event {
+        @Label("Operation") public String operation;
+        @Label("SQL") public String sql;
+        @Label("Rows") @Description("Rows returned or affected") public int rows;
+    }
+
+    @Name("at.technikum.PdfExport")
+    @Label("PDF Export")
+    @Category({"Exam Manager", "Export"})
+    public static final class PdfExport extends Event {
+        @Label("Exam") public String exam;
+        @Label("Pages") public int pages;
+        @Label("Lines") public int lines;
+        @Label("Bytes Written") @DataAmount public long bytes;
+    }
+
+    static StoreQuery query(String operation, String sql) {
+        StoreQuery ev = new StoreQuery();
+        ev.operation = operation;
+        ev.sql = sql;
+        ev.begin();
+        return ev;
+    }
+
+    // --jfr[=文件]：启动时开始录制（profile 配置），JVM 退出时写盘
+    public static Recording startRecording(String file) throws IOException, ParseException {
+        Path dest = file != null && !file.isBlank() ? Path.of(file)
+                : Path.of("exam-manager-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".jfr");
+        Recording r = new Recording(Configuration.getConfiguration("profile"));
+        r.setName("exam-manager");
+        r.enable(CellSampled.class);
+        r.enable(StoreQuery.class);
+        r.enable(PdfExport.class);
+        r.setToDisk(true);
+        r.setDumpOnExit(true);
+        r.setDestination(dest);
+        r.start();
+        System.out.println("JFR recording -> " + dest.toAbsolutePath());
+        return r;
+    }
+}
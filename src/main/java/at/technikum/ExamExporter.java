@@ -0,0 +1,208 @@
+package at.technikum;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+// 流式 HTML / Markdown 导出（US-08）：边遍历题目边往 Writer 写，不在内存里拼整份文档
+// 内容和 PDF 一致：标题 "Exam: ..."，题目按顺序编号，题干里的 [[image:<hash>]] 输出成图片
+//   imageBase == null：图片内嵌成 data: URI（单文件，可离线看）；同一个导出器里编码结果有缓存
+//   imageBase != null：输出 <imageBase><hash> 的链接（例如服务端的 /api/attachments/）
+// HTML 带打印样式（A4、题目不跨页），在浏览器里打印和 PDF 版面接近
+public final class ExamExporter {
+
+    public enum Format {
+        HTML("html", "text/html; charset=utf-8"),
+        MARKDOWN("md", "text/markdown; charset=utf-8");
+
+        public final String extension;
+        public final String contentType;
+
+        Format(String extension, String contentType) {
+            this.extension = extension;
+            this.contentType = contentType;
+        }
+
+        // "html" / "md" / "markdown"，不认识返回 null
+        public static Format of(String name) {
+            if (name == null) return null;
+            return switch (name.toLowerCase()) {
+                case "html", "htm" -> HTML;
+                case "md", "markdown" -> MARKDOWN;
+                default -> null;
+            };
+        }
+    }
+
+    static final int DATA_URI_CACHE = 32;
+    private static final String INDENT = "        ";
+
+    static final String CSS = """
+            body { font-family: "DejaVu Sans", Arial, sans-serif; font-size: 12pt; line-height: 1.2; max-width: 46em; margin: 2em auto; padding: 0 1em; }
+            h1 { font-size: 12pt; font-weight: normal; margin: 0 0 1.2em; }
+            ol { padding-left: 0; list-style: none; }
+            li { margin: 0 0 1.2em; }
+            img { display: block; max-width: 100%; max-height: 50vh; margin: 0.4em 0; }
+            @page { size: A4; margin: 50pt; }
+            @media print { body { margin: 0; max-width: none; } li { break-inside: avoid; page-break-inside: avoid; } }
+            """;
+
+    private final PdfImages.Source images;
+    private final String imageBase;
+    private final Map<String, String> dataUris = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > DATA_URI_CACHE;
+        }
+    };
+
+    // images 为 null 时不输出图片，只留 [image] 占位
+    public ExamExporter(PdfImages.Source images, String imageBase) {
+        this.images = images;
+        this.imageBase = imageBase;
+    }
+
+    // out 由调用方负责缓冲和关闭（这里只 flush）
+    public void write(Writer out, Format format, String examName, Iterator<ExamQuestionItem> questions) throws IOException {
+        long t = Metrics.start();
+        int n = 0;
+        if (format == Format.HTML) {
+            out.write("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>");
+            escapeHtml(out, examName);
+            out.write("</title>\n<style>\n");
+            out.write(CSS);
+            out.write("</style></head>\n<body>\n<h1>Exam: ");
+            escapeHtml(out, examName);
+            out.write("</h1>\n<ol>\n");
+            while (questions.hasNext()) {
+                ExamQuestionItem q = questions.next();
+                out.write("<li>");
+                out.write(Integer.toString(++n));
+                out.write(". ");
+                html(out, q.text);
+                out.write("</li>\n");
+            }
+            out.write("</ol>\n</body></html>\n");
+        } else {
+            out.write("Exam: ");
+            escapeMarkdown(out, examName);
+            out.write("\n\n");
+            while (questions.hasNext()) {
+                ExamQuestionItem q = questions.next();
+                String num = ++n + ". ";
+                out.write(num);
+                markdown(out, q.text, INDENT.substring(0, Math.min(INDENT.length(), num.length())));
+                out.write("\n\n");
+            }
+        }
+        out.flush();
+        Metrics.count("export." + format.extension + ".questions", n);
+        Metrics.stop("export." + format.extension, t);
+    }
+
+    private void html(Writer out, String text) throws IOException {
+        if (text == null) return;
+        if (text.indexOf("[[") < 0) {
+            escapeHtml(out, text);
+            return;
+        }
+        Matcher m = AttachmentStore.MARKER.matcher(text);
+        int from = 0;
+        while (m.find()) {
+            escapeHtml(out, text.substring(from, m.start()));
+            String src = imageSource(m.group(1));
+            if (src == null) {
+                out.write("[image missing]");
+            } else {
+                out.write("<img alt=\"\" src=\"");
+                out.write(src);
+                out.write("\">");
+            }
+            from = m.end();
+        }
+        escapeHtml(out, text.substring(from));
+    }
+
+    // 题干里的换行缩进到列表项下面，保持在同一题里
+    private void markdown(Writer out, String text, String indent) throws IOException {
+        if (text == null) return;
+        for (int start = 0; ; ) {
+            int nl = text.indexOf('\n', start);
+            int end = nl < 0 ? text.length() : nl > start && text.charAt(nl - 1) == '\r' ? nl - 1 : nl;
+            String part = text.substring(start, end);
+            if (part.indexOf("[[") < 0) {
+                escapeMarkdown(out, part);
+            } else {
+                Matcher m = AttachmentStore.MARKER.matcher(part);
+                int from = 0;
+                while (m.find()) {
+                    escapeMarkdown(out, part.substring(from, m.start()));
+                    String src = imageSource(m.group(1));
+                    out.write(src == null ? "[image missing]" : "![](" + src + ")");
+                    from = m.end();
+                }
+                escapeMarkdown(out, part.substring(from));
+            }
+            if (nl < 0) return;
+            out.write("  \n");
+            out.write(indent);
+            start = nl + 1;
+        }
+    }
+
+    private String imageSource(String hash) throws IOException {
+        if (imageBase != null) return imageBase + hash;
+        if (images == null) return null;
+        String uri = dataUris.get(hash);
+        if (uri != null) {
+            Metrics.count("export.imageCacheHits");
+            return uri;
+        }
+        byte[] data = images.load(hash);
+        if (data == null) return null;
+        String mime = AttachmentStore.mimeOf(data);
+        uri = "data:" + (mime == null ? "application/octet-stream" : mime) + ";base64," + Base64.getEncoder().encodeToString(data);
+        dataUris.put(hash, uri);
+        return uri;
+    }
+
+    static void escapeHtml(Writer out, String s) throws IOException {
+        if (s == null) return;
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            String rep = switch (s.charAt(i)) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '"' -> "&quot;";
+                case '\n' -> "<br>\n";
+                case '\r' -> "";
+                default -> null;
+            };
+            if (rep == null) continue;
+            out.write(s, start, i - start);
+            out.write(rep);
+            start = i + 1;
+        }
+        out.write(s, start, s.length() - start);
+    }
+
+    // 只转义会被当成 Markdown 语法的字符
+    static void escapeMarkdown(Writer out, String s) throws IOException {
+        if (s == null) return;
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ("\\`*_[]<>#|".indexOf(c) < 0) continue;
+            out.write(s, start, i - start);
+            out.write('\\');
+            out.write(c);
+            start = i + 1;
+        }
+        out.write(s, start, s.length() - start);
+    }
+}
@@ -0,0 +1,176 @@
+package at.technikum;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// 按 分类 × 难度 随机抽题（从 UiApp 中抽出来，方便 benchmark / 无界面调用）
+public class ExamGenerator {
+
+    public static final List<String> DIFFICULTIES = List.of("Easy", "Medium", "Hard");
+
+    static final String SAMPLE_SQL = """
+            SELECT
+            ql.question_id AS id,
+            ql.text,
+            ql.difficulty
+            FROM QuestionLatest ql
+            JOIN Question_Categories qc ON ql.question_id = qc.question_id
+            WHERE qc.category_id = ? AND ql.difficulty = ?
+            ORDER BY RANDOM() LIMIT ?
+            """;
+
+    // 一次生成的结果：题目 + 生成时读到的数据版本
+    // 数据版本就是 BankIndex 的数据指纹（"QuestionVersions 最大 id|BankChanges 计数"）：
+    // 增改 / 回滚题目让前一半变大，删题、改分类、合并题库让后一半变大
+    public static final class Exam {
+        public final List<ExamQuestionItem> questions;
+        public final String dataVersion;
+
+        Exam(List<ExamQuestionItem> questions, String dataVersion) {
+            this.questions = questions;
+            this.dataVersion = dataVersion;
+        }
+    }
+
+    // 不为 null 时，同一份试卷里不会出现两道近似重复的题（也不会重复同一道题）
+    private final SimilarityIndex dedupe;
+    // 不为 null 时按曝光次数加权抽题（用得少的优先），代替 ORDER BY RANDOM()
+    private final ExposureSampler exposure;
+
+    public ExamGenerator() {
+        this(null, null);
+    }
+
+    public ExamGenerator(SimilarityIndex dedupe) {
+        this(dedupe, null);
+    }
+
+    public ExamGenerator(SimilarityIndex dedupe, ExposureSampler exposure) {
+        this.dedupe = dedupe;
+        this.exposure = exposure;
+    }
+
+    // selections: 分类名 -> (难度 -> 数量)；categoryIds: 分类名 -> id
+    // 整个生成在一个读事务里完成：所有单元格看到同一个快照（WAL 下不会挡住别人写），
+    // 抽题语句从连接的 StatementCache 取，每个单元格重新绑定参数
+    public Exam generate(Connection conn,
+                         Map<String, Integer> categoryIds,
+                         Map<String, Map<String, Integer>> selections) throws SQLException {
+        List<ExamQuestionItem> out = new ArrayList<>();
+        String dataVersion;
+
+        long tGen = Metrics.start();
+        boolean oldAuto = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            StatementCache cache = StatementCache.of(conn);
+            PreparedStatement ps = cache.prepare(SAMPLE_SQL);
+            // 第一次读取时建立快照
+            dataVersion = BankIndex.fingerprint(conn);
+
+            for (var entry : selections.entrySet()) {
+                String catName = entry.getKey();
+                Integer catId = categoryIds.get(catName);
+                if (catId == null) continue;
+
+                for (var diff : DIFFICULTIES) {
+                    int count = entry.getValue().getOrDefault(diff, 0);
+                    if (count <= 0) continue;
+
+                    long tCell = Metrics.start();
+                    var ev = new ExamEvents.CellSampled();
+                    ev.begin();
+                    int before = out.size();
+                    if (exposure != null) {
+                        exposure.sample(conn, catId, diff, dataVersion, count, (id, text) -> {
+                            if (rejected(id, text, out)) return false;
+                            out.add(new ExamQuestionItem(id, text, diff, catName));
+                            return true;
+                        });
+                    } else {
+                        ps.setInt(1, catId);
+                        ps.setString(2, diff);
+                        // 去重时多抽一些备选；还不够就把整个单元格随机排一遍（LIMIT -1）
+                        ps.setInt(3, dedupe == null ? count : count * 2 + 5);
+                        int taken = sampleCell(ps, catName, count, out);
+                        if (dedupe != null && taken < count) {
+                            ps.setInt(3, -1);
+                            sampleCell(ps, catName, count - taken, out);
+                        }
+                    }
+                    ev.category = catName;
+                    ev.difficulty = diff;
+                    ev.requested = count;
+                    ev.rows = out.size() - before;
+                    ev.commit();
+                    Metrics.stop("exam.sample", tCell);
+                    Metrics.count("exam.cells");
+                }
+            }
+            conn.commit();
+        } catch (SQLException ex) {
+            try { conn.rollback(); } catch (SQLException ignore) {}
+            throw ex;
+        } finally {
+            try { conn.setAutoCommit(oldAuto); } catch (SQLException ignore) {}
+            Metrics.stop("exam.generate", tGen);
+        }
+        Metrics.count("exam.questions", out.size());
+        return new Exam(out, dataVersion);
+    }
+
+    // 保存了用这个生成器生成的试卷后调用，让曝光权重跟上
+    public void recordUse(List<ExamQuestionItem> items) {
+        if (exposure == null) return;
+        List<Integer> ids = new ArrayList<>(items.size());
+        for (ExamQuestionItem q : items) ids.add(q.id);
+        exposure.recordUse(ids);
+    }
+
+    private int sampleCell(PreparedStatement ps, String catName, int count, List<ExamQuestionItem> out) throws SQLException {
+        int taken = 0;
+        try (ResultSet rs = ps.executeQuery()) {
+            while (taken < count && rs.next()) {
+                int id = rs.getInt("id");
+                String text = rs.getString("text");
+                if (dedupe != null && rejected(id, text, out)) continue;
+                out.add(new ExamQuestionItem(id, text, rs.getString("difficulty"), catName));
+                taken++;
+            }
+        }
+        return taken;
+    }
+
+    private boolean rejected(int id, String text, List<ExamQuestionItem> picked) {
+        List<Integer> ids = new ArrayList<>(picked.size());
+        for (ExamQuestionItem p : picked) {
+            if (p.id == id) return true;
+            ids.add(p.id);
+        }
+        if (dedupe == null || !dedupe.nearDuplicateOfAny(text, ids)) return false;
+        Metrics.count("exam.duplicatesSkipped");
+        return true;
+    }
+
+    // 导出用的行："1. 题干"
+    public static List<String> toLines(List<ExamQuestionItem> items) {
+        List<String> lines = new ArrayList<>(items.size());
+        int pos = 1;
+        for (ExamQuestionItem item : items) {
+            lines.add(pos++ + ". " + item.text);
+        }
+        return lines;
+    }
+
+    // 教师版 PDF 用：和 toLines 一一对应的答案 / 评分说明（metadata: 题目 id -> metadata）
+    public static List<String> toAnswers(List<ExamQuestionItem> items, Map<Integer, String> metadata) {
+        List<String> answers = new ArrayList<>(items.size());
+        for (ExamQuestionItem item : items) answers.add(metadata.get(item.id));
+        return answers;
+    }
+}
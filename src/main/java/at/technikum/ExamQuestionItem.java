@@ -0,0 +1,21 @@
+package at.technikum;
+
+// 试卷中的一道题（预览 / 替换 / 导出共用）
+class ExamQuestionItem {
+    int id;
+    String text;
+    String difficulty;
+    String category;
+
+    ExamQuestionItem(int id, String text, String diff, String cat) {
+        this.id = id;
+        this.text = text;
+        this.difficulty = diff;
+        this.category = cat;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + difficulty + "] " + text;
+    }
+}
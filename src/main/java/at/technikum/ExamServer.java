@@ -0,0 +1,352 @@
+package at.technikum;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// 内嵌 HTTP 服务（给学习平台调用）：App --serve[=端口]
+//   POST /api/exams[?format=pdf|json|html|md]   body: {"name": "...", "blueprint": {"Java": {"Easy": 2, "Hard": 1}},
+//                                              "balanceExposure": true, "persist": true}   （后两个可选）
+//                                       响应头 X-Data-Version = 生成时的数据快照版本
+//                                       带 "constraints": {"minPoints", "maxPoints", "maxMinutes", "maxPerTopic",
+//                                       "mandatory": [id...], "avoidLastExams"} 时用 BlueprintSolver（难度可写 "Any"），
+//                                       不可行返回 422 和 problems 列表
+//                                       html / md 边生成边写回（chunked）；图片默认链接到 /api/attachments/<hash>，
+//                                       ?inlineImages=true 时内嵌成 data: URI
+//                                       pdf 加 &edition=teacher 得到教师版（每题后附 metadata 里的答案 / 评分说明）
+//   GET  /api/attachments/<sha256>      附件图片（内容寻址，可以永久缓存）
+//   GET  /api/questions?q=&category=&difficulty=&limit=
+//   GET  /api/metrics   (Prometheus 文本)
+//   GET  /api/health
+// 每个请求一个虚拟线程，共用连接池和分类缓存
+public class ExamServer {
+
+    private static final int MAX_SEARCH_LIMIT = 500;
+    static final String CATEGORY_IDS_SQL = "SELECT id, name FROM Categories ORDER BY name";
+
+    private final ConnectionPool pool;
+    private final QuestionStore store = new QuestionStore();
+    private final ExamGenerator generator = new ExamGenerator();
+    private final ExamGenerator balanced = new ExamGenerator(null, new ExposureSampler());
+    private final ExamStore examStore = new ExamStore();
+    private final BlueprintSolver solver = new BlueprintSolver();
+    private final AttachmentStore attachments = new AttachmentStore();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public ExamServer(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 8080;
+        for (String a : args) {
+            if (a.startsWith("--serve=")) port = Integer.parseInt(a.substring("--serve=".length()));
+        }
+        Metrics.enable();
+        ExamServer s = new ExamServer(ConnectionPool.shared());
+        s.start(port);
+        System.out.println("Exam server listening on http://localhost:" + s.port() + "/api/");
+    }
+
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/exams", timed("exams", this::exams));
+        server.createContext("/api/questions", timed("questions", this::questions));
+        server.createContext("/api/attachments/", timed("attachments", this::attachments));
+        server.createContext("/api/metrics", timed("metrics", ex ->
+                send(ex, 200, "text/plain; version=0.0.4", Metrics.toPrometheus().getBytes(StandardCharsets.UTF_8))));
+        server.createContext("/api/health", ex -> send(ex, 200, "text/plain", "ok".getBytes(StandardCharsets.UTF_8)));
+        server.start();
+    }
+
+    public int port() { return server.getAddress().getPort(); }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+        WriteQueue.shared().close();
+        pool.close();
+    }
+
+    // ---- handlers ----
+
+    private void exams(HttpExchange ex) throws IOException, SQLException {
+        if (!ex.getRequestMethod().equals("POST")) {
+            error(ex, 405, "Use POST");
+            return;
+        }
+        String name;
+        boolean balance, persist;
+        Map<String, Map<String, Integer>> blueprint = new LinkedHashMap<>();
+        BlueprintSolver.Blueprint constrained = null;
+        try {
+            Object body = Json.parse(new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            if (!(body instanceof Map<?, ?> root) || !(root.get("blueprint") instanceof Map<?, ?> bp)) {
+                error(ex, 400, "Expected {\"name\": ..., \"blueprint\": {category: {difficulty: count}}}");
+                return;
+            }
+            name = root.get("name") instanceof String n && !n.isBlank() ? n : "Exam";
+            balance = Boolean.TRUE.equals(root.get("balanceExposure"));
+            persist = Boolean.TRUE.equals(root.get("persist"));
+            for (var cat : bp.entrySet()) {
+                if (!(cat.getValue() instanceof Map<?, ?> diffs)) continue;
+                Map<String, Integer> counts = new LinkedHashMap<>();
+                for (var d : diffs.entrySet()) {
+                    if (d.getValue() instanceof Double n) counts.put(String.valueOf(d.getKey()), n.intValue());
+                }
+                blueprint.put(String.valueOf(cat.getKey()), counts);
+            }
+            if (root.get("constraints") instanceof Map<?, ?> cons) {
+                constrained = new BlueprintSolver.Blueprint();
+                constrained.cells.putAll(blueprint);
+                if (cons.get("minPoints") instanceof Double n) constrained.minPoints = n.intValue();
+                if (cons.get("maxPoints") instanceof Double n) constrained.maxPoints = n.intValue();
+                if (cons.get("maxMinutes") instanceof Double n) constrained.maxMinutes = n.intValue();
+                if (cons.get("maxPerTopic") instanceof Double n) constrained.maxPerTopic = n.intValue();
+                if (cons.get("avoidLastExams") instanceof Double n) constrained.avoidLastExams = n.intValue();
+                if (cons.get("mandatory") instanceof List<?> ids) {
+                    for (Object id : ids) if (id instanceof Double n) constrained.mandatory.add(n.intValue());
+                }
+            }
+        } catch (IllegalArgumentException bad) {
+            error(ex, 400, "Invalid JSON: " + bad.getMessage());
+            return;
+        }
+
+        ExamGenerator.Exam exam;
+        int examId = 0;
+        try (Connection c = pool.get()) {
+            Map<String, Integer> categoryIds = categoryIds(c);
+            for (String cat : blueprint.keySet()) {
+                if (!categoryIds.containsKey(cat)) {
+                    error(ex, 404, "Unknown category: " + cat);
+                    return;
+                }
+            }
+            if (constrained != null) {
+                BlueprintSolver.Result r = solver.solve(c, categoryIds, constrained);
+                if (!r.feasible()) {
+                    StringBuilder sb = new StringBuilder("{\"error\":\"Blueprint is infeasible\",\"problems\":[");
+                    for (int i = 0; i < r.problems.size(); i++) sb.append(i > 0 ? "," : "").append(Json.quote(r.problems.get(i)));
+                    sendJson(ex, 422, sb.append("]}").toString());
+                    return;
+                }
+                exam = r.exam();
+            } else {
+                exam = (balance ? balanced : generator).generate(c, categoryIds, blueprint);
+            }
+            if (persist && !exam.questions.isEmpty()) {
+                // 存档走单写者队列，多个请求同时出卷时攒成一次提交
+                List<ExamQuestionItem> chosen = exam.questions;
+                examId = WriteQueue.shared().call(w -> examStore.saveExam(w, name, chosen));
+                balanced.recordUse(exam.questions);
+            }
+        }
+        List<ExamQuestionItem> items = exam.questions;
+        ex.getResponseHeaders().add("X-Data-Version", exam.dataVersion);
+        if (examId > 0) ex.getResponseHeaders().add("X-Exam-Id", Integer.toString(examId));
+
+        Map<String, String> params = query(ex);
+        String format = params.getOrDefault("format", "");
+        String accept = ex.getRequestHeaders().getFirst("Accept");
+        ExamExporter.Format web = ExamExporter.Format.of(format);
+        if (web == null && format.isEmpty() && accept != null) {
+            if (accept.contains("text/html")) web = ExamExporter.Format.HTML;
+            else if (accept.contains("text/markdown")) web = ExamExporter.Format.MARKDOWN;
+        }
+        if (web != null) {
+            boolean inline = Boolean.parseBoolean(params.get("inlineImages"));
+            ex.getResponseHeaders().set("Content-Type", web.contentType);
+            ex.sendResponseHeaders(200, 0);
+            try (Writer w = new BufferedWriter(new OutputStreamWriter(ex.getResponseBody(), StandardCharsets.UTF_8))) {
+                new ExamExporter(this::attachment, inline ? null : "/api/attachments/").write(w, web, name, items.iterator());
+            }
+            return;
+        }
+        if (format.equals("pdf") || (format.isEmpty() && accept != null && accept.contains("application/pdf"))) {
+            ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+            boolean teacher = "teacher".equalsIgnoreCase(params.get("edition"));
+            if (teacher) {
+                Map<Integer, String> metadata;
+                try (Connection c = pool.get()) {
+                    metadata = store.findMetadata(c, items.stream().map(q -> q.id).toList());
+                }
+                PDFGenerator.writeEditions(null, pdf, name, ExamGenerator.toLines(items),
+                        ExamGenerator.toAnswers(items, metadata), this::attachment);
+            } else {
+                PDFGenerator.write(pdf, name, ExamGenerator.toLines(items), this::attachment);
+            }
+            ex.getResponseHeaders().add("Content-Disposition", "attachment; filename=\"Exam_"
+                    + name.replaceAll("[^A-Za-z0-9_-]+", "_") + (teacher ? "_Answers" : "") + ".pdf\"");
+            send(ex, 200, "application/pdf", pdf.toByteArray());
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder("{\"name\":").append(Json.quote(name))
+                .append(",\"dataVersion\":").append(Json.quote(exam.dataVersion))
+                .append(examId > 0 ? ",\"examId\":" + examId : "")
+                .append(",\"questions\":[");
+        for (int i = 0; i < items.size(); i++) {
+            ExamQuestionItem q = items.get(i);
+            if (i > 0) sb.append(',');
+            sb.append("{\"position\":").append(i + 1)
+                    .append(",\"id\":").append(q.id)
+                    .append(",\"category\":").append(Json.quote(q.category))
+                    .append(",\"difficulty\":").append(Json.quote(q.difficulty))
+                    .append(",\"text\":").append(Json.quote(q.text)).append('}');
+        }
+        sb.append("]}");
+        sendJson(ex, 200, sb.toString());
+    }
+
+    private void questions(HttpExchange ex) throws IOException, SQLException {
+        if (!ex.getRequestMethod().equals("GET")) {
+            error(ex, 405, "Use GET");
+            return;
+        }
+        Map<String, String> q = query(ex);
+        int limit;
+        try {
+            limit = Math.max(1, Math.min(MAX_SEARCH_LIMIT, Integer.parseInt(q.getOrDefault("limit", "50"))));
+        } catch (NumberFormatException bad) {
+            error(ex, 400, "limit must be a number");
+            return;
+        }
+
+        List<Question> found;
+        try (Connection c = pool.get()) {
+            Integer catId = null;
+            if (q.containsKey("category")) {
+                catId = categoryIds(c).get(q.get("category"));
+                if (catId == null) {
+                    error(ex, 404, "Unknown category: " + q.get("category"));
+                    return;
+                }
+            }
+            found = store.search(c, catId, q.get("difficulty"), q.get("q"), limit);
+        }
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < found.size(); i++) {
+            Question x = found.get(i);
+            if (i > 0) sb.append(',');
+            sb.append("{\"id\":").append(x.id)
+                    .append(",\"difficulty\":").append(Json.quote(x.difficulty))
+                    .append(",\"text\":").append(Json.quote(x.text)).append('}');
+        }
+        sendJson(ex, 200, sb.append(']').toString());
+    }
+
+    private void attachments(HttpExchange ex) throws IOException {
+        if (!ex.getRequestMethod().equals("GET")) {
+            error(ex, 405, "Use GET");
+            return;
+        }
+        String hash = ex.getRequestURI().getPath().substring("/api/attachments/".length());
+        byte[] data = hash.matches("[0-9a-f]{64}") ? attachment(hash) : null;
+        if (data == null) {
+            error(ex, 404, "No such attachment");
+            return;
+        }
+        // 内容寻址：hash 不变内容就不变
+        ex.getResponseHeaders().set("Cache-Control", "public, max-age=31536000, immutable");
+        ex.getResponseHeaders().set("ETag", "\"" + hash + "\"");
+        if (("\"" + hash + "\"").equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+            ex.sendResponseHeaders(304, -1);
+            return;
+        }
+        String mime = AttachmentStore.mimeOf(data);
+        send(ex, 200, mime == null ? "application/octet-stream" : mime, data);
+    }
+
+    // ---- helpers ----
+
+    // 分类名 -> id：每个请求在自己的连接上现读（分类表很小），分类删了又按同名重建也不会拿到旧 id
+    private static Map<String, Integer> categoryIds(Connection c) throws SQLException {
+        Map<String, Integer> ids = new HashMap<>();
+        try (ResultSet rs = StatementCache.of(c).prepare(CATEGORY_IDS_SQL).executeQuery()) {
+            while (rs.next()) ids.putIfAbsent(rs.getString("name"), rs.getInt("id"));
+        }
+        return ids;
+    }
+
+    private byte[] attachment(String hash) throws IOException {
+        try (Connection c = pool.get()) {
+            return attachments.get(c, hash);
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private interface Handler {
+        void handle(HttpExchange ex) throws IOException, SQLException;
+    }
+
+    // 请求级别的耗时和状态码统计
+    private HttpHandler timed(String name, Handler h) {
+        return ex -> {
+            long t = Metrics.start();
+            try {
+                h.handle(ex);
+            } catch (SQLException | RuntimeException e) {
+                // 边生成边写回的响应头已经发出去了，改不了状态码：直接关掉，客户端收到的是没结束的 chunked 响应
+                if (ex.getResponseCode() == -1) error(ex, 500, e.getMessage());
+                else Metrics.count("http." + name + ".aborted");
+            } finally {
+                Metrics.stop("http." + name, t);
+                Metrics.count("http." + name + "." + ex.getResponseCode());
+                ex.close();
+            }
+        };
+    }
+
+    private static Map<String, String> query(HttpExchange ex) {
+        Map<String, String> out = new HashMap<>();
+        String raw = ex.getRequestURI().getRawQuery();
+        if (raw == null) return out;
+        for (String kv : raw.split("&")) {
+            int eq = kv.indexOf('=');
+            if (eq <= 0) continue;
+            String v = URLDecoder.decode(kv.substring(eq + 1), StandardCharsets.UTF_8);
+            if (!v.isBlank()) out.put(URLDecoder.decode(kv.substring(0, eq), StandardCharsets.UTF_8), v);
+        }
+        return out;
+    }
+
+    private static void error(HttpExchange ex, int status, String msg) throws IOException {
+        sendJson(ex, status, "{\"error\":" + Json.quote(msg) + "}");
+    }
+
+    private static void sendJson(HttpExchange ex, int status, String body) throws IOException {
+        send(ex, status, "application/json; charset=utf-8", body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange ex, int status, String type, byte[] body) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", type);
+        ex.sendResponseHeaders(status, body.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package at.technikum;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+// 导出过的试卷存进 Exams / Exam_Questions（QuestionUsage 由触发器跟着更新）
+public class ExamStore {
+
+    static final String INSERT_EXAM_SQL = "INSERT INTO Exams (title, created_at) VALUES (?, datetime('now'))";
+    static final String INSERT_ITEM_SQL =
+            "INSERT OR IGNORE INTO Exam_Questions (exam_id, question_id, order_index) VALUES (?, ?, ?)";
+
+    // 一个事务写入试卷和题目顺序，返回新试卷 id
+    public int saveExam(Connection c, String title, List<ExamQuestionItem> items) throws SQLException {
+        long t = Metrics.start();
+        var ev = ExamEvents.query("saveExam", INSERT_ITEM_SQL);
+        boolean oldAuto = c.getAutoCommit();
+        c.setAutoCommit(false);
+        try {
+            StatementCache cache = StatementCache.of(c);
+            PreparedStatement ex = cache.prepareWithKeys(INSERT_EXAM_SQL);
+            ex.setString(1, title);
+            ex.executeUpdate();
+            int examId;
+            try (ResultSet keys = ex.getGeneratedKeys()) {
+                if (!keys.next()) throw new SQLException("No id generated for exam " + title);
+                examId = keys.getInt(1);
+            }
+
+            PreparedStatement ps = cache.prepare(INSERT_ITEM_SQL);
+            int pos = 1;
+            for (ExamQuestionItem item : items) {
+                ps.setInt(1, examId);
+                ps.setInt(2, item.id);
+                ps.setInt(3, pos++);
+                ps.addBatch();
+            }
+            for (int n : ps.executeBatch()) if (n > 0) ev.rows += n;
+            c.commit();
+            return examId;
+        } catch (SQLException e) {
+            try { c.rollback(); } catch (SQLException ignore) {}
+            throw e;
+        } finally {
+            try { c.setAutoCommit(oldAuto); } catch (SQLException ignore) {}
+            ev.commit();
+            Metrics.stop("store.saveExam", t);
+        }
+    }
+}
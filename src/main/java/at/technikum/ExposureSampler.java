@@ -0,0 +1,206 @@
+package at.technikum;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+// 曝光均衡抽题：权重 = 1 / (1 + 使用次数)^2，用得少的题更容易被抽到
+// 每个 分类 × 难度 单元格缓存一张 alias 表（Vose），每次抽取 O(1)
+// 单元格在数据版本（BankIndex 的数据指纹：题目增删改 / 回滚 / 改分类 / 合并题库都会变）变化或超过 -Dexam.exposure.ttl 秒（默认 300，兜住别的进程的写入）后重新加载；
+// 本进程保存试卷后调用 recordUse，只把受影响的单元格标脏，下次抽取时重建它们的 alias 表
+public final class ExposureSampler {
+
+    static final long TTL_MS = Long.getLong("exam.exposure.ttl", 300) * 1000;
+
+    static final String CELL_SQL = """
+            SELECT ql.question_id AS id, ql.text, COALESCE(u.times_used, 0) AS used
+            FROM QuestionLatest ql
+            JOIN Question_Categories qc ON ql.question_id = qc.question_id
+            LEFT JOIN QuestionUsage u ON u.question_id = ql.question_id
+            WHERE qc.category_id = ? AND ql.difficulty = ?
+            ORDER BY ql.question_id
+            """;
+
+    // 抽到一个候选时回调；返回 true 表示收下
+    public interface Pick {
+        boolean accept(int id, String text);
+    }
+
+    // 一张 alias 表建好后不再修改，抽取时不用加锁
+    // used 是建表时使用次数的副本：Cell.used 只在锁里改，抽取时读这份
+    private static final class Alias {
+        final double[] prob;
+        final int[] alias;
+        final int[] used;
+
+        Alias(double[] prob, int[] alias, int[] used) {
+            this.prob = prob;
+            this.alias = alias;
+            this.used = used;
+        }
+
+        int next(ThreadLocalRandom rnd) {
+            int i = rnd.nextInt(prob.length);
+            return rnd.nextDouble() < prob[i] ? i : alias[i];
+        }
+    }
+
+    private static final class Cell {
+        final String dataVersion;
+        final long loadedAt = System.currentTimeMillis();
+        final int[] ids;          // 按 id 升序，recordUse 用二分查找
+        final String[] texts;
+        final int[] used;         // 只在 ExposureSampler 的锁里读写
+        volatile Alias table;     // 只会被整体替换，抽取时读一次
+        boolean dirty = true;
+
+        Cell(String dataVersion, int[] ids, String[] texts, int[] used) {
+            this.dataVersion = dataVersion;
+            this.ids = ids;
+            this.texts = texts;
+            this.used = used;
+        }
+    }
+
+    private final Map<String, Cell> cells = new HashMap<>();
+
+    // 在调用方的读事务里抽 count 道题；返回实际收下的数量（单元格不够时会少于 count）
+    public int sample(Connection c, int categoryId, String difficulty, String dataVersion, int count, Pick pick) throws SQLException {
+        long t = Metrics.start();
+        try {
+            Cell cell = cell(c, categoryId, difficulty, dataVersion);
+            int n = cell.ids.length;
+            if (n == 0 || count <= 0) return 0;
+            Alias table = cell.table;
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            BitSet tried = new BitSet(n);
+            int taken = 0, seen = 0;
+
+            // 有放回地抽，抽到重复或被拒的就再抽；候选不多时很快会撞车，改用下面的兜底
+            for (int attempts = count * 8 + 32; taken < count && attempts > 0 && seen < n; attempts--) {
+                int i = table.next(rnd);
+                if (tried.get(i)) continue;
+                tried.set(i);
+                seen++;
+                if (pick.accept(cell.ids[i], cell.texts[i])) taken++;
+            }
+            if (taken < count && seen < n) {
+                // 兜底：剩下的候选按加权随机顺序（key = -ln(u) / w）逐个尝试
+                List<double[]> order = new ArrayList<>();
+                for (int i = tried.nextClearBit(0); i < n; i = tried.nextClearBit(i + 1)) {
+                    order.add(new double[]{-Math.log(1 - rnd.nextDouble()) / weight(table.used[i]), i});
+                }
+                order.sort((a, b) -> Double.compare(a[0], b[0]));
+                for (int k = 0; k < order.size() && taken < count; k++) {
+                    int i = (int) order.get(k)[1];
+                    if (pick.accept(cell.ids[i], cell.texts[i])) taken++;
+                }
+            }
+            return taken;
+        } finally {
+            Metrics.stop("exposure.sample", t);
+        }
+    }
+
+    // 本进程保存了一份试卷：更新缓存里的使用次数，涉及的单元格下次抽取前重建 alias 表
+    public synchronized void recordUse(Collection<Integer> questionIds) {
+        for (Cell cell : cells.values()) {
+            boolean touched = false;
+            for (int id : questionIds) {
+                int i = Arrays.binarySearch(cell.ids, id);
+                if (i >= 0) {
+                    cell.used[i]++;
+                    touched = true;
+                }
+            }
+            if (touched) cell.dirty = true;
+        }
+    }
+
+    public synchronized void clear() {
+        cells.clear();
+    }
+
+    private synchronized Cell cell(Connection c, int categoryId, String difficulty, String dataVersion) throws SQLException {
+        String key = categoryId + "|" + difficulty;
+        Cell cell = cells.get(key);
+        if (cell == null || !cell.dataVersion.equals(dataVersion) || System.currentTimeMillis() - cell.loadedAt > TTL_MS) {
+            cell = load(c, categoryId, difficulty, dataVersion);
+            cells.put(key, cell);
+        }
+        if (cell.dirty) {
+            cell.table = build(cell.used.clone());
+            cell.dirty = false;
+            Metrics.count("exposure.rebuilds");
+        }
+        return cell;
+    }
+
+    private static Cell load(Connection c, int categoryId, String difficulty, String dataVersion) throws SQLException {
+        PreparedStatement ps = StatementCache.of(c).prepare(CELL_SQL);
+        ps.setInt(1, categoryId);
+        ps.setString(2, difficulty);
+        int[] ids = new int[64];
+        String[] texts = new String[64];
+        int[] used = new int[64];
+        int n = 0;
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                if (n == ids.length) {
+                    ids = Arrays.copyOf(ids, n * 2);
+                    texts = Arrays.copyOf(texts, n * 2);
+                    used = Arrays.copyOf(used, n * 2);
+                }
+                ids[n] = rs.getInt("id");
+                texts[n] = rs.getString("text");
+                used[n] = rs.getInt("used");
+                n++;
+            }
+        }
+        Metrics.count("exposure.cellLoads");
+        return new Cell(dataVersion, Arrays.copyOf(ids, n), Arrays.copyOf(texts, n), Arrays.copyOf(used, n));
+    }
+
+    static double weight(int used) {
+        return 1.0 / ((1.0 + used) * (1.0 + used));
+    }
+
+    // Vose 的 alias 方法：O(n) 建表；used 交给返回的表，调用方传副本
+    private static Alias build(int[] used) {
+        int n = used.length;
+        double[] prob = new double[n];
+        int[] alias = new int[n];
+        if (n == 0) return new Alias(prob, alias, used);
+
+        double total = 0;
+        for (int u : used) total += weight(u);
+        double[] scaled = new double[n];
+        int[] small = new int[n], large = new int[n];
+        int ns = 0, nl = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weight(used[i]) * n / total;
+            if (scaled[i] < 1) small[ns++] = i;
+            else large[nl++] = i;
+        }
+        while (ns > 0 && nl > 0) {
+            int s = small[--ns], l = large[--nl];
+            prob[s] = scaled[s];
+            alias[s] = l;
+            scaled[l] = scaled[l] + scaled[s] - 1;
+            if (scaled[l] < 1) small[ns++] = l;
+            else large[nl++] = l;
+        }
+        while (nl > 0) prob[large[--nl]] = 1;
+        while (ns > 0) prob[small[--ns]] = 1;   // 浮点误差留下的
+        return new Alias(prob, alias, used);
+    }
+}
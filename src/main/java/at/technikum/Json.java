@@ -0,0 +1,147 @@
+package at.technikum;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 极简 JSON：解析成 Map / List / String / Double / Boolean / null，另有字符串转义
+// 只给 HTTP 接口用，没有引入额外依赖
+public final class Json {
+
+    private final String s;
+    private int i;
+
+    private Json(String s) { this.s = s; }
+
+    public static Object parse(String text) {
+        Json p = new Json(text);
+        p.ws();
+        Object v = p.value();
+        p.ws();
+        if (p.i != p.s.length()) throw p.error("Unexpected trailing content");
+        return v;
+    }
+
+    public static String quote(String v) {
+        if (v == null) return "null";
+        StringBuilder sb = new StringBuilder(v.length() + 2).append('"');
+        for (int k = 0; k < v.length(); k++) {
+            char c = v.charAt(k);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private Object value() {
+        if (i >= s.length()) throw error("Unexpected end of input");
+        char c = s.charAt(i);
+        return switch (c) {
+            case '{' -> object();
+            case '[' -> array();
+            case '"' -> string();
+            case 't' -> literal("true", Boolean.TRUE);
+            case 'f' -> literal("false", Boolean.FALSE);
+            case 'n' -> literal("null", null);
+            default -> number();
+        };
+    }
+
+    private Map<String, Object> object() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        i++;
+        ws();
+        if (peek('}')) { i++; return out; }
+        while (true) {
+            ws();
+            String key = string();
+            ws();
+            expect(':');
+            ws();
+            out.put(key, value());
+            ws();
+            if (peek(',')) { i++; continue; }
+            expect('}');
+            return out;
+        }
+    }
+
+    private List<Object> array() {
+        List<Object> out = new ArrayList<>();
+        i++;
+        ws();
+        if (peek(']')) { i++; return out; }
+        while (true) {
+            ws();
+            out.add(value());
+            ws();
+            if (peek(',')) { i++; continue; }
+            expect(']');
+            return out;
+        }
+    }
+
+    private String string() {
+        expect('"');
+        StringBuilder sb = new StringBuilder();
+        while (i < s.length()) {
+            char c = s.charAt(i++);
+            if (c == '"') return sb.toString();
+            if (c != '\\') { sb.append(c); continue; }
+            if (i >= s.length()) break;
+            char e = s.charAt(i++);
+            switch (e) {
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'u' -> {
+                    if (i + 4 > s.length()) throw error("Bad unicode escape");
+                    sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                    i += 4;
+                }
+                default -> sb.append(e);
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private Double number() {
+        int start = i;
+        while (i < s.length() && "+-0123456789.eE".indexOf(s.charAt(i)) >= 0) i++;
+        if (start == i) throw error("Unexpected character '" + s.charAt(i) + "'");
+        return Double.parseDouble(s.substring(start, i));
+    }
+
+    private Object literal(String word, Object v) {
+        if (!s.startsWith(word, i)) throw error("Expected " + word);
+        i += word.length();
+        return v;
+    }
+
+    private boolean peek(char c) { return i < s.length() && s.charAt(i) == c; }
+
+    private void expect(char c) {
+        if (!peek(c)) throw error("Expected '" + c + "'");
+        i++;
+    }
+
+    private void ws() {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+    }
+
+    private IllegalArgumentException error(String msg) {
+        return new IllegalArgumentException(msg + " at position " + i);
+    }
+}
@@ -0,0 +1,196 @@
+package at.technikum;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// 轻量级指标：计时器（带直方图）+ 计数器
+// 关闭时 start() 直接返回 0，stop() 立即返回，几乎没有开销
+public final class Metrics {
+
+    private static volatile boolean enabled = Boolean.getBoolean("exam.metrics");
+
+    private static final Map<String, Timer> TIMERS = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+
+    private Metrics() {}
+
+    public static boolean isEnabled() { return enabled; }
+
+    public static void enable() { enabled = true; }
+
+    public static void reset() {
+        TIMERS.clear();
+        COUNTERS.clear();
+    }
+
+    // 用法：long t = Metrics.start(); try { ... } finally { Metrics.stop("db.get", t); }
+    public static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public static void stop(String name, long startNanos) {
+        if (startNanos == 0L) return;
+        record(name, System.nanoTime() - startNanos);
+    }
+
+    public static void record(String name, long nanos) {
+        if (!enabled) return;
+        TIMERS.computeIfAbsent(name, k -> new Timer()).record(nanos);
+    }
+
+    public static void count(String name) { count(name, 1); }
+
+    public static void count(String name, long delta) {
+        if (!enabled) return;
+        COUNTERS.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+    }
+
+    public static List<Snapshot> timers() {
+        List<Snapshot> out = new ArrayList<>();
+        TIMERS.forEach((name, t) -> out.add(t.snapshot(name)));
+        out.sort((a, b) -> a.name.compareTo(b.name));
+        return out;
+    }
+
+    public static Map<String, Long> counters() {
+        Map<String, Long> out = new java.util.TreeMap<>();
+        COUNTERS.forEach((name, c) -> out.put(name, c.sum()));
+        return out;
+    }
+
+    // JSON 导出（毫秒）
+    public static String toJson() {
+        StringBuilder sb = new StringBuilder("{\n  \"timers\": {");
+        List<Snapshot> ts = timers();
+        for (int i = 0; i < ts.size(); i++) {
+            Snapshot s = ts.get(i);
+            sb.append(i == 0 ? "\n" : ",\n");
+            sb.append(String.format(Locale.ROOT,
+                    "    \"%s\": {\"count\": %d, \"totalMs\": %.3f, \"p50Ms\": %.3f, \"p95Ms\": %.3f, \"p99Ms\": %.3f, \"maxMs\": %.3f}",
+                    s.name, s.count, ms(s.totalNanos), ms(s.p50), ms(s.p95), ms(s.p99), ms(s.max)));
+        }
+        sb.append(ts.isEmpty() ? "},\n" : "\n  },\n");
+        sb.append("  \"counters\": {");
+        boolean first = true;
+        for (var e : counters().entrySet()) {
+            sb.append(first ? "\n" : ",\n");
+            sb.append("    \"").append(e.getKey()).append("\": ").append(e.getValue());
+            first = false;
+        }
+        sb.append(first ? "}\n" : "\n  }\n");
+        return sb.append("}\n").toString();
+    }
+
+    // Prometheus 文本格式（秒）
+    public static String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        for (Snapshot s : timers()) {
+            String n = "exam_" + promName(s.name) + "_seconds";
+            sb.append("# TYPE ").append(n).append(" summary\n");
+            sb.append(String.format(Locale.ROOT, "%s{quantile=\"0.5\"} %.9f%n", n, s.p50 / 1e9));
+            sb.append(String.format(Locale.ROOT, "%s{quantile=\"0.95\"} %.9f%n", n, s.p95 / 1e9));
+            sb.append(String.format(Locale.ROOT, "%s{quantile=\"0.99\"} %.9f%n", n, s.p99 / 1e9));
+            sb.append(String.format(Locale.ROOT, "%s_sum %.9f%n", n, s.totalNanos / 1e9));
+            sb.append(n).append("_count ").append(s.count).append('\n');
+        }
+        for (var e : counters().entrySet()) {
+            String n = "exam_" + promName(e.getKey()) + "_total";
+            sb.append("# TYPE ").append(n).append(" counter\n");
+            sb.append(n).append(' ').append(e.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String promName(String name) {
+        return name.replaceAll("[^a-zA-Z0-9_]", "_");
+    }
+
+    static double ms(long nanos) { return nanos / 1_000_000.0; }
+
+    public static final class Snapshot {
+        public final String name;
+        public final long count, totalNanos, p50, p95, p99, max;
+
+        Snapshot(String name, long count, long totalNanos, long p50, long p95, long p99, long max) {
+            this.name = name;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public String getName() { return name; }
+        public long getCount() { return count; }
+        public String getTotalMs() { return String.format(Locale.ROOT, "%.2f", ms(totalNanos)); }
+        public String getP50Ms() { return String.format(Locale.ROOT, "%.3f", ms(p50)); }
+        public String getP95Ms() { return String.format(Locale.ROOT, "%.3f", ms(p95)); }
+        public String getP99Ms() { return String.format(Locale.ROOT, "%.3f", ms(p99)); }
+        public String getMaxMs() { return String.format(Locale.ROOT, "%.3f", ms(max)); }
+    }
+
+    // 对数分桶直方图：每个 2 的幂再分 8 个子桶，相对误差约 12%
+    static final class Timer {
+        private static final int SUB = 8;
+        private static final int BUCKETS = 64 * SUB;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            buckets.incrementAndGet(bucketOf(nanos));
+            count.increment();
+            total.add(nanos);
+            long m;
+            while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) { /* retry */ }
+        }
+
+        static int bucketOf(long v) {
+            if (v < SUB) return (int) v;
+            int exp = 63 - Long.numberOfLeadingZeros(v);
+            int sub = (int) ((v >>> (exp - 3)) & (SUB - 1));
+            return (exp - 2) * SUB + sub;
+        }
+
+        // 桶的上界，作为该桶内所有值的估计
+        static long upperBound(int bucket) {
+            if (bucket < SUB) return bucket;
+            int exp = bucket / SUB + 2;
+            int sub = bucket % SUB;
+            return ((long) (SUB + sub + 1) << (exp - 3)) - 1;
+        }
+
+        Snapshot snapshot(String name) {
+            long[] copy = new long[BUCKETS];
+            long n = 0;
+            for (int i = 0; i < BUCKETS; i++) { copy[i] = buckets.get(i); n += copy[i]; }
+            long mx = max.get();
+            return new Snapshot(name, n, total.sum(),
+                    Math.min(mx, percentile(copy, n, 0.50)),
+                    Math.min(mx, percentile(copy, n, 0.95)),
+                    Math.min(mx, percentile(copy, n, 0.99)),
+                    mx);
+        }
+
+        private static long percentile(long[] b, long n, double p) {
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(p * n);
+            long seen = 0;
+            for (int i = 0; i < b.length; i++) {
+                seen += b[i];
+                if (seen >= rank) return upperBound(i);
+            }
+            return upperBound(b.length - 1);
+        }
+    }
+}
@@ -5,17 +5,22 @@ import javafx.stage.Window;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
-import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Matcher;
 
 public class PDFGenerator {
-    public static void generate(Window owner, String examName, List<String> lines) throws IOException {
+    // 返回 false 表示用户取消了保存
+    public static boolean generate(Window owner, String examName, List<String> lines, PdfImages.Source images) throws IOException {
 
         //让用户选择保存位置
         FileChooser fileChooser = new FileChooser();
@@ -28,121 +33,278 @@ public class PDFGenerator {
         File file = fileChooser.showSaveDialog(owner);
         if (file == null) {
             System.out.println("User canceled save dialog.");
-            return;
+            return false;
         }
 
-        //生成 PDF 文档
-        try (PDDocument document = new PDDocument()) {
-            PDPage page = new PDPage(PDRectangle.A4);
-            document.addPage(page);
+        // 保存到用户选择的路径
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            write(out, examName, lines, images);
+        }
 
-            float margin = 50;
-            float yStart = PDRectangle.A4.getHeight() - margin;
-            float width = PDRectangle.A4.getWidth() - 2 * margin;
-            float fontSize = 12f;
-            float leading = 1.2f * fontSize;
+        System.out.println("PDF saved at: " + file.getAbsolutePath());
+        return true;
+    }
 
-            PDType1Font font = PDType1Font.HELVETICA;
-            PDPageContentStream content = new PDPageContentStream(document, page);
-            content.beginText();
-            content.setFont(font, fontSize);
-            content.setLeading(leading);
-            content.newLineAtOffset(margin, yStart);
-
-            float curY = yStart;
-
-            // 写标题
-            List<String> titleLines = wrapText("Exam: " + safeText(examName), font, fontSize, width);
-            for (String t : titleLines) {
-                content.showText(t);
-                content.newLine();
-                curY -= leading;
-                if (curY <= margin) {
-                    content.endText();
-                    content.close();
-                    page = new PDPage(PDRectangle.A4);
-                    document.addPage(page);
-                    content = new PDPageContentStream(document, page);
-                    content.beginText();
-                    content.setFont(font, fontSize);
-                    content.setLeading(leading);
-                    content.newLineAtOffset(margin, yStart);
-                    curY = yStart;
+    // 学生版存到用户选的位置，教师版存在旁边（同名加 _Answers）；返回 false 表示用户取消了保存
+    public static boolean generateEditions(Window owner, String examName, List<String> lines, List<String> answers,
+                                           PdfImages.Source images) throws IOException {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Save Student PDF (answer key is saved next to it)");
+        fileChooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter("PDF Files", "*.pdf")
+        );
+        fileChooser.setInitialFileName("Exam_" + examName.replaceAll("\\s+", "_") + ".pdf");
+
+        File file = fileChooser.showSaveDialog(owner);
+        if (file == null) return false;
+        String base = file.getName().toLowerCase().endsWith(".pdf")
+                ? file.getName().substring(0, file.getName().length() - 4) : file.getName();
+        File answerFile = new File(file.getParentFile(), base + "_Answers.pdf");
+
+        try (OutputStream student = new BufferedOutputStream(new FileOutputStream(file));
+             OutputStream teacher = new BufferedOutputStream(new FileOutputStream(answerFile))) {
+            writeEditions(student, teacher, examName, lines, answers, images);
+        }
+
+        System.out.println("PDFs saved at: " + file.getAbsolutePath() + ", " + answerFile.getAbsolutePath());
+        return true;
+    }
+
+    // 生成 PDF 并写入 out（不弹窗，可用于批量导出 / benchmark）
+    // 字体来自 PdfFonts.shared()：批量导出时字体程序和字宽只解析一次
+    public static void write(OutputStream out, String examName, List<String> lines) throws IOException {
+        write(out, examName, lines, null);
+    }
+
+    // images 不为 null 时，题干里的 [[image:<hash>]] 画成图片（同一张图每份文档只嵌入一次）
+    public static void write(OutputStream out, String examName, List<String> lines, PdfImages.Source images) throws IOException {
+        writeEditions(out, null, examName, lines, null, images);
+    }
+
+    // 学生版 + 教师版一次排出来（不用跑两遍 write）：
+    //   题目只换行一次，排好的行两份文档共用，各自分页；字体只借一份，两份文档各嵌各的子集
+    //   教师版标题下多一行 "Answer key"，每题后面接着 answers 里对应的内容（题目的 metadata：答案、评分说明）
+    //   answers 和 lines 一一对应，null / 空白表示这题没有；answers 为 null 表示都没有
+    //   student / teacher 为 null 的那一份不生成
+    public static void writeEditions(OutputStream student, OutputStream teacher, String examName,
+                                     List<String> lines, List<String> answers, PdfImages.Source images) throws IOException {
+        long tLayout = Metrics.start();
+        var studentEv = new ExamEvents.PdfExport();
+        var teacherEv = new ExamEvents.PdfExport();
+        if (student != null) studentEv.begin();
+        if (teacher != null) teacherEv.begin();
+        try (PDDocument studentDoc = new PDDocument();
+             PDDocument teacherDoc = new PDDocument();
+             PdfFonts.Lease lease = PdfFonts.shared().lease(student != null ? studentDoc : teacherDoc)) {
+            Layout s = student == null ? null : new Layout(studentDoc, lease, new PdfImages(studentDoc, images));
+            Layout t = teacher == null ? null
+                    : new Layout(teacherDoc, student == null ? lease : lease.share(teacherDoc), new PdfImages(teacherDoc, images));
+            Layout any = s != null ? s : t;
+
+            // 写标题，空一行
+            List<Piece> title = any == null ? List.of() : any.pieces("Exam: " + examName);
+            if (s != null) {
+                s.emit(title);
+                s.blank();
+            }
+            if (t != null) {
+                t.emit(title);
+                t.emit(t.pieces("Answer key"));
+                t.blank();
+            }
+
+            for (int i = 0; any != null && i < lines.size(); i++) {
+                List<Piece> question = any.pieces(lines.get(i));
+                // 每题后空一行
+                if (s != null) {
+                    s.emit(question);
+                    s.blank();
+                }
+                if (t != null) {
+                    t.emit(question);
+                    String answer = answers == null ? null : answers.get(i);
+                    if (answer != null && !answer.isBlank()) t.emit(t.pieces(answer.strip()));
+                    t.blank();
                 }
             }
 
-            // 空一行
-            content.newLine(); curY -= leading;
-
-            for (String raw : lines) {
-                String[] parts = raw.split("\r?\n");
-                for (String part : parts) {
-                    List<String> wrapped = wrapText(safeText(part), font, fontSize, width);
-                    for (String wl : wrapped) {
-                        content.showText(wl);
-                        content.newLine();
-                        curY -= leading;
-                        if (curY <= margin) {
-                            content.endText();
-                            content.close();
-                            page = new PDPage(PDRectangle.A4);
-                            document.addPage(page);
-                            content = new PDPageContentStream(document, page);
-                            content.beginText();
-                            content.setFont(font, fontSize);
-                            content.setLeading(leading);
-                            content.newLineAtOffset(margin, yStart);
-                            curY = yStart;
-                        }
-                    }
+            if (s != null) s.close();
+            if (t != null) t.close();
+            Metrics.stop("pdf.layout", tLayout);
+
+            if (s != null) save(studentDoc, s, student, examName, studentEv);
+            if (t != null) save(teacherDoc, t, teacher, examName, teacherEv);
+        }
+    }
+
+    private static void save(PDDocument document, Layout layout, OutputStream out, String examName,
+                             ExamEvents.PdfExport ev) throws IOException {
+        Metrics.count("pdf.pages", document.getNumberOfPages());
+
+        long tSave = Metrics.start();
+        CountingOutputStream counted = new CountingOutputStream(out);
+        document.save(counted);
+        Metrics.stop("pdf.save", tSave);
+
+        ev.exam = examName;
+        ev.pages = document.getNumberOfPages();
+        ev.lines = layout.lines;
+        ev.bytes = counted.count;
+        ev.commit();
+    }
+
+    // 排好的一段：换好行的一行文字，或者一张图片（image 不为 null）；不依赖具体文档，几份文档可以共用
+    private record Piece(String line, String image) {}
+
+    // A4 单栏排版：一行行往下写，写满换页；图片单独占几行的高度
+    private static final class Layout {
+        static final float MARGIN = 50;
+        static final float Y_START = PDRectangle.A4.getHeight() - MARGIN;
+        static final float WIDTH = PDRectangle.A4.getWidth() - 2 * MARGIN;
+        static final float FONT_SIZE = 12f;
+        static final float LEADING = 1.2f * FONT_SIZE;
+        static final float ASCENT = 0.8f * FONT_SIZE;
+        static final float MAX_IMAGE_HEIGHT = (Y_START - MARGIN) / 2;
+
+        final PDDocument document;
+        final PdfFonts.Lease font;
+        final PdfImages images;
+        PDPageContentStream content;
+        float curY;
+        int lines;
+
+        Layout(PDDocument document, PdfFonts.Lease font, PdfImages images) throws IOException {
+            this.document = document;
+            this.font = font;
+            this.images = images;
+            newPage();
+        }
+
+        // 一段原文（可以有多行）：按图片标记切开，文字部分自动换行
+        List<Piece> pieces(String raw) throws IOException {
+            List<Piece> out = new ArrayList<>();
+            for (String text : raw.split("\\r?\\n")) {
+                Matcher m = AttachmentStore.MARKER.matcher(text);
+                int from = 0;
+                boolean any = false;
+                while (m.find()) {
+                    String before = text.substring(from, m.start()).strip();
+                    if (!before.isEmpty()) wrapped(before, out);
+                    out.add(new Piece(null, m.group(1)));
+                    from = m.end();
+                    any = true;
                 }
-                // 每题后空一行
-                content.newLine(); curY -= leading;
-                if (curY <= margin) {
-                    content.endText();
-                    content.close();
-                    page = new PDPage(PDRectangle.A4);
-                    document.addPage(page);
-                    content = new PDPageContentStream(document, page);
-                    content.beginText();
-                    content.setFont(font, fontSize);
-                    content.setLeading(leading);
-                    content.newLineAtOffset(margin, yStart);
-                    curY = yStart;
+                String rest = text.substring(from);
+                if (!any || !rest.isBlank()) wrapped(any ? rest.strip() : rest, out);
+            }
+            return out;
+        }
+
+        void emit(List<Piece> pieces) throws IOException {
+            for (Piece p : pieces) {
+                if (p.image() != null) {
+                    image(p.image());
+                } else {
+                    content.showText(p.line());
+                    content.newLine();
+                    advance(LEADING);
+                    lines++;
                 }
             }
+        }
+
+        void blank() throws IOException {
+            content.newLine();
+            advance(LEADING);
+        }
+
+        private void wrapped(String text, List<Piece> out) throws IOException {
+            List<String> wrapped = wrapText(font.printable(text), font, FONT_SIZE, WIDTH);
+            Metrics.count("pdf.lines", wrapped.size());
+            for (String wl : wrapped) out.add(new Piece(wl, null));
+        }
 
+        // 缩到版心宽度、半页高度以内（只缩小不放大，1 像素 = 1 pt）；放不下就换页
+        private void image(String hash) throws IOException {
+            PDImageXObject img = images.get(hash);
+            if (img == null) {
+                emit(pieces("[image missing]"));
+                return;
+            }
+            float scale = Math.min(1f, Math.min(WIDTH / img.getWidth(), MAX_IMAGE_HEIGHT / img.getHeight()));
+            float w = img.getWidth() * scale, h = img.getHeight() * scale;
+            // 下一行文字的基线在 curY，图片顶边放在这一行字高的位置
+            if (curY + ASCENT - h < MARGIN) {
+                content.endText();
+                content.close();
+                newPage();
+            }
             content.endText();
-            content.close();
+            float top = curY + ASCENT;
+            content.drawImage(img, MARGIN, top - h, w, h);
+            curY = top - h - FONT_SIZE;
+            beginText();
+            if (curY <= MARGIN) advance(0);
+        }
 
-            // 保存到用户选择的路径
-            try (FileOutputStream out = new FileOutputStream(file)) {
-                document.save(out);
+        // 往下走一段，到底了就换页
+        private void advance(float dy) throws IOException {
+            curY -= dy;
+            if (curY <= MARGIN) {
+                content.endText();
+                content.close();
+                newPage();
             }
+        }
+
+        private void newPage() throws IOException {
+            PDPage page = new PDPage(PDRectangle.A4);
+            document.addPage(page);
+            content = new PDPageContentStream(document, page);
+            curY = Y_START;
+            beginText();
+        }
 
-            System.out.println("PDF saved at: " + file.getAbsolutePath());
+        private void beginText() throws IOException {
+            content.beginText();
+            content.setFont(font.font, FONT_SIZE);
+            content.setLeading(LEADING);
+            content.newLineAtOffset(MARGIN, curY);
+        }
+
+        void close() throws IOException {
+            content.endText();
+            content.close();
         }
     }
 
-    // 安全文本处理
-    private static String safeText(String s) {
-        if (s == null) return "";
-        return s.replaceAll("[\\x00-\\x08\\x0B\\x0C\\x0E-\\x1F]", " ");
+    // 统计写出的字节数（JFR 事件用）
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) { super(out); }
+
+        @Override public void write(int b) throws IOException { out.write(b); count++; }
+
+        @Override public void write(byte[] b, int off, int len) throws IOException { out.write(b, off, len); count += len; }
     }
 
-    // 自动换行函数
-    private static List<String> wrapText(String text, PDType1Font font, float fontSize, float maxWidth) throws IOException {
+    // 自动换行函数（宽度按词累加：行宽 + 空格 + 词宽，不用每次量整行）
+    static List<String> wrapText(String text, PdfFonts.Lease font, float fontSize, float maxWidth) throws IOException {
         List<String> result = new ArrayList<>();
         if (text == null || text.isEmpty()) { result.add(""); return result; }
 
+        float space = font.width(" ", fontSize);
         String[] words = text.split(" ");
         StringBuilder line = new StringBuilder();
+        float lineWidth = 0;
         for (String w : words) {
-            String candidate = line.length() == 0 ? w : line + " " + w;
-            float size = font.getStringWidth(candidate) / 1000 * fontSize;
+            float ww = font.width(w, fontSize);
+            float size = line.length() == 0 ? ww : lineWidth + space + ww;
             if (size <= maxWidth) {
-                line.setLength(0);
-                line.append(candidate);
+                if (line.length() > 0) line.append(' ');
+                line.append(w);
+                lineWidth = size;
             } else {
                 if (line.length() == 0) {
                     result.addAll(breakLongWord(w, font, fontSize, maxWidth));
@@ -150,6 +312,7 @@ public class PDFGenerator {
                     result.add(line.toString());
                     line.setLength(0);
                     line.append(w);
+                    lineWidth = ww;
                 }
             }
         }
@@ -157,18 +320,22 @@ public class PDFGenerator {
         return result;
     }
 
-    private static List<String> breakLongWord(String w, PDType1Font font, float fontSize, float maxWidth) throws IOException {
+    static List<String> breakLongWord(String w, PdfFonts.Lease font, float fontSize, float maxWidth) throws IOException {
         List<String> out = new ArrayList<>();
         StringBuilder cur = new StringBuilder();
-        for (char c : w.toCharArray()) {
-            cur.append(c);
-            float size = font.getStringWidth(cur.toString()) / 1000 * fontSize;
-            if (size > maxWidth) {
-                cur.setLength(cur.length() - 1);
+        float curWidth = 0;
+        for (int i = 0; i < w.length(); ) {
+            int cp = w.codePointAt(i);
+            String ch = w.substring(i, i + Character.charCount(cp));
+            float cw = font.width(ch, fontSize);
+            if (cur.length() > 0 && curWidth + cw > maxWidth) {
                 out.add(cur.toString());
                 cur.setLength(0);
-                cur.append(c);
+                curWidth = 0;
             }
+            cur.append(ch);
+            curWidth += cw;
+            i += ch.length();
         }
         if (cur.length() > 0) out.add(cur.toString());
         return out;
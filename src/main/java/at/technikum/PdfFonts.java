@@ -0,0 +1,211 @@
+package at.technikum;
+
+import org.apache.fontbox.ttf.CmapLookup;
+import org.apache.fontbox.ttf.OTFParser;
+import org.apache.fontbox.ttf.OpenTypeFont;
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Locale;
+
+// PDF 正文字体
+//   -Dexam.pdf.font=xxx.ttf / .otf（TrueType 轮廓）指定字体；没指定时找常见的系统 Unicode 字体；都没有就退回 Helvetica（只有 WinAnsi 字符）
+//   TTF 以子集方式嵌入（每份 PDF 只带用到的字形），umlaut / 非拉丁文字都能输出
+// 字体文件只读一次；解析好的 TrueTypeFont 放在池子里，批量导出时每份文档借同一个，不用每份 PDF 重新解析
+// （TrueTypeFont 按需读表，不能多线程同时用，所以并发导出时每个线程各借一个）
+// 字宽（1/1000 em）按码位缓存，所有文档共用；字体里没有的字符输出成 "?"
+public final class PdfFonts {
+
+    static final String FONT_PROPERTY = "exam.pdf.font";
+    private static final String[] SYSTEM_FONTS = {
+            "/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf",
+            "/usr/share/fonts/dejavu/DejaVuSans.ttf",
+            "/usr/share/fonts/TTF/DejaVuSans.ttf",
+            "/usr/share/fonts/truetype/liberation/LiberationSans-Regular.ttf",
+            "/usr/share/fonts/truetype/noto/NotoSans-Regular.ttf",
+            "C:/Windows/Fonts/arial.ttf",
+            "/System/Library/Fonts/Supplemental/Arial.ttf",
+            "/Library/Fonts/Arial Unicode.ttf",
+    };
+    private static final float UNKNOWN = Float.NaN;
+    private static final float MISSING = -1f;
+
+    private static volatile PdfFonts shared;
+
+    private final String name;
+    private final byte[] program;                   // null = Helvetica
+    private final ArrayDeque<TrueTypeFont> idle = new ArrayDeque<>();
+    private final float[] widths = new float[0x10000];   // BMP 码位 -> 字宽，NaN = 还没算，-1 = 字体里没有
+
+    private PdfFonts(String name, byte[] program) {
+        this.name = name;
+        this.program = program;
+        Arrays.fill(widths, UNKNOWN);
+    }
+
+    // 进程内共用一份（第一次用时按系统属性 / 系统字体决定）
+    public static PdfFonts shared() {
+        PdfFonts f = shared;
+        if (f != null) return f;
+        synchronized (PdfFonts.class) {
+            if (shared == null) shared = resolve(System.getProperty(FONT_PROPERTY));
+            return shared;
+        }
+    }
+
+    static PdfFonts resolve(String configured) {
+        if (configured != null && !configured.isBlank()) {
+            PdfFonts f = tryLoad(Path.of(configured));
+            if (f != null) return f;
+            System.err.println("PDF font " + configured + " cannot be embedded, falling back");
+        }
+        for (String candidate : SYSTEM_FONTS) {
+            Path p = Path.of(candidate);
+            if (!Files.isRegularFile(p)) continue;
+            PdfFonts f = tryLoad(p);
+            if (f != null) return f;
+        }
+        return new PdfFonts("Helvetica", null);
+    }
+
+    // 只接受能嵌入的字体：TrueType 轮廓（.ttf，或者 glyf 轮廓的 .otf）；CFF 轮廓的 OTF PDFBox 2 嵌不了
+    private static PdfFonts tryLoad(Path file) {
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            TrueTypeFont ttf = parse(bytes);
+            if (ttf instanceof OpenTypeFont otf && otf.isPostScript()) {
+                ttf.close();
+                return null;
+            }
+            PdfFonts f = new PdfFonts(file.getFileName().toString(), bytes);
+            f.idle.push(ttf);
+            return f;
+        } catch (IOException | RuntimeException bad) {
+            return null;
+        }
+    }
+
+    private static TrueTypeFont parse(byte[] bytes) throws IOException {
+        Metrics.count("pdf.fontParses");
+        boolean otf = bytes.length > 4 && bytes[0] == 'O' && bytes[1] == 'T' && bytes[2] == 'T' && bytes[3] == 'O';
+        return otf ? new OTFParser().parse(new ByteArrayInputStream(bytes))
+                   : new TTFParser().parse(new ByteArrayInputStream(bytes));
+    }
+
+    public String name() { return name; }
+
+    public boolean embedded() { return program != null; }
+
+    // 给一份文档用的字体；保存完文档再 close（子集是在 save 时才生成的）
+    public Lease lease(PDDocument doc) throws IOException {
+        if (program == null) return new Lease(PDType1Font.HELVETICA, null, true);
+        TrueTypeFont ttf;
+        synchronized (idle) {
+            ttf = idle.poll();
+        }
+        if (ttf == null) ttf = parse(program);
+        else Metrics.count("pdf.fontReuse");
+        return new Lease(PDType0Font.load(doc, ttf, true), ttf, true);
+    }
+
+    public final class Lease implements Closeable {
+        public final PDFont font;
+        private final TrueTypeFont ttf;
+        private final CmapLookup cmap;
+        private final float scale;
+        private final boolean owner;     // 只有从池里借来的那个负责归还
+
+        private Lease(PDFont font, TrueTypeFont ttf, boolean owner) throws IOException {
+            this.font = font;
+            this.ttf = ttf;
+            this.owner = owner;
+            this.cmap = ttf == null ? null : ttf.getUnicodeCmapLookup();
+            this.scale = ttf == null ? 1 : 1000f / ttf.getUnitsPerEm();
+        }
+
+        // 同一个线程同时排另一份文档（学生版 + 教师版）：共用这份已解析的字体，子集各嵌各的
+        // 两份文档都保存完，再 close 原来的 Lease
+        public Lease share(PDDocument other) throws IOException {
+            if (ttf == null) return new Lease(PDType1Font.HELVETICA, null, false);
+            Metrics.count("pdf.fontReuse");
+            return new Lease(PDType0Font.load(other, ttf, true), ttf, false);
+        }
+
+        // 文本宽度（点），和 PDFont.getStringWidth / 1000 * size 一样，但逐字查缓存
+        public float width(String s, float fontSize) throws IOException {
+            float w = 0;
+            for (int i = 0; i < s.length(); ) {
+                int cp = s.codePointAt(i);
+                float g = glyphWidth(cp);
+                w += g < 0 ? glyphWidth('?') : g;
+                i += Character.charCount(cp);
+            }
+            return w / 1000 * fontSize;
+        }
+
+        // 控制字符换成空格，字体里没有的字符换成 "?"
+        public String printable(String s) throws IOException {
+            if (s == null) return "";
+            StringBuilder sb = null;
+            for (int i = 0; i < s.length(); ) {
+                int cp = s.codePointAt(i);
+                int n = Character.charCount(cp);
+                String repl = cp < 0x20 ? " " : glyphWidth(cp) < 0 ? "?" : null;
+                if (repl != null && sb == null) sb = new StringBuilder(s.length()).append(s, 0, i);
+                if (sb != null) {
+                    if (repl != null) sb.append(repl);
+                    else sb.appendCodePoint(cp);
+                }
+                i += n;
+            }
+            return sb == null ? s : sb.toString();
+        }
+
+        private float glyphWidth(int cp) throws IOException {
+            if (cp < widths.length) {
+                float w = widths[cp];
+                if (!Float.isNaN(w)) return w;
+                w = measure(cp);
+                widths[cp] = w;   // 多线程重复算出的值一样，不用加锁
+                return w;
+            }
+            return measure(cp);
+        }
+
+        private float measure(int cp) throws IOException {
+            if (ttf != null) {
+                int gid = cmap == null ? 0 : cmap.getGlyphId(cp);
+                return gid == 0 ? MISSING : ttf.getAdvanceWidth(gid) * scale;
+            }
+            try {
+                return font.getStringWidth(new String(Character.toChars(cp)));
+            } catch (IllegalArgumentException notInEncoding) {
+                return MISSING;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (ttf == null || !owner) return;
+            synchronized (idle) {
+                idle.push(ttf);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s (%s)", name, embedded() ? "embedded subset" : "standard 14");
+    }
+}
@@ -0,0 +1,98 @@
+package at.technikum;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// PDF 里的附件图片
+//   解码结果按 hash 缓存在进程里（LRU，按像素字节计，-Dexam.pdf.imageCache.mb，默认 64），
+//   一批变体卷用到同一张图时只解码一次；JPEG 不解码，原样作为 DCT 流嵌入
+//   每份文档里同一张图只生成一个 XObject，题目里出现几次都引用它，只嵌入一次
+public final class PdfImages {
+
+    // hash -> 图片原始字节，找不到返回 null
+    public interface Source {
+        byte[] load(String hash) throws IOException;
+    }
+
+    static final long BUDGET = Long.getLong("exam.pdf.imageCache.mb", 64) * 1024 * 1024;
+
+    private static final class Decoded {
+        final byte[] jpeg;            // JPEG 原样保留
+        final BufferedImage image;    // 其他格式解码成像素
+        final long cost;
+
+        Decoded(byte[] jpeg, BufferedImage image) {
+            this.jpeg = jpeg;
+            this.image = image;
+            this.cost = jpeg != null ? jpeg.length : (long) image.getWidth() * image.getHeight() * 4;
+        }
+    }
+
+    private static final LinkedHashMap<String, Decoded> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+    private static long cachedBytes;
+
+    private final PDDocument doc;
+    private final Source source;
+    private final Map<String, PDImageXObject> objects = new HashMap<>();
+
+    PdfImages(PDDocument doc, Source source) {
+        this.doc = doc;
+        this.source = source;
+    }
+
+    // 这份文档里的图片对象；没有来源或找不到图片时返回 null
+    PDImageXObject get(String hash) throws IOException {
+        if (objects.containsKey(hash)) {
+            Metrics.count("pdf.imageReuse");
+            return objects.get(hash);
+        }
+        Decoded d = source == null ? null : decoded(hash, source);
+        PDImageXObject x = d == null ? null
+                : d.jpeg != null ? JPEGFactory.createFromByteArray(doc, d.jpeg)
+                : LosslessFactory.createFromImage(doc, d.image);
+        objects.put(hash, x);
+        if (x != null) Metrics.count("pdf.images");
+        return x;
+    }
+
+    private static Decoded decoded(String hash, Source source) throws IOException {
+        synchronized (CACHE) {
+            Decoded d = CACHE.get(hash);
+            if (d != null) {
+                Metrics.count("pdf.imageCacheHits");
+                return d;
+            }
+        }
+        byte[] data = source.load(hash);
+        if (data == null) return null;
+        Decoded d;
+        if ("image/jpeg".equals(AttachmentStore.mimeOf(data))) {
+            d = new Decoded(data, null);
+        } else {
+            long t = Metrics.start();
+            BufferedImage img = ImageIO.read(new ByteArrayInputStream(data));
+            Metrics.stop("pdf.imageDecode", t);
+            if (img == null) return null;
+            d = new Decoded(null, img);
+        }
+        synchronized (CACHE) {
+            if (d.cost <= BUDGET && CACHE.put(hash, d) == null) cachedBytes += d.cost;
+            for (Iterator<Decoded> it = CACHE.values().iterator(); cachedBytes > BUDGET && it.hasNext(); ) {
+                cachedBytes -= it.next().cost;
+                it.remove();
+            }
+        }
+        return d;
+    }
+}
@@ -0,0 +1,336 @@
+package at.technikum;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// 开发 / 诊断模式（--audit-sql 或 -Dexam.audit=true）：
+// Database 返回的连接会被包一层代理，记录每条不同 SQL 的次数、耗时、行数，
+// 并在第一次见到时跑 EXPLAIN QUERY PLAN，大表上的 SCAN 会被标出来
+public final class QueryAudit {
+
+    private static volatile boolean enabled = Boolean.getBoolean("exam.audit");
+    private static final long SCAN_THRESHOLD = Long.getLong("exam.audit.scanThreshold", 1000);
+
+    private static final Map<String, Stat> STATS = new ConcurrentHashMap<>();
+    private static final Map<String, Long> TABLE_ROWS = new ConcurrentHashMap<>();
+    private static final Pattern PLAN_TARGET = Pattern.compile("^(SCAN|SEARCH) (\\w+)(.*)$");
+    private static final Pattern ALIAS = Pattern.compile("(?i)\\b(?:FROM|JOIN)\\s+(\\w+)(?:\\s+AS)?\\s+(\\w+)");
+    private static final Pattern SOURCE = Pattern.compile("(?i)\\b(?:FROM|JOIN)\\s+(\\w+)");
+
+    // 热点查询：这些语句在基础表上不允许出现 SCAN（不看表大小），见 --check-query-plans
+    static final Map<String, String> HOT_QUERIES = new LinkedHashMap<>();
+    static {
+        HOT_QUERIES.put("exam sampling", ExamGenerator.SAMPLE_SQL);
+        HOT_QUERIES.put("replacement candidates", CandidateSearch.KEYWORD_SQL + CandidateSearch.ORDER);
+        HOT_QUERIES.put("version history", QuestionStore.FIND_VERSIONS_SQL);
+        HOT_QUERIES.put("rollback source", QuestionStore.ROLLBACK_SOURCE_SQL);
+        HOT_QUERIES.put("exposure cell", ExposureSampler.CELL_SQL);
+        HOT_QUERIES.put("category as of", QuestionStore.AS_OF_CATEGORY_SQL);
+    }
+
+    private QueryAudit() {}
+
+    public static boolean isEnabled() { return enabled; }
+
+    public static void enable() { enabled = true; }
+
+    public static final class Stat {
+        public final String sql;
+        final LongAdder calls = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        volatile List<String> plan = List.of();
+        volatile List<String> scans = List.of();
+
+        Stat(String sql) { this.sql = sql; }
+
+        public long calls() { return calls.sum(); }
+        public double totalMs() { return nanos.sum() / 1e6; }
+        public long rows() { return rows.sum(); }
+        public List<String> plan() { return plan; }
+        public List<String> scans() { return scans; }
+    }
+
+    public static List<Stat> stats() {
+        List<Stat> out = new ArrayList<>(STATS.values());
+        out.sort((a, b) -> Double.compare(b.totalMs(), a.totalMs()));
+        return out;
+    }
+
+    public static void reset() { STATS.clear(); }
+
+    public static String report() {
+        StringBuilder sb = new StringBuilder("SQL audit (" + STATS.size() + " distinct statements, SCAN threshold "
+                + SCAN_THRESHOLD + " rows)\n");
+        for (Stat s : stats()) {
+            sb.append(String.format(Locale.ROOT, "%n%s%6d calls %10.2f ms total %8.3f ms avg %8d rows%n",
+                    s.scans.isEmpty() ? "  " : "! ", s.calls(), s.totalMs(),
+                    s.calls() == 0 ? 0 : s.totalMs() / s.calls(), s.rows()));
+            sb.append("    ").append(oneLine(s.sql)).append('\n');
+            for (String p : s.plan) sb.append("      plan: ").append(p).append('\n');
+            for (String p : s.scans) sb.append("      FULL SCAN: ").append(p).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // ---- 热点查询检查：App --check-query-plans，有问题时退出码 1 ----
+    // 加 --fresh 时不碰当前数据库：在临时文件里按 schema.sql + 迁移建空库再查（mvn verify 用这个）
+    //   没有 ANALYZE 统计时 SQLite 按默认行数估算，空库和没 ANALYZE 过的大库得到的计划一样
+
+    public static void main(String[] args) throws SQLException, IOException {
+        boolean fresh = List.of(args).contains("--fresh");
+        Path tmp = fresh ? Files.createTempFile("query-plans", ".db") : null;
+        List<String> problems;
+        try (Connection c = fresh ? Database.open(tmp) : Database.get()) {
+            if (fresh) Database.createSchema(c);
+            problems = checkHotQueries(c);
+        } finally {
+            if (tmp != null) Files.deleteIfExists(tmp);
+        }
+        if (problems.isEmpty()) {
+            System.out.println("All " + HOT_QUERIES.size() + " hot queries use indexes.");
+            return;
+        }
+        problems.forEach(p -> System.out.println("FAIL " + p));
+        System.exit(1);
+    }
+
+    public static List<String> checkHotQueries(Connection c) throws SQLException {
+        Connection raw = c.unwrap(Connection.class);
+        List<String> problems = new ArrayList<>();
+        for (var e : HOT_QUERIES.entrySet()) {
+            List<String> plan = explain(raw, e.getValue());
+            for (String scan : scans(raw, e.getValue(), plan, 0)) {
+                problems.add(e.getKey() + ": " + scan + "  (plan: " + String.join(" | ", plan) + ")");
+            }
+        }
+        return problems;
+    }
+
+    // ---- 代理 ----
+
+    static Connection wrap(Connection c) {
+        if (!enabled) return c;
+        return (Connection) Proxy.newProxyInstance(QueryAudit.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(c));
+    }
+
+    private static Object call(Object target, Method m, Object[] args) throws Throwable {
+        try {
+            return m.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static final class ConnectionHandler implements InvocationHandler {
+        private final Connection real;
+
+        ConnectionHandler(Connection real) { this.real = real; }
+
+        @Override
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            switch (m.getName()) {
+                case "unwrap" -> { return real.unwrap((Class<?>) args[0]); }
+                case "isWrapperFor" -> { return real.isWrapperFor((Class<?>) args[0]); }
+                case "prepareStatement" -> {
+                    String sql = (String) args[0];
+                    PreparedStatement ps = (PreparedStatement) call(real, m, args);
+                    Stat stat = statFor(real, sql);
+                    return Proxy.newProxyInstance(QueryAudit.class.getClassLoader(),
+                            new Class<?>[]{PreparedStatement.class}, new StatementHandler(real, ps, stat));
+                }
+                case "createStatement" -> {
+                    Statement st = (Statement) call(real, m, args);
+                    return Proxy.newProxyInstance(QueryAudit.class.getClassLoader(),
+                            new Class<?>[]{Statement.class}, new StatementHandler(real, st, null));
+                }
+                default -> { return call(real, m, args); }
+            }
+        }
+    }
+
+    private static final class StatementHandler implements InvocationHandler {
+        private final Connection conn;
+        private final Statement real;
+        private final Stat prepared;
+
+        StatementHandler(Connection conn, Statement real, Stat prepared) {
+            this.conn = conn;
+            this.real = real;
+            this.prepared = prepared;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            String name = m.getName();
+            if (name.equals("unwrap")) return real.unwrap((Class<?>) args[0]);
+            if (!name.startsWith("execute")) return call(real, m, args);
+
+            Stat stat = prepared;
+            if (args != null && args.length > 0 && args[0] instanceof String sql) stat = statFor(conn, sql);
+            if (stat == null) return call(real, m, args);
+
+            long t0 = System.nanoTime();
+            Object result = call(real, m, args);
+            stat.calls.increment();
+            if (result instanceof ResultSet rs) {
+                // 查询的耗时算到 ResultSet 关闭为止（SQLite 是边 next 边计算的）
+                return Proxy.newProxyInstance(QueryAudit.class.getClassLoader(),
+                        new Class<?>[]{ResultSet.class}, new ResultSetHandler(rs, stat, t0));
+            }
+            stat.nanos.add(System.nanoTime() - t0);
+            if (result instanceof Integer n && n > 0) stat.rows.add(n);
+            if (result instanceof int[] batch) for (int n : batch) if (n > 0) stat.rows.add(n);
+            return result;
+        }
+    }
+
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final ResultSet real;
+        private final Stat stat;
+        private final long t0;
+        private boolean done;
+
+        ResultSetHandler(ResultSet real, Stat stat, long t0) {
+            this.real = real;
+            this.stat = stat;
+            this.t0 = t0;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            if (m.getName().equals("unwrap")) return real.unwrap((Class<?>) args[0]);
+            Object result = call(real, m, args);
+            boolean exhausted = false;
+            if (m.getName().equals("next")) {
+                if (Boolean.TRUE.equals(result)) stat.rows.increment();
+                else exhausted = true;
+            }
+            if ((exhausted || m.getName().equals("close")) && !done) {
+                done = true;
+                stat.nanos.add(System.nanoTime() - t0);
+            }
+            return result;
+        }
+    }
+
+    // ---- 执行计划 ----
+
+    private static Stat statFor(Connection real, String sql) {
+        String key = oneLine(sql);
+        Stat existing = STATS.get(key);
+        if (existing != null) return existing;
+        Stat s = new Stat(sql);
+        Stat prev = STATS.putIfAbsent(key, s);
+        if (prev != null) return prev;
+        if (explainable(key)) {
+            try {
+                s.plan = explain(real, sql);
+                s.scans = scans(real, sql, s.plan, SCAN_THRESHOLD);
+            } catch (SQLException ex) {
+                s.plan = List.of("EXPLAIN failed: " + ex.getMessage());
+            }
+        }
+        return s;
+    }
+
+    private static boolean explainable(String sql) {
+        String head = sql.length() > 8 ? sql.substring(0, 8).toUpperCase(Locale.ROOT) : sql.toUpperCase(Locale.ROOT);
+        return head.startsWith("SELECT") || head.startsWith("WITH") || head.startsWith("INSERT")
+                || head.startsWith("UPDATE") || head.startsWith("DELETE");
+    }
+
+    static List<String> explain(Connection real, String sql) throws SQLException {
+        List<String> plan = new ArrayList<>();
+        try (Statement st = real.createStatement(); ResultSet rs = st.executeQuery("EXPLAIN QUERY PLAN " + sql)) {
+            while (rs.next()) plan.add(rs.getString("detail"));
+        }
+        return plan;
+    }
+
+    // 找出计划里的 SCAN <表>；别名通过 SQL 本身和视图定义解析成真实表名
+    static List<String> scans(Connection real, String sql, List<String> plan, long threshold) throws SQLException {
+        Map<String, String> aliases = aliases(real, sql);
+        List<String> out = new ArrayList<>();
+        for (String p : plan) {
+            Matcher m = PLAN_TARGET.matcher(p.trim());
+            if (!m.matches() || !m.group(1).equals("SCAN")) continue;
+            String table = aliases.get(m.group(2).toLowerCase(Locale.ROOT));
+            if (table == null) continue; // 子查询 / 常量行
+            long rows = tableRows(real, table);
+            if (rows >= threshold) out.add(table + " (" + rows + " rows): " + p.trim());
+        }
+        return out;
+    }
+
+    // 别名只从这条 SQL 和它（直接或间接）用到的视图里找：不同查询 / 视图里同一个别名可能指不同的表
+    private static Map<String, String> aliases(Connection real, String sql) throws SQLException {
+        Map<String, String> tables = new HashMap<>();
+        Map<String, String> views = new HashMap<>();
+        try (Statement st = real.createStatement();
+             ResultSet rs = st.executeQuery("SELECT type, name, sql FROM sqlite_master WHERE type IN ('table', 'view')")) {
+            while (rs.next()) {
+                String name = rs.getString("name");
+                if (rs.getString("type").equals("table")) tables.put(name.toLowerCase(Locale.ROOT), name);
+                else views.put(name.toLowerCase(Locale.ROOT), rs.getString("sql"));
+            }
+        }
+        List<String> texts = new ArrayList<>(List.of(sql));
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < texts.size(); i++) {
+            Matcher m = SOURCE.matcher(texts.get(i));
+            while (m.find()) {
+                String view = m.group(1).toLowerCase(Locale.ROOT);
+                if (views.containsKey(view) && seen.add(view)) texts.add(views.get(view));
+            }
+        }
+        // 先登记的优先：查询自己的别名盖过视图里的
+        Map<String, String> out = new HashMap<>(tables);
+        for (String text : texts) {
+            Matcher m = ALIAS.matcher(text);
+            while (m.find()) {
+                String table = tables.get(m.group(1).toLowerCase(Locale.ROOT));
+                if (table != null) out.putIfAbsent(m.group(2).toLowerCase(Locale.ROOT), table);
+            }
+        }
+        return out;
+    }
+
+    private static long tableRows(Connection real, String table) throws SQLException {
+        Long cached = TABLE_ROWS.get(table);
+        if (cached != null) return cached;
+        long n;
+        try (Statement st = real.createStatement(); ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM \"" + table + "\"")) {
+            n = rs.next() ? rs.getLong(1) : 0;
+        }
+        TABLE_ROWS.put(table, n);
+        return n;
+    }
+
+    private static String oneLine(String sql) {
+        return sql.trim().replaceAll("\\s+", " ");
+    }
+}
@@ -0,0 +1,27 @@
+package at.technikum;
+
+import java.util.List;
+
+// 主表的一行：难度存成字典编码，分类是驻留的 CategorySet（同样的组合全表只有一份，
+// "A, B" 也只拼一次），不再每行一个 List<String>、每次渲染单元格都 String.join
+public final class QuestionRow {
+    private final int id;
+    private final byte difficulty;
+    private final String text;
+    private final TableIndex.CategorySet categories;
+
+    public QuestionRow(int id, String difficulty, String text, TableIndex.CategorySet categories) {
+        this.id = id;
+        this.difficulty = TableIndex.difficultyCode(difficulty);
+        this.text = text;
+        this.categories = categories;
+    }
+
+    public int getId() { return id; }
+    public String getDifficulty() { return TableIndex.difficultyName(difficulty); }
+    public String getText() { return text; }
+    public String getCategoriesCsv() { return categories.csv; }
+    public List<String> getCategories() { return categories.names; }
+    public TableIndex.CategorySet getCategorySet() { return categories; }
+    byte difficultyCode() { return difficulty; }
+}
@@ -1,165 +1,392 @@
 package at.technikum;
 
 import java.sql.*;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 public class QuestionStore {
 
+    static final String FIND_VERSIONS_SQL = """
+            SELECT
+              question_id AS id,
+              text,
+              difficulty,
+              version,
+              created_at
+            FROM QuestionVersions
+            WHERE question_id = ?
+            ORDER BY version DESC
+            """;
+
+    static final String ROLLBACK_SOURCE_SQL = """
+            SELECT text, type, difficulty, topic, metadata
+            FROM QuestionVersions
+            WHERE question_id = ? AND version = ?
+            """;
+
+    static final String ROLLBACK_UPDATE_SQL = """
+            UPDATE Questions
+            SET text = ?, type = ?, difficulty = ?, topic = ?, metadata = ?
+            WHERE id = ?
+            """;
+
+    static final String DELETE_EXAM_LINKS_SQL = "DELETE FROM Exam_Questions WHERE question_id = ?";
+    static final String DELETE_CATEGORY_LINKS_SQL = "DELETE FROM Question_Categories WHERE question_id = ?";
+    static final String DELETE_QUESTION_SQL = "DELETE FROM Questions WHERE id = ?";
+    static final String LINK_CATEGORY_SQL = "INSERT OR IGNORE INTO Question_Categories (question_id, category_id) VALUES (?, ?)";
+    static final String METADATA_SQL = "SELECT metadata FROM Questions WHERE id = ?";
+
+    // 某个时刻的题库：每道题 created_at <= ? 的最后一个版本（同一秒的按 rowid，也就是版本先后）
+    //   LEAD 为 NULL = 分区里的最后一行；窗口顺序就是 idx_qv_qid_created 的顺序，只扫一遍索引、不排序
+    //   （ROW_NUMBER() ... ORDER BY created_at DESC 要给每个分区再排一次序，慢 40%）
+    //   ORDER BY v.question_id：整库时 SQLite 改为顺着 uq_qv_qid_ver 走 v，不用排序；按分类时排一下（几万行，十几毫秒）
+    static final String AS_OF_WINDOW = """
+            SELECT id, question_id, LEAD(id) OVER (PARTITION BY question_id ORDER BY created_at, id) AS next_id
+            FROM QuestionVersions
+            WHERE created_at <= ?
+            """;
+    static final String AS_OF_SELECT = """
+            SELECT v.question_id, v.version, v.text, v.type, v.difficulty, v.topic, v.metadata, v.created_at
+            FROM (%s) w
+            JOIN QuestionVersions v ON v.id = w.id
+            WHERE w.next_id IS NULL
+            ORDER BY v.question_id
+            """;
+    static final String AS_OF_SQL = AS_OF_SELECT.formatted(AS_OF_WINDOW);
+    // 分类用的是现在的关联（关联没有历史）
+    static final String AS_OF_CATEGORY_SQL = AS_OF_SELECT.formatted(AS_OF_WINDOW
+            + "  AND question_id IN (SELECT question_id FROM Question_Categories WHERE category_id = ?)\n");
+
+    // QuestionVersions.created_at 的格式（datetime('now')，UTC）
+    static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC);
+
+    // 批量操作先把 id 写进连接私有的临时表，再用一条 IN (SELECT ...) 语句完成
+    static final String BULK_IDS_DDL = "CREATE TEMP TABLE IF NOT EXISTS BulkIds (id INTEGER PRIMARY KEY)";
+    static final String BULK_IDS_INSERT_SQL = "INSERT OR IGNORE INTO temp.BulkIds (id) VALUES (?)";
+    static final String BULK_IN = " IN (SELECT id FROM temp.BulkIds)";
+    static final String BULK_ASSIGN_SQL =
+            "INSERT OR IGNORE INTO Question_Categories (question_id, category_id) SELECT id, ? FROM temp.BulkIds";
+    static final String BULK_UNASSIGN_SQL =
+            "DELETE FROM Question_Categories WHERE category_id = ? AND question_id" + BULK_IN;
+
+    // 批量回滚：先把 题目 -> 目标版本的行 id 算进连接私有的临时表，预览和执行都基于它
+    //   已经和目标版本一样的题不进计划（回滚它们只会多出一个一模一样的版本）
+    static final String ROLLBACK_PLAN_DDL =
+            "CREATE TEMP TABLE IF NOT EXISTS RollbackPlan (question_id INTEGER PRIMARY KEY, source_id INTEGER NOT NULL)";
+    static final String BULK_IDS_FROM_CATEGORY_SQL =
+            "INSERT OR IGNORE INTO temp.BulkIds (id) SELECT question_id FROM Question_Categories WHERE category_id = ?";
+    static final String PLAN_VERSION_SQL = """
+            INSERT INTO temp.RollbackPlan (question_id, source_id)
+            SELECT question_id, id FROM QuestionVersions
+            WHERE version = ? AND question_id""" + BULK_IN;
+    static final String PLAN_AS_OF_SQL = "INSERT INTO temp.RollbackPlan (question_id, source_id)\n"
+            + "SELECT question_id, id FROM (" + AS_OF_WINDOW + "  AND question_id" + BULK_IN + "\n) WHERE next_id IS NULL";
+    static final String PLAN_PRUNE_SQL = """
+            DELETE FROM temp.RollbackPlan
+            WHERE NOT EXISTS (SELECT 1 FROM Questions q WHERE q.id = RollbackPlan.question_id)
+               OR EXISTS (SELECT 1 FROM Questions q JOIN QuestionVersions v ON v.id = RollbackPlan.source_id
+                          WHERE q.id = RollbackPlan.question_id
+                            AND q.text IS v.text AND q.type IS v.type AND q.difficulty IS v.difficulty
+                            AND q.topic IS v.topic AND q.metadata IS v.metadata)
+            """;
+    static final String PLAN_PREVIEW_SQL = """
+            SELECT p.question_id,
+                   (SELECT MAX(version) FROM QuestionVersions WHERE question_id = p.question_id) AS current_version,
+                   v.version, q.text, v.text
+            FROM temp.RollbackPlan p
+            JOIN Questions q ON q.id = p.question_id
+            JOIN QuestionVersions v ON v.id = p.source_id
+            ORDER BY p.question_id
+            """;
+    // 一条 UPDATE 改完整个计划；trg_q_update_versions 照常给每道题记一个新版本（和单题回滚一样）
+    static final String PLAN_APPLY_SQL = """
+            UPDATE Questions
+            SET text = v.text, type = v.type, difficulty = v.difficulty, topic = v.topic, metadata = v.metadata
+            FROM temp.RollbackPlan p
+            JOIN QuestionVersions v ON v.id = p.source_id
+            WHERE Questions.id = p.question_id
+            """;
+
+    // 语句都从 StatementCache 取（按连接缓存，不要 close），ResultSet 用完必须关
+
     // 读取所有问题（只取最新版本）
     public List<Question> findAll(Connection c) throws SQLException {
-        String sql = """
-    SELECT
-      question_id AS id,
-      difficulty,
-      text
-    FROM QuestionLatest
-    ORDER BY question_id
-    """;
-
-        try (PreparedStatement ps = c.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-            List<Question> out = new ArrayList<>();
-            while (rs.next()) {
-                out.add(new Question(
-                        rs.getInt("id"),
-                        rs.getString("difficulty"),
-                        rs.getString("text")
-                ));
+        long t = Metrics.start();
+        var ev = ExamEvents.query("findAll", null);
+        try {
+            String sql = """
+        SELECT
+          question_id AS id,
+          difficulty,
+          text
+        FROM QuestionLatest
+        ORDER BY question_id
+        """;
+
+            PreparedStatement ps = StatementCache.of(c).prepare(sql);
+            try (ResultSet rs = ps.executeQuery()) {
+                List<Question> out = new ArrayList<>();
+                while (rs.next()) {
+                    out.add(new Question(
+                            rs.getInt("id"),
+                            rs.getString("difficulty"),
+                            rs.getString("text")
+                    ));
+                }
+                ev.sql = sql;
+                ev.rows = out.size();
+                return out;
             }
-            return out;
+        } finally {
+            ev.commit();
+            Metrics.stop("store.findAll", t);
         }
     }
 
     // 插入新问题（初始版本 = V1）
     public int insert(Connection c, String text, String type, String difficulty) throws SQLException {
-        String sql = "INSERT INTO Questions (text, type, difficulty, version, created_at, updated_at) VALUES (?,?,?,1,datetime('now'),datetime('now'))";
-        try (PreparedStatement ps = c.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        long t = Metrics.start();
+        var ev = ExamEvents.query("insert", null);
+        try {
+            String sql = "INSERT INTO Questions (text, type, difficulty, version, created_at, updated_at) VALUES (?,?,?,1,datetime('now'),datetime('now'))";
+            PreparedStatement ps = StatementCache.of(c).prepareWithKeys(sql);
             ps.setString(1, text);
             ps.setString(2, type);
             ps.setString(3, difficulty);
-            ps.executeUpdate();
+            ev.sql = sql;
+            ev.rows = ps.executeUpdate();
             try (ResultSet keys = ps.getGeneratedKeys()) {
                 return keys.next() ? keys.getInt(1) : -1;
             }
+        } finally {
+            ev.commit();
+            Metrics.stop("store.insert", t);
         }
     }
 
     // 编辑题目
     public void update(Connection c, int id, String text, String type, String difficulty) throws SQLException {
-        try (PreparedStatement ps = c.prepareStatement(
-                "UPDATE Questions SET text = ?, type = ?, difficulty = ?, updated_at = datetime('now') WHERE id = ?")) {
+        long t = Metrics.start();
+        String sql = "UPDATE Questions SET text = ?, type = ?, difficulty = ?, updated_at = datetime('now') WHERE id = ?";
+        var ev = ExamEvents.query("update", sql);
+        try {
+            PreparedStatement ps = StatementCache.of(c).prepare(sql);
             ps.setString(1, text);
             ps.setString(2, type);
             ps.setString(3, difficulty);
             ps.setInt(4, id);
-            if (ps.executeUpdate() != 1) {
+            ev.rows = ps.executeUpdate();
+            if (ev.rows != 1) {
                 throw new SQLException("No question with id = " + id);
             }
+        } finally {
+            ev.commit();
+            Metrics.stop("store.update", t);
         }
     }
 
     // 删除题目所有版本（同时清理外键依赖）
     public void delete(Connection c, int id) throws SQLException {
-        //删除 Exam_Questions 中引用的记录
-        try (PreparedStatement ps = c.prepareStatement("DELETE FROM Exam_Questions WHERE question_id = ?")) {
+        long t = Metrics.start();
+        var ev = ExamEvents.query("delete", "DELETE FROM Exam_Questions / Question_Categories / Questions");
+        try {
+            StatementCache cache = StatementCache.of(c);
+            //删除 Exam_Questions 中引用的记录
+            PreparedStatement ps = cache.prepare(DELETE_EXAM_LINKS_SQL);
             ps.setInt(1, id);
             ps.executeUpdate();
-        }
 
-        //删除 Question_Categories 中引用的记录
-        try (PreparedStatement ps = c.prepareStatement("DELETE FROM Question_Categories WHERE question_id = ?")) {
+            //删除 Question_Categories 中引用的记录
+            ps = cache.prepare(DELETE_CATEGORY_LINKS_SQL);
             ps.setInt(1, id);
             ps.executeUpdate();
-        }
 
-        //删除 Questions 表中的所有版本
-        try (PreparedStatement ps = c.prepareStatement("DELETE FROM Questions WHERE id = ?")) {
+            //删除 Questions 表中的所有版本
+            ps = cache.prepare(DELETE_QUESTION_SQL);
             ps.setInt(1, id);
-            ps.executeUpdate();
+            ev.rows = ps.executeUpdate();
+        } finally {
+            ev.commit();
+            Metrics.stop("store.delete", t);
         }
     }
 
     // 统一删除：先删依赖表，再删 Questions（带事务 & 外键开启）
     public boolean deleteQuestion(Connection c, int questionId) throws SQLException {
-        // 开启外键（已开启也不影响）
-        try (Statement s = c.createStatement()) { s.execute("PRAGMA foreign_keys = ON"); }
+        long t = Metrics.start();
+        var ev = ExamEvents.query("deleteQuestion",
+                "DELETE FROM Exam_Questions / Question_Categories / QuestionVersions / Questions");
+        try {
+            // 外键在 Database.get() 里已经开启
+            boolean oldAuto = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try {
+                int affected = deleteBatch(c, List.of(questionId));
+                c.commit();
+                ev.rows = affected;
+                return affected == 1;
+            } catch (SQLException ex) {
+                try { c.rollback(); } catch (SQLException ignore) {}
+                throw ex;
+            } finally {
+                try { c.setAutoCommit(oldAuto); } catch (SQLException ignore) {}
+            }
+        } finally {
+            ev.commit();
+            Metrics.stop("store.deleteQuestion", t);
+        }
+    }
+
 
+    // 批量删除：id 写进临时表，四条 DELETE ... IN 整体一个事务；返回删掉的题目数
+    public int deleteQuestions(Connection c, Collection<Integer> questionIds) throws SQLException {
+        long t = Metrics.start();
+        var ev = ExamEvents.query("deleteQuestions",
+                "DELETE FROM Exam_Questions / Question_Categories / QuestionVersions / Questions WHERE ..." + BULK_IN);
         boolean oldAuto = c.getAutoCommit();
         c.setAutoCommit(false);
         try {
-            // 1) 删除已加入试卷的记录
-            try (PreparedStatement ps = c.prepareStatement(
-                    "DELETE FROM Exam_Questions WHERE question_id = ?")) {
-                ps.setInt(1, questionId);
-                ps.executeUpdate();
-            }
-            // 2) 删除题目与分类的关系
-            try (PreparedStatement ps = c.prepareStatement(
-                    "DELETE FROM Question_Categories WHERE question_id = ?")) {
-                ps.setInt(1, questionId);
-                ps.executeUpdate();
-            }
-            // 3) 删除所有历史版本（你原来没删这一张）
-            try (PreparedStatement ps = c.prepareStatement(
-                    "DELETE FROM QuestionVersions WHERE question_id = ?")) {
-                ps.setInt(1, questionId);
-                ps.executeUpdate();
-            }
-            // 4) 最后删题目本体
-            int affected;
-            try (PreparedStatement ps = c.prepareStatement(
-                    "DELETE FROM Questions WHERE id = ?")) {
-                ps.setInt(1, questionId);
-                affected = ps.executeUpdate();
-            }
+            ev.rows = deleteBatch(c, questionIds);
+            c.commit();
+            return ev.rows;
+        } catch (SQLException ex) {
+            try { c.rollback(); } catch (SQLException ignore) {}
+            throw ex;
+        } finally {
+            try { c.setAutoCommit(oldAuto); } catch (SQLException ignore) {}
+            ev.commit();
+            Metrics.stop("store.deleteQuestions", t);
+        }
+    }
 
+    // 给一批题目加上某个分类（已有的关联跳过）；返回新增的关联数
+    public int assignCategory(Connection c, Collection<Integer> questionIds, int categoryId) throws SQLException {
+        return bulkCategory(c, "assignCategory", BULK_ASSIGN_SQL, questionIds, categoryId);
+    }
+
+    // 从一批题目上去掉某个分类；返回删除的关联数
+    public int unassignCategory(Connection c, Collection<Integer> questionIds, int categoryId) throws SQLException {
+        return bulkCategory(c, "unassignCategory", BULK_UNASSIGN_SQL, questionIds, categoryId);
+    }
+
+    private int bulkCategory(Connection c, String op, String sql, Collection<Integer> questionIds, int categoryId) throws SQLException {
+        long t = Metrics.start();
+        var ev = ExamEvents.query(op, sql);
+        boolean oldAuto = c.getAutoCommit();
+        c.setAutoCommit(false);
+        try {
+            fillBulkIds(c, questionIds);
+            PreparedStatement ps = StatementCache.of(c).prepare(sql);
+            ps.setInt(1, categoryId);
+            ev.rows = ps.executeUpdate();
             c.commit();
-            return affected == 1;
+            return ev.rows;
         } catch (SQLException ex) {
             try { c.rollback(); } catch (SQLException ignore) {}
             throw ex;
         } finally {
             try { c.setAutoCommit(oldAuto); } catch (SQLException ignore) {}
+            ev.commit();
+            Metrics.stop("store." + op, t);
+        }
+    }
+
+    // 先删依赖表，再删 Questions；调用方负责事务
+    private int deleteBatch(Connection c, Collection<Integer> questionIds) throws SQLException {
+        fillBulkIds(c, questionIds);
+        StatementCache cache = StatementCache.of(c);
+        cache.prepare("DELETE FROM Exam_Questions WHERE question_id" + BULK_IN).executeUpdate();
+        cache.prepare("DELETE FROM Question_Categories WHERE question_id" + BULK_IN).executeUpdate();
+        cache.prepare("DELETE FROM QuestionVersions WHERE question_id" + BULK_IN).executeUpdate();
+        cache.prepare("DELETE FROM QuestionUsage WHERE question_id" + BULK_IN).executeUpdate();
+        return cache.prepare("DELETE FROM Questions WHERE id" + BULK_IN).executeUpdate();
+    }
+
+    // 临时表是连接私有的，用之前清空；调用方负责事务
+    private void fillBulkIds(Connection c, Collection<Integer> ids) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            st.execute(BULK_IDS_DDL);
+            st.execute("DELETE FROM temp.BulkIds");
         }
+        PreparedStatement ps = StatementCache.of(c).prepare(BULK_IDS_INSERT_SQL);
+        for (int id : ids) {
+            ps.setInt(1, id);
+            ps.addBatch();
+        }
+        ps.executeBatch();
     }
 
 
     //删除题目与类别关系（用于更新或删除）
     public void deleteQuestionCategories(Connection c, int qId) throws SQLException {
-        String sql = "DELETE FROM Question_Categories WHERE question_id = ?";
-        try (PreparedStatement ps = c.prepareStatement(sql)) {
+        long t = Metrics.start();
+        String sql = DELETE_CATEGORY_LINKS_SQL;
+        var ev = ExamEvents.query("deleteQuestionCategories", sql);
+        try {
+            PreparedStatement ps = StatementCache.of(c).prepare(sql);
             ps.setInt(1, qId);
-            ps.executeUpdate();
+            ev.rows = ps.executeUpdate();
+        } finally {
+            ev.commit();
+            Metrics.stop("store.deleteQuestionCategories", t);
         }
     }
 
     //插入题目与类别的关联（避免重复）
     public void linkQuestionCategory(Connection c, int qId, int cId) throws SQLException {
-        String sql = "INSERT OR IGNORE INTO Question_Categories (question_id, category_id) VALUES (?, ?)";
-        try (PreparedStatement ps = c.prepareStatement(sql)) {
+        long t = Metrics.start();
+        String sql = LINK_CATEGORY_SQL;
+        var ev = ExamEvents.query("linkQuestionCategory", sql);
+        try {
+            PreparedStatement ps = StatementCache.of(c).prepare(sql);
             ps.setInt(1, qId);
             ps.setInt(2, cId);
-            ps.executeUpdate();
+            ev.rows = ps.executeUpdate();
+        } finally {
+            ev.commit();
+            Metrics.stop("store.linkQuestionCategory", t);
+        }
+    }
+
+    //重新设置题目的分类：清掉旧关联，再用一个批次插入新关联
+    public void relinkCategories(Connection c, int qId, Collection<Integer> categoryIds) throws SQLException {
+        long t = Metrics.start();
+        var ev = ExamEvents.query("relinkCategories", LINK_CATEGORY_SQL);
+        try {
+            StatementCache cache = StatementCache.of(c);
+            PreparedStatement del = cache.prepare(DELETE_CATEGORY_LINKS_SQL);
+            del.setInt(1, qId);
+            del.executeUpdate();
+
+            PreparedStatement ps = cache.prepare(LINK_CATEGORY_SQL);
+            for (int cId : categoryIds) {
+                ps.setInt(1, qId);
+                ps.setInt(2, cId);
+                ps.addBatch();
+            }
+            for (int n : ps.executeBatch()) if (n > 0) ev.rows += n;
+        } finally {
+            ev.commit();
+            Metrics.stop("store.relinkCategories", t);
         }
     }
 
 
     //查询指定题目的所有版本
     public List<QuestionVersion> findVersions(Connection c, int questionId) throws SQLException {
-        String sql = """
-        SELECT
-          question_id AS id,
-          text,
-          difficulty,
-          version,
-          created_at
-        FROM QuestionVersions
-        WHERE question_id = ?
-        ORDER BY version DESC
-    """;
-
-        try (PreparedStatement ps = c.prepareStatement(sql)) {
+        long t = Metrics.start();
+        var ev = ExamEvents.query("findVersions", null);
+        try {
+            String sql = FIND_VERSIONS_SQL;
+            ev.sql = sql;
+            PreparedStatement ps = StatementCache.of(c).prepare(sql);
             ps.setInt(1, questionId);
             try (ResultSet rs = ps.executeQuery()) {
                 List<QuestionVersion> list = new ArrayList<>();
@@ -174,9 +401,210 @@ public class QuestionStore {
                     // 版本表暂时没有 updated_at，这里先用 created_at 占位
                     list.add(new QuestionVersion(id, text, diff, ver, created, created));
                 }
+                ev.rows = list.size();
                 return list;
             }
+        } finally {
+            ev.commit();
+            Metrics.stop("store.findVersions", t);
+        }
+    }
+
+
+    // 一批题目的 metadata（答案 / 评分说明，教师版 PDF 用）；没有 metadata 的题不在结果里
+    public Map<Integer, String> findMetadata(Connection c, Collection<Integer> questionIds) throws SQLException {
+        long t = Metrics.start();
+        try {
+            PreparedStatement ps = StatementCache.of(c).prepare(METADATA_SQL);
+            Map<Integer, String> out = new HashMap<>();
+            for (int id : questionIds) {
+                ps.setInt(1, id);
+                try (ResultSet rs = ps.executeQuery()) {
+                    String m = rs.next() ? rs.getString(1) : null;
+                    if (m != null && !m.isBlank()) out.put(id, m);
+                }
+            }
+            return out;
+        } finally {
+            Metrics.stop("store.findMetadata", t);
+        }
+    }
+
+
+    // 按 分类 / 难度 / 关键词 搜索最新版本（参数为 null 表示不限制）
+    public List<Question> search(Connection c, Integer categoryId, String difficulty, String keyword, int limit) throws SQLException {
+        long t = Metrics.start();
+        StringBuilder sql = new StringBuilder("SELECT ql.question_id AS id, ql.difficulty, ql.text FROM QuestionLatest ql");
+        if (categoryId != null) sql.append(" JOIN Question_Categories qc ON ql.question_id = qc.question_id AND qc.category_id = ?");
+        sql.append(" WHERE 1 = 1");
+        if (difficulty != null) sql.append(" AND ql.difficulty = ?");
+        if (keyword != null && !keyword.isBlank()) sql.append(" AND LOWER(ql.text) LIKE ?");
+        sql.append(" ORDER BY ql.question_id DESC LIMIT ?");
+
+        // 可选条件只有 8 种组合，缓存里最多 8 条
+        var ev = ExamEvents.query("search", sql.toString());
+        try {
+            PreparedStatement ps = StatementCache.of(c).prepare(sql.toString());
+            int i = 1;
+            if (categoryId != null) ps.setInt(i++, categoryId);
+            if (difficulty != null) ps.setString(i++, difficulty);
+            if (keyword != null && !keyword.isBlank()) ps.setString(i++, "%" + keyword.toLowerCase() + "%");
+            ps.setInt(i, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                List<Question> out = new ArrayList<>();
+                while (rs.next()) {
+                    out.add(new Question(rs.getInt("id"), rs.getString("difficulty"), rs.getString("text")));
+                }
+                ev.rows = out.size();
+                return out;
+            }
+        } finally {
+            ev.commit();
+            Metrics.stop("store.search", t);
+        }
+    }
+
+
+    // 按时间点读出的一道题（当时的最后一个版本）
+    public record HistoricalQuestion(int id, int version, String text, String type, String difficulty,
+                                     String topic, String metadata, String createdAt) {}
+
+    @FunctionalInterface
+    public interface HistoricalSink {
+        void accept(HistoricalQuestion q) throws SQLException;
+    }
+
+    public static String timestamp(Instant t) {
+        return TIMESTAMP.format(t);
+    }
+
+    // 题库在 asOf（"yyyy-MM-dd HH:mm:ss" UTC，含这一刻；Exams.created_at 可以直接用）时的样子，按题目 id 升序
+    // 边读边交给 sink，不在内存里攒整个快照；categoryId 为 null 表示整个题库
+    // 只能还原留下来的历史：批量删除连版本一起删的题不会出现；单个删除的题版本还在，仍然算在内
+    public int streamAsOf(Connection c, String asOf, Integer categoryId, HistoricalSink sink) throws SQLException {
+        long t = Metrics.start();
+        String sql = categoryId == null ? AS_OF_SQL : AS_OF_CATEGORY_SQL;
+        var ev = ExamEvents.query("streamAsOf", sql);
+        int n = 0;
+        try {
+            PreparedStatement ps = StatementCache.of(c).prepare(sql);
+            ps.setString(1, asOf);
+            if (categoryId != null) ps.setInt(2, categoryId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    sink.accept(new HistoricalQuestion(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getString(4),
+                            rs.getString(5), rs.getString(6), rs.getString(7), rs.getString(8)));
+                    n++;
+                }
+            }
+            ev.rows = n;
+            return n;
+        } finally {
+            ev.commit();
+            Metrics.stop("store.asOf", t);
+        }
+    }
+
+    public List<HistoricalQuestion> findAsOf(Connection c, String asOf, Integer categoryId) throws SQLException {
+        List<HistoricalQuestion> out = new ArrayList<>();
+        streamAsOf(c, asOf, categoryId, out::add);
+        return out;
+    }
+
+
+    // 批量回滚到哪里：一个版本号（没有这个版本的题跳过），或者一个时刻（同 streamAsOf，那时还没有的题跳过）
+    public record RollbackTarget(Integer version, String asOf) {
+        public static RollbackTarget version(int version) { return new RollbackTarget(version, null); }
+        public static RollbackTarget asOf(String asOf) { return new RollbackTarget(null, asOf); }
+
+        @Override
+        public String toString() { return version != null ? "v" + version : "as of " + asOf; }
+    }
+
+    // 预览里的一行：现在是第几版、会回到第几版
+    public record RollbackChange(int id, int currentVersion, int targetVersion, String currentText, String targetText) {}
+
+    // 执行结果：改了几道题、用了多久
+    public record RollbackReport(int rows, long nanos) {
+        public double rowsPerSecond() { return nanos <= 0 ? 0 : rows * 1e9 / nanos; }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%,d question(s) rolled back in %.1f ms (%,.0f rows/s)",
+                    rows, nanos / 1e6, rowsPerSecond());
+        }
+    }
+
+    // 只读：哪些题会被改成什么样（categoryId 为 null 时按 questionIds）
+    public List<RollbackChange> previewRollback(Connection c, Collection<Integer> questionIds, Integer categoryId,
+                                                RollbackTarget target) throws SQLException {
+        long t = Metrics.start();
+        var ev = ExamEvents.query("previewRollback", PLAN_PREVIEW_SQL);
+        try {
+            planRollback(c, questionIds, categoryId, target);
+            List<RollbackChange> out = new ArrayList<>();
+            try (ResultSet rs = StatementCache.of(c).prepare(PLAN_PREVIEW_SQL).executeQuery()) {
+                while (rs.next()) {
+                    out.add(new RollbackChange(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getString(4), rs.getString(5)));
+                }
+            }
+            ev.rows = out.size();
+            return out;
+        } finally {
+            ev.commit();
+            Metrics.stop("store.previewRollback", t);
+        }
+    }
+
+    // 在一个事务里重新算一遍计划（预览之后可能有人改过）并执行
+    public RollbackReport rollback(Connection c, Collection<Integer> questionIds, Integer categoryId,
+                                   RollbackTarget target) throws SQLException {
+        long t = Metrics.start();
+        long t0 = System.nanoTime();
+        var ev = ExamEvents.query("bulkRollback", PLAN_APPLY_SQL);
+        boolean oldAuto = c.getAutoCommit();
+        c.setAutoCommit(false);
+        try {
+            planRollback(c, questionIds, categoryId, target);
+            ev.rows = StatementCache.of(c).prepare(PLAN_APPLY_SQL).executeUpdate();
+            c.commit();
+            Metrics.count("store.rollbackRows", ev.rows);
+            return new RollbackReport(ev.rows, System.nanoTime() - t0);
+        } catch (SQLException ex) {
+            try { c.rollback(); } catch (SQLException ignore) {}
+            throw ex;
+        } finally {
+            try { c.setAutoCommit(oldAuto); } catch (SQLException ignore) {}
+            ev.commit();
+            Metrics.stop("store.bulkRollback", t);
+        }
+    }
+
+    private void planRollback(Connection c, Collection<Integer> questionIds, Integer categoryId,
+                              RollbackTarget target) throws SQLException {
+        StatementCache cache = StatementCache.of(c);
+        if (categoryId != null) {
+            fillBulkIds(c, List.of());
+            PreparedStatement ps = cache.prepare(BULK_IDS_FROM_CATEGORY_SQL);
+            ps.setInt(1, categoryId);
+            ps.executeUpdate();
+        } else {
+            fillBulkIds(c, questionIds);
+        }
+        try (Statement st = c.createStatement()) {
+            st.execute(ROLLBACK_PLAN_DDL);
+            st.execute("DELETE FROM temp.RollbackPlan");
         }
+        PreparedStatement plan;
+        if (target.version() != null) {
+            plan = cache.prepare(PLAN_VERSION_SQL);
+            plan.setInt(1, target.version());
+        } else {
+            plan = cache.prepare(PLAN_AS_OF_SQL);
+            plan.setString(1, target.asOf());
+        }
+        plan.executeUpdate();
+        cache.prepare(PLAN_PRUNE_SQL).executeUpdate();
     }
 
 
@@ -210,41 +638,42 @@ public class QuestionStore {
 
     //回滚：把题目恢复到指定版本（会触发生成一个新的版本号）
     public boolean rollbackToVersion(Connection c, int questionId, int targetVersion) throws SQLException {
-        //读出目标版本的内容
-        String selectSql = """
-        SELECT text, type, difficulty, topic, metadata
-        FROM QuestionVersions
-        WHERE question_id = ? AND version = ?
-    """;
-
-        try (PreparedStatement ps1 = c.prepareStatement(selectSql)) {
+        long t = Metrics.start();
+        var ev = ExamEvents.query("rollbackToVersion", null);
+        try {
+            //读出目标版本的内容
+            String selectSql = ROLLBACK_SOURCE_SQL;
+
+            ev.sql = selectSql;
+            StatementCache cache = StatementCache.of(c);
+            PreparedStatement ps1 = cache.prepare(selectSql);
             ps1.setInt(1, questionId);
             ps1.setInt(2, targetVersion);
+            String text, type, difficulty, topic, metadata;
             try (ResultSet rs = ps1.executeQuery()) {
                 if (!rs.next()) return false; // 该版本不存在
 
-                String text       = rs.getString("text");
-                String type       = rs.getString("type");
-                String difficulty = rs.getString("difficulty");
-                String topic      = rs.getString("topic");
-                String metadata   = rs.getString("metadata");
-
-                //覆盖 Questions 当前内容（触发器会自动写入新版本）
-                String updateSql = """
-                UPDATE Questions
-                SET text = ?, type = ?, difficulty = ?, topic = ?, metadata = ?
-                WHERE id = ?
-            """;
-                try (PreparedStatement ps2 = c.prepareStatement(updateSql)) {
-                    ps2.setString(1, text);
-                    ps2.setString(2, type);
-                    ps2.setString(3, difficulty);
-                    ps2.setString(4, topic);
-                    ps2.setString(5, metadata);
-                    ps2.setInt(6, questionId);
-                    return ps2.executeUpdate() == 1;
-                }
+                text       = rs.getString("text");
+                type       = rs.getString("type");
+                difficulty = rs.getString("difficulty");
+                topic      = rs.getString("topic");
+                metadata   = rs.getString("metadata");
             }
+
+            //覆盖 Questions 当前内容（触发器会自动写入新版本）
+            PreparedStatement ps2 = cache.prepare(ROLLBACK_UPDATE_SQL);
+            ps2.setString(1, text);
+            ps2.setString(2, type);
+            ps2.setString(3, difficulty);
+            ps2.setString(4, topic);
+            ps2.setString(5, metadata);
+            ps2.setInt(6, questionId);
+            ev.sql = ROLLBACK_UPDATE_SQL;
+            ev.rows = ps2.executeUpdate();
+            return ev.rows == 1;
+        } finally {
+            ev.commit();
+            Metrics.stop("store.rollbackToVersion", t);
         }
     }
 
@@ -0,0 +1,307 @@
+package at.technikum;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// 近似重复题索引（针对最新版本的题干）
+//   题干归一化（小写、去标点）→ 相邻两个词为一个 shingle → 128 个 MinHash → 16 段 × 8 行做 LSH 分桶
+//   （字符级 shingle 会被模板里共同的句式主导，同模板不同内容的题也会很"像"）
+//   同桶的题才比较签名，签名相同的比例 ≈ Jaccard 相似度；阈值 -Dexam.dup.threshold（默认 0.8）
+// 新增 / 编辑 / 删除题目时用 put / remove 增量维护，不用重建
+// 命令行：App --duplicate-report[=阈值]
+public final class SimilarityIndex {
+
+    public static final double DEFAULT_THRESHOLD = Double.parseDouble(System.getProperty("exam.dup.threshold", "0.8"));
+
+    static final int SHINGLE = 2;
+    static final int HASHES = 128;
+    static final int BANDS = 16;
+    static final int ROWS = HASHES / BANDS;
+
+    private static final long[] SEEDS = new long[HASHES];
+    static {
+        long s = 0x5DEECE66DL;
+        for (int i = 0; i < HASHES; i++) SEEDS[i] = s = mix(s + 0x9E3779B97F4A7C15L);
+    }
+
+    public record Match(int id, double similarity) {}
+
+    // 一组近似重复的题（见 duplicateReport），similarity 是和组长的最高相似度
+    public record Group(List<Integer> ids, double similarity) {}
+
+    private final double threshold;
+
+    // 槽位 -> 题目 id / 签名；删除后槽位进空闲表
+    private int[] ids = new int[1024];
+    private int[][] sigs = new int[1024][];
+    private int slots;
+    private final List<Integer> freeSlots = new ArrayList<>();
+    private final Map<Integer, Integer> slotOf = new HashMap<>();
+
+    // LSH 桶：开放寻址的 long -> slot 多值表（同一个 key 可以出现多次），slot = -1 表示已删除
+    private long[] keys = new long[1 << 12];
+    private int[] vals = new int[1 << 12];
+    private int used;
+
+    public SimilarityIndex() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    public SimilarityIndex(double threshold) {
+        this.threshold = threshold;
+    }
+
+    public double threshold() { return threshold; }
+
+    // 从 QuestionLatest 建整个题库的索引
+    public static SimilarityIndex build(Connection c, double threshold) throws SQLException {
+        long t = Metrics.start();
+        SimilarityIndex index = new SimilarityIndex(threshold);
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT question_id, text FROM QuestionLatest")) {
+            while (rs.next()) index.put(rs.getInt(1), rs.getString(2));
+        } finally {
+            Metrics.stop("dup.build", t);
+        }
+        return index;
+    }
+
+    public synchronized int size() {
+        return slotOf.size();
+    }
+
+    // 新增或替换一道题的题干
+    public synchronized void put(int id, String text) {
+        remove(id);
+        int[] sig = signature(text);
+        if (sig == null) return;
+        int slot;
+        if (!freeSlots.isEmpty()) {
+            slot = freeSlots.remove(freeSlots.size() - 1);
+        } else {
+            if (slots == ids.length) {
+                ids = Arrays.copyOf(ids, slots * 2);
+                sigs = Arrays.copyOf(sigs, slots * 2);
+            }
+            slot = slots++;
+        }
+        ids[slot] = id;
+        sigs[slot] = sig;
+        slotOf.put(id, slot);
+        for (int b = 0; b < BANDS; b++) insert(bandKey(sig, b), slot);
+    }
+
+    public synchronized void remove(int id) {
+        Integer slot = slotOf.remove(id);
+        if (slot == null) return;
+        int[] sig = sigs[slot];
+        for (int b = 0; b < BANDS; b++) delete(bandKey(sig, b), slot);
+        sigs[slot] = null;
+        freeSlots.add(slot);
+    }
+
+    // 和这段题干近似的已有题目（按相似度降序），excludeId 是正在编辑的题本身
+    public synchronized List<Match> similarTo(String text, int excludeId) {
+        int[] sig = signature(text);
+        if (sig == null) return List.of();
+        Map<Integer, Double> found = new HashMap<>();
+        for (int b = 0; b < BANDS; b++) {
+            long key = bandKey(sig, b);
+            for (int i = probe(key); keys[i] != 0; i = (i + 1) & (keys.length - 1)) {
+                int slot = vals[i];
+                if (keys[i] != key || slot < 0 || ids[slot] == excludeId || found.containsKey(ids[slot])) continue;
+                double sim = similarity(sig, sigs[slot]);
+                if (sim >= threshold) found.put(ids[slot], sim);
+            }
+        }
+        List<Match> out = new ArrayList<>();
+        found.forEach((id, sim) -> out.add(new Match(id, sim)));
+        out.sort(Comparator.comparingDouble(Match::similarity).reversed().thenComparingInt(Match::id));
+        return out;
+    }
+
+    // 题干是否和 ids 里任何一道（已在索引里的）题近似重复；抽题时用，候选题的题干在手上
+    public synchronized boolean nearDuplicateOfAny(String text, Collection<Integer> ids) {
+        int[] sig = signature(text);
+        if (sig == null) return false;
+        for (int id : ids) {
+            Integer slot = slotOf.get(id);
+            if (slot != null && similarity(sig, sigs[slot]) >= threshold) return true;
+        }
+        return false;
+    }
+
+    // 全库重复报告：按 id 顺序，没归组的题当组长，把同桶里和组长足够像的未归组题收进来
+    // （不做传递合并：A 像 B、B 像 C 不代表 A 像 C，传递合并会把同一模板的题连成一大串）
+    public synchronized List<Group> duplicateReport() {
+        long t = Metrics.start();
+        Integer[] order = new Integer[slots];
+        int n = 0;
+        for (int slot = 0; slot < slots; slot++) if (sigs[slot] != null) order[n++] = slot;
+        Arrays.sort(order, 0, n, Comparator.comparingInt(slot -> ids[slot]));
+
+        boolean[] grouped = new boolean[slots];
+        List<Group> out = new ArrayList<>();
+        for (int k = 0; k < n; k++) {
+            int leader = order[k];
+            if (grouped[leader]) continue;
+            int[] sig = sigs[leader];
+            List<Integer> members = null;
+            double best = 0;
+            for (int b = 0; b < BANDS; b++) {
+                long key = bandKey(sig, b);
+                for (int i = probe(key); keys[i] != 0; i = (i + 1) & (keys.length - 1)) {
+                    int slot = vals[i];
+                    if (keys[i] != key || slot < 0 || slot == leader || grouped[slot]) continue;
+                    double sim = similarity(sig, sigs[slot]);
+                    if (sim < threshold) continue;
+                    if (members == null) members = new ArrayList<>(List.of(ids[leader]));
+                    members.add(ids[slot]);
+                    grouped[slot] = true;
+                    best = Math.max(best, sim);
+                }
+            }
+            if (members == null) continue;
+            grouped[leader] = true;
+            members.sort(null);
+            out.add(new Group(members, best));
+        }
+        out.sort(Comparator.comparingInt((Group g) -> g.ids().size()).reversed()
+                .thenComparingInt(g -> g.ids().get(0)));
+        Metrics.stop("dup.report", t);
+        return out;
+    }
+
+    // ---- MinHash ----
+
+    static String normalize(String text) {
+        if (text == null) return "";
+        return text.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}]+", " ").trim();
+    }
+
+    // 空题干返回 null（不参与比较）
+    static int[] signature(String text) {
+        String s = normalize(text);
+        if (s.isEmpty()) return null;
+        String[] words = s.split(" ");
+        long[] min = new long[HASHES];
+        Arrays.fill(min, Long.MAX_VALUE);
+        // 词级 shingle：相邻 SHINGLE 个词；题目很短时整句算一个
+        int last = Math.max(0, words.length - SHINGLE);
+        for (int i = 0; i <= last; i++) {
+            long h = 0;
+            for (int k = i, end = Math.min(words.length, i + SHINGLE); k < end; k++) h = mix(h * 31 + words[k].hashCode());
+            for (int j = 0; j < HASHES; j++) {
+                long v = mix(h ^ SEEDS[j]) >>> 1;
+                if (v < min[j]) min[j] = v;
+            }
+        }
+        int[] sig = new int[HASHES];
+        for (int j = 0; j < HASHES; j++) sig[j] = (int) (min[j] >>> 31);
+        return sig;
+    }
+
+    static double similarity(int[] a, int[] b) {
+        int same = 0;
+        for (int i = 0; i < HASHES; i++) if (a[i] == b[i]) same++;
+        return same / (double) HASHES;
+    }
+
+    private static long bandKey(int[] sig, int band) {
+        long h = band + 1;
+        for (int r = band * ROWS; r < (band + 1) * ROWS; r++) h = mix(h * 31 + sig[r]);
+        return h == 0 ? 1 : h;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // ---- LSH 表 ----
+
+    private int probe(long key) {
+        return (int) mix(key) & (keys.length - 1);
+    }
+
+    private void insert(long key, int slot) {
+        if ((used + 1) * 2 > keys.length) rehash();
+        int i = probe(key);
+        while (keys[i] != 0) i = (i + 1) & (keys.length - 1);
+        keys[i] = key;
+        vals[i] = slot;
+        used++;
+    }
+
+    // 只打墓碑（保留 key 让探测链不断），rehash 时清掉
+    private void delete(long key, int slot) {
+        for (int i = probe(key); keys[i] != 0; i = (i + 1) & (keys.length - 1)) {
+            if (keys[i] == key && vals[i] == slot) {
+                vals[i] = -1;
+                return;
+            }
+        }
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldVals = vals;
+        int live = 0;
+        for (int v : oldVals) if (v >= 0) live++;
+        int cap = oldKeys.length;
+        while ((live + 1) * 4 > cap) cap *= 2;
+        keys = new long[cap];
+        vals = new int[cap];
+        used = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == 0 || oldVals[i] < 0) continue;
+            int j = probe(oldKeys[i]);
+            while (keys[j] != 0) j = (j + 1) & (cap - 1);
+            keys[j] = oldKeys[i];
+            vals[j] = oldVals[i];
+            used++;
+        }
+    }
+
+    // ---- 命令行 ----
+
+    public static void main(String[] args) throws SQLException {
+        double threshold = DEFAULT_THRESHOLD;
+        for (String a : args) {
+            if (a.startsWith("--duplicate-report=")) threshold = Double.parseDouble(a.substring("--duplicate-report=".length()));
+        }
+        long t0 = System.currentTimeMillis();
+        try (Connection c = Database.get()) {
+            SimilarityIndex index = build(c, threshold);
+            long built = System.currentTimeMillis() - t0;
+            List<Group> groups = index.duplicateReport();
+            long total = System.currentTimeMillis() - t0;
+            int members = 0;
+            for (Group g : groups) members += g.ids().size();
+            System.out.printf(Locale.ROOT, "%d questions indexed in %d ms; %d duplicate groups (%d questions) at threshold %.2f, total %d ms%n",
+                    index.size(), built, groups.size(), members, threshold, total);
+            Map<Integer, String> texts = new HashMap<>();
+            try (Statement st = c.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT question_id, text FROM QuestionLatest")) {
+                while (rs.next()) texts.put(rs.getInt(1), rs.getString(2));
+            }
+            for (Group g : groups.subList(0, Math.min(20, groups.size()))) {
+                System.out.printf(Locale.ROOT, "%n%.2f  %d questions%n", g.similarity(), g.ids().size());
+                for (int id : g.ids().subList(0, Math.min(5, g.ids().size()))) {
+                    System.out.println("  #" + id + "  " + texts.get(id));
+                }
+            }
+        }
+    }
+}
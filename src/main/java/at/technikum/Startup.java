@@ -0,0 +1,60 @@
+package at.technikum;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+
+// 启动耗时：从进程启动（拿不到时退回本类加载的时间）到各个阶段的毫秒数
+//   main        进入 App.main（JVM 启动 + 类加载，AppCDS 主要省这一段）
+//   firstPaint  主窗口第一次完成布局，准备上屏（TTFP）
+//   interactive 后台预热完成：分类和第一页题目已经在界面里，按钮可用（TTI）
+// 同时记成 startup.* 计时器（--metrics 时可在 Diagnostics / --metrics-dump 里看到）
+public final class Startup {
+
+    private static final long ORIGIN_NANOS = originNanos();
+    private static final Map<String, Long> MARKS = new LinkedHashMap<>();
+    private static int published;
+
+    private Startup() {}
+
+    private static long originNanos() {
+        long now = System.nanoTime();
+        Instant started = ProcessHandle.current().info().startInstant().orElse(null);
+        if (started == null) return now;
+        long sinceStart = Duration.between(started, Instant.now()).toNanos();
+        // 进程启动时间只精确到时钟滴答，偶尔会比现在还"晚"
+        return now - Math.max(0, sinceStart);
+    }
+
+    // 记录一个阶段，返回距进程启动的毫秒数；同一个阶段只记第一次
+    public static synchronized long mark(String phase) {
+        Long ms = MARKS.get(phase);
+        if (ms != null) return ms;
+        long nanos = System.nanoTime() - ORIGIN_NANOS;
+        ms = nanos / 1_000_000;
+        MARKS.put(phase, ms);
+        // "main" 记录时 --metrics 还没解析，等指标打开后再补记
+        if (Metrics.isEnabled()) {
+            int i = 0;
+            for (var e : MARKS.entrySet()) {
+                if (i++ >= published) Metrics.record("startup." + e.getKey(), e.getValue() * 1_000_000);
+            }
+            published = MARKS.size();
+        }
+        return ms;
+    }
+
+    public static synchronized Map<String, Long> marks() {
+        return new LinkedHashMap<>(MARKS);
+    }
+
+    // "Startup: main 180 ms, firstPaint 640 ms, interactive 910 ms"
+    public static synchronized String summary() {
+        StringJoiner sj = new StringJoiner(", ", "Startup: ", "");
+        MARKS.forEach((phase, ms) -> sj.add(String.format(Locale.ROOT, "%s %d ms", phase, ms)));
+        return sj.toString();
+    }
+}
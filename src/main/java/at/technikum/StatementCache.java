@@ -0,0 +1,121 @@
+package at.technikum;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// 每个连接一份 PreparedStatement 缓存（LRU，默认 64 条，-Dexam.stmtCache.size 调整）
+// 缓存拥有语句的生命周期：调用方不要 close 取到的语句，只需要关掉 ResultSet
+// （SQLite 的语句在 ResultSet 关闭前会一直占着读事务）
+// 缓存挂在 Database.get() / open() 返回的连接上，连接关闭时一起关掉，没有全局表，不会拖住连接
+// 连接池里的连接寿命长，命中率最高；不经过连接池 / 写队列的连接整个生命期算一次借出，语句到关闭时才释放
+public final class StatementCache {
+
+    static final int MAX_SIZE = Integer.getInteger("exam.stmtCache.size", 64);
+
+    private final Connection conn;
+    private final LinkedHashMap<String, PreparedStatement> lru = new LinkedHashMap<>(16, 0.75f, true);
+    // 这次借出期间交出去的语句：调用方可能还在遍历它的 ResultSet，淘汰时跳过，归还连接时才放开
+    private final Set<String> leased = new HashSet<>();
+
+    private StatementCache(Connection conn) {
+        this.conn = conn;
+    }
+
+    // 给新打开的连接挂一份缓存；关闭连接时先关掉缓存的语句
+    static Connection attach(Connection c) {
+        StatementCache cache = new StatementCache(c);
+        return (Connection) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, m, args) -> {
+                    switch (m.getName()) {
+                        case "unwrap" -> {
+                            if (args[0] == StatementCache.class) return cache;
+                        }
+                        case "isWrapperFor" -> {
+                            if (args[0] == StatementCache.class) return true;
+                        }
+                        case "close" -> cache.clear();
+                        default -> { }
+                    }
+                    try {
+                        return m.invoke(c, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    // 同一个连接同一时间只会被一个线程用（连接池 / 写队列保证），所以缓存本身不加锁
+    // 连接池、写队列、审计的代理都会把 unwrap 转给底下的连接
+    public static StatementCache of(Connection c) throws SQLException {
+        if (!c.isWrapperFor(StatementCache.class)) {
+            throw new SQLException("Connection has no statement cache; open it through Database.get() or Database.open()");
+        }
+        return c.unwrap(StatementCache.class);
+    }
+
+    public PreparedStatement prepare(String sql) throws SQLException {
+        return lookup(sql, false);
+    }
+
+    // INSERT 后要 getGeneratedKeys() 的语句
+    public PreparedStatement prepareWithKeys(String sql) throws SQLException {
+        return lookup(sql, true);
+    }
+
+    private PreparedStatement lookup(String sql, boolean keys) throws SQLException {
+        String key = keys ? "K:" + sql : sql;
+        leased.add(key);
+        PreparedStatement ps = lru.get(key);
+        if (ps != null && !ps.isClosed()) {
+            ps.clearParameters();
+            Metrics.count("stmt.hits");
+            return ps;
+        }
+        Metrics.count("stmt.misses");
+        ps = keys ? conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS) : conn.prepareStatement(sql);
+        lru.put(key, ps);
+        trim();
+        return ps;
+    }
+
+    // 从最久没用的开始淘汰，这次借出期间交出去的不动（一次借出用到的语句多于上限时暂时超出）
+    private void trim() {
+        for (Iterator<Map.Entry<String, PreparedStatement>> it = lru.entrySet().iterator(); lru.size() > MAX_SIZE && it.hasNext(); ) {
+            var e = it.next();
+            if (leased.contains(e.getKey())) continue;
+            closeQuietly(e.getValue());
+            it.remove();
+            Metrics.count("stmt.evictions");
+        }
+    }
+
+    // 连接还回去了（或者一批写操作做完了）：交出去的语句都不再有人用，可以淘汰了
+    void endLease() {
+        leased.clear();
+        trim();
+    }
+
+    public int size() {
+        return lru.size();
+    }
+
+    // 关闭并丢掉所有缓存的语句（连接真正关闭前调用）
+    public void clear() {
+        for (PreparedStatement ps : lru.values()) closeQuietly(ps);
+        lru.clear();
+        leased.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement ps) {
+        try { ps.close(); } catch (SQLException ignore) {}
+    }
+}
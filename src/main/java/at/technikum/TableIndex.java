@@ -0,0 +1,234 @@
+package at.technikum;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+// 主表的内存过滤索引（过滤栏用），思路和 BankIndex 一样：全是基本类型，按题目 id 建位图倒排
+//   分类 id -> BitSet(题目 id)，难度编码 -> BitSet(题目 id)，表格里增删改行时增量维护
+//   题目 id -> 正文（和行共用同一个 String，每行只多一个引用）
+// 过滤 = 位图求交，再对剩下的 id 做大小写不敏感的子串匹配（候选多时按 64 位字分块并行）；
+// 只是在上次的文字后面接着打字时，只需要扫上次命中的行
+public final class TableIndex {
+
+    // 候选超过这么多行才并行扫，按 64 位字切块
+    static final int PARALLEL_MIN = 20_000;
+    static final int CHUNK_WORDS = 256;
+
+    // 难度字典：行里只存一个 byte。前三个固定，库里出现别的写法时追加
+    private static final List<String> DIFFICULTY_NAMES = new ArrayList<>(ExamGenerator.DIFFICULTIES);
+
+    public static synchronized byte difficultyCode(String name) {
+        if (name == null) name = "";
+        int i = DIFFICULTY_NAMES.indexOf(name);
+        if (i < 0) {
+            if (DIFFICULTY_NAMES.size() > Byte.MAX_VALUE) throw new IllegalStateException("Too many difficulty values");
+            i = DIFFICULTY_NAMES.size();
+            DIFFICULTY_NAMES.add(name);
+        }
+        return (byte) i;
+    }
+
+    public static synchronized String difficultyName(byte code) {
+        return DIFFICULTY_NAMES.get(code);
+    }
+
+    // 一种分类组合：ids 升序；名字和显示用的 "A, B" 建一次，所有同组合的行共用
+    public static final class CategorySet {
+        public static final CategorySet EMPTY = new CategorySet(new int[0], List.of());
+
+        final int[] ids;
+        public final List<String> names;
+        public final String csv;
+
+        private CategorySet(int[] ids, List<String> names) {
+            this.ids = ids;
+            this.names = names;
+            this.csv = String.join(", ", names);
+        }
+
+        public boolean contains(int categoryId) {
+            return Arrays.binarySearch(ids, categoryId) >= 0;
+        }
+
+        public int size() {
+            return ids.length;
+        }
+    }
+
+    // 分类组合的驻留池；一次 Load 用一个（分类名在驻留时解析）
+    public static final class CategorySets {
+        private final Map<Key, CategorySet> sets = new HashMap<>();
+        private final IntFunction<String> nameOf;
+
+        public CategorySets(IntFunction<String> nameOf) {
+            this.nameOf = nameOf;
+        }
+
+        // ids 的前 n 个（任意顺序，可以重复）
+        public CategorySet of(int[] ids, int n) {
+            if (n == 0) return CategorySet.EMPTY;
+            int[] sorted = Arrays.stream(ids, 0, n).sorted().distinct().toArray();
+            return sets.computeIfAbsent(new Key(sorted), k -> {
+                List<String> names = new ArrayList<>(sorted.length);
+                for (int id : sorted) {
+                    String name = nameOf.apply(id);
+                    names.add(name == null ? "#" + id : name);
+                }
+                return new CategorySet(sorted, Collections.unmodifiableList(names));
+            });
+        }
+
+        public CategorySet of(List<Integer> ids) {
+            return of(ids.stream().mapToInt(Integer::intValue).toArray(), ids.size());
+        }
+
+        public CategorySet with(CategorySet s, int categoryId) {
+            if (s.contains(categoryId)) return s;
+            int[] ids = Arrays.copyOf(s.ids, s.ids.length + 1);
+            ids[s.ids.length] = categoryId;
+            return of(ids, ids.length);
+        }
+
+        public CategorySet without(CategorySet s, int categoryId) {
+            if (!s.contains(categoryId)) return s;
+            int[] ids = Arrays.stream(s.ids).filter(id -> id != categoryId).toArray();
+            return of(ids, ids.length);
+        }
+
+        public int size() {
+            return sets.size();
+        }
+
+        private record Key(int[] ids) {
+            @Override public boolean equals(Object o) { return o instanceof Key k && Arrays.equals(ids, k.ids); }
+            @Override public int hashCode() { return Arrays.hashCode(ids); }
+        }
+    }
+
+    // 过滤条件：categoryId <= 0 / difficulty < 0 / text 为空 表示不限
+    public record Filter(int categoryId, byte difficulty, String text) {
+        public static final Filter NONE = new Filter(0, (byte) -1, "");
+
+        public Filter {
+            text = text == null ? "" : text.strip().toLowerCase(Locale.ROOT);
+        }
+
+        public boolean isEmpty() {
+            return categoryId <= 0 && difficulty < 0 && text.isEmpty();
+        }
+    }
+
+    private final Map<Integer, BitSet> byCategory = new HashMap<>();
+    private final List<BitSet> byDifficulty = new ArrayList<>();
+    private final BitSet all = new BitSet();
+    private String[] texts = new String[1024];
+
+    // 上一次的结果，供接着打字时缩小范围；行有变动就作废
+    private Filter lastFilter;
+    private BitSet lastHits;
+
+    public void add(QuestionRow r) {
+        int id = r.getId();
+        all.set(id);
+        if (id >= texts.length) texts = Arrays.copyOf(texts, Math.max(id + 1, texts.length * 2));
+        texts[id] = r.getText();
+        for (int cat : r.getCategorySet().ids) byCategory.computeIfAbsent(cat, k -> new BitSet()).set(id);
+        int d = r.difficultyCode();
+        while (byDifficulty.size() <= d) byDifficulty.add(new BitSet());
+        byDifficulty.get(d).set(id);
+        lastFilter = null;
+    }
+
+    public void remove(QuestionRow r) {
+        int id = r.getId();
+        all.clear(id);
+        if (id < texts.length) texts[id] = null;
+        for (int cat : r.getCategorySet().ids) {
+            BitSet bs = byCategory.get(cat);
+            if (bs != null) bs.clear(id);
+        }
+        int d = r.difficultyCode();
+        if (d < byDifficulty.size()) byDifficulty.get(d).clear(id);
+        lastFilter = null;
+    }
+
+    public void clear() {
+        byCategory.clear();
+        byDifficulty.clear();
+        all.clear();
+        texts = new String[1024];
+        lastFilter = null;
+    }
+
+    // 命中的题目 id（不要修改返回的位图）
+    public BitSet match(Filter f) {
+        long t = Metrics.start();
+        try {
+            BitSet hits;
+            if (lastFilter != null && lastFilter.categoryId() == f.categoryId() && lastFilter.difficulty() == f.difficulty()
+                    && f.text().startsWith(lastFilter.text())) {
+                // 接着打字：结果只会更少
+                if (f.text().equals(lastFilter.text())) return lastHits;
+                hits = (BitSet) lastHits.clone();
+                Metrics.count("table.filter.narrowed");
+            } else {
+                hits = (BitSet) all.clone();
+                if (f.categoryId() > 0) hits.and(byCategory.getOrDefault(f.categoryId(), new BitSet()));
+                if (f.difficulty() >= 0) hits.and(f.difficulty() < byDifficulty.size() ? byDifficulty.get(f.difficulty()) : new BitSet());
+            }
+            if (!f.text().isEmpty()) hits = scan(hits, f.text());
+            lastFilter = f;
+            lastHits = hits;
+            return hits;
+        } finally {
+            Metrics.stop("table.filter", t);
+        }
+    }
+
+    // 各块只改自己那段 long，互不干扰
+    private BitSet scan(BitSet candidates, String needle) {
+        long[] words = candidates.toLongArray();
+        String[] texts = this.texts;
+        int chunks = (words.length + CHUNK_WORDS - 1) / CHUNK_WORDS;
+        IntStream range = IntStream.range(0, chunks);
+        if (candidates.cardinality() >= PARALLEL_MIN) range = range.parallel();
+        range.forEach(chunk -> {
+            int end = Math.min(words.length, (chunk + 1) * CHUNK_WORDS);
+            for (int w = chunk * CHUNK_WORDS; w < end; w++) {
+                for (long bits = words[w]; bits != 0; bits &= bits - 1) {
+                    int b = Long.numberOfTrailingZeros(bits);
+                    int id = (w << 6) + b;
+                    if (id >= texts.length || !containsIgnoreCase(texts[id], needle)) words[w] &= ~(1L << b);
+                }
+            }
+        });
+        return BitSet.valueOf(words);
+    }
+
+    // needle 已经是小写；不为整段正文建小写副本。首字符用 String.indexOf 找（JIT 里是向量化的）
+    static boolean containsIgnoreCase(String text, String needle) {
+        if (text == null) return false;
+        int n = needle.length();
+        int last = text.length() - n;
+        if (last < 0) return false;
+        char lower = needle.charAt(0);
+        char upper = Character.toUpperCase(lower);
+        int i = text.indexOf(lower);
+        int j = lower == upper ? -1 : text.indexOf(upper);
+        while (true) {
+            int k = i < 0 ? j : j < 0 ? i : Math.min(i, j);
+            if (k < 0 || k > last) return false;
+            if (text.regionMatches(true, k + 1, needle, 1, n - 1)) return true;
+            if (k == i) i = text.indexOf(lower, k + 1);
+            else j = text.indexOf(upper, k + 1);
+        }
+    }
+}
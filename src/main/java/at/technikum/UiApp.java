@@ -1,9 +1,15 @@
 package at.technikum;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
+import javafx.event.ActionEvent;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -11,13 +17,26 @@ import javafx.scene.control.*;
 import javafx.scene.control.cell.CheckBoxListCell;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.*;
+import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.MenuItem;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.sql.*;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.Date;
 import javafx.scene.control.Button;
 import javafx.scene.layout.VBox;
@@ -43,21 +62,40 @@ public class UiApp extends Application {
     private final AtomicInteger catSeq = new AtomicInteger(1);
     private final AtomicInteger qSeq   = new AtomicInteger(1);
 
-    //Table model
-    public static class QuestionRow {
-        private final int id; private final String difficulty; private final String text; private final List<String> categories;
-        public QuestionRow(int id, String difficulty, String text, List<String> categories){
-            this.id=id;this.difficulty=difficulty;this.text=text;this.categories=categories;
-        }
-        public int getId(){return id;}
-        public String getDifficulty(){return difficulty;}
-        public String getText(){return text;}
-        public String getCategoriesCsv(){return String.join(", ", categories);}
-        public List<String> getCategories(){return categories;}
-    }
-
     private final TableView<QuestionRow> table = new TableView<>();
+
+    // 近似重复题索引：启动预热 / Load 时在后台整体重建（见 withSimilarityIndex），之后随增删改增量维护
+    private SimilarityIndex similarity;
+    private boolean similarityBuilding;
+    private final List<Consumer<SimilarityIndex>> similarityWaiters = new ArrayList<>();
+    // 曝光均衡抽题的 alias 表缓存；导出的试卷会记入 QuestionUsage
+    private final ExposureSampler exposure = new ExposureSampler();
+    private final ExamStore examStore = new ExamStore();
+    private final AttachmentStore attachments = new AttachmentStore();
     private final ObservableList<QuestionRow> data = FXCollections.observableArrayList();
+    // 过滤栏：data 是全部行，表格显示过滤后的（外面再套 SortedList，点列头排序照旧）
+    private final FilteredList<QuestionRow> filtered = new FilteredList<>(data);
+    private final TableIndex tableIndex = new TableIndex();
+    private TableIndex.CategorySets categorySets = new TableIndex.CategorySets(this::categoryName);
+    private TableIndex.Filter filter = TableIndex.Filter.NONE;
+    private boolean refilterPending;
+    private final Label lblFilterCount = new Label();
+
+    // 启动时后台先读最新的这么多道题显示出来，完整题库还是点 Load 读
+    static final int FIRST_PAGE = Integer.getInteger("exam.ui.firstPage", 200);
+    static final String FIRST_PAGE_CATEGORIES_SQL = "SELECT question_id, category_id FROM Question_Categories " +
+            "WHERE question_id >= ? ORDER BY question_id, category_id";
+    static final String ROW_CATEGORIES_SQL = "SELECT question_id, category_id FROM Question_Categories ORDER BY question_id, category_id";
+
+    // 界面也用共享连接池：连接活得久，每个连接的 StatementCache 才能复用
+    private static Connection db() throws SQLException { return ConnectionPool.shared().get(); }
+    // 写操作都交给单写者队列（读还是走连接池）
+    private static WriteQueue writes() { return WriteQueue.shared(); }
+
+    @Override public void stop() {
+        writes().close();
+        ConnectionPool.shared().close();
+    }
 
     @Override public void start(Stage stage){
         stage.setTitle("Exam Manager and Generator");
@@ -66,9 +104,20 @@ public class UiApp extends Application {
         Button btnAdd   = new Button("Add Question");
         Button btnEdit  = new Button("Edit Selected");
         Button btnDel   = new Button("Delete Selected");
+        Button btnCat   = new Button("Categorize Selected");
         Button btnGenExam = new Button("Generate Exam");
+        Button btnDups  = new Button("Duplicates");
+        Button btnMerge = new Button("Merge Bank...");
+        Button btnBackups = new Button("Backups...");
 
-        btnLoad.setOnAction(e -> loadFromDatabase());
+        Label lblStatus = new Label();
+        lblStatus.setStyle("-fx-text-fill: #666666;");
+
+        btnLoad.setOnAction(e -> {
+            lblStatus.setText("");
+            similarity = null;
+            loadFromDatabase();
+        });
         btnAdd.setOnAction(e -> openAddOrEditDialog(stage, null));
         btnEdit.setOnAction(e -> {
             QuestionRow sel = table.getSelectionModel().getSelectedItem();
@@ -76,6 +125,10 @@ public class UiApp extends Application {
             openAddOrEditDialog(stage, sel);
         });
         btnDel.setOnAction(e -> deleteSelected());
+        btnDups.setOnAction(e -> showDuplicateReport(stage));
+        btnMerge.setOnAction(e -> mergeBank(stage));
+        btnBackups.setOnAction(e -> showBackups(stage));
+        btnCat.setOnAction(e -> recategorizeSelected(stage));
         btnGenExam.setOnAction(e -> {
             TextInputDialog dialog = new TextInputDialog("Exam " + new Date());
             dialog.setTitle("New Exam");
@@ -96,7 +149,13 @@ public class UiApp extends Application {
             });
         });
 
-        HBox top = new HBox(10, btnLoad, btnAdd, btnEdit, btnDel, btnGenExam);
+        HBox top = new HBox(10, btnLoad, btnAdd, btnEdit, btnDel, btnCat, btnGenExam, btnDups, btnMerge, btnBackups);
+        if (Metrics.isEnabled() || QueryAudit.isEnabled()) {
+            Button btnDiag = new Button("Diagnostics");
+            btnDiag.setOnAction(e -> showDiagnostics(stage));
+            top.getChildren().add(btnDiag);
+        }
+        top.getChildren().add(lblStatus);
         top.setPadding(new Insets(10)); top.setAlignment(Pos.CENTER_LEFT);
 
         TableColumn<QuestionRow, Number> cId = new TableColumn<>("ID");
@@ -108,19 +167,100 @@ public class UiApp extends Application {
         TableColumn<QuestionRow, String> cText = new TableColumn<>("Text");
         cText.setCellValueFactory(new PropertyValueFactory<>("text"));
         table.getColumns().addAll(cId, cDiff, cCat, cText);
-        table.setItems(data);
+        table.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        SortedList<QuestionRow> sorted = new SortedList<>(filtered);
+        sorted.comparatorProperty().bind(table.comparatorProperty());
+        table.setItems(sorted);
+        // 行的增删改同步到过滤索引；过滤中的话攒到下一帧重算一次
+        data.addListener((ListChangeListener<QuestionRow>) ch -> {
+            while (ch.next()) {
+                if (ch.wasRemoved()) {
+                    if (ch.getAddedSize() == data.size()) tableIndex.clear();   // setAll / clear：整体重建
+                    else ch.getRemoved().forEach(tableIndex::remove);
+                }
+                if (ch.wasAdded()) ch.getAddedSubList().forEach(tableIndex::add);
+            }
+            scheduleRefilter();
+        });
+        table.setPlaceholder(new Label("Opening database..."));
 
         //添加右键菜单
         MenuItem viewVersions = new MenuItem("View Versions");
         viewVersions.setOnAction(e -> showVersionHistory());
 
-        ContextMenu contextMenu = new ContextMenu(viewVersions);
+        MenuItem bulkRollback = new MenuItem("Bulk Rollback...");
+        bulkRollback.setOnAction(e -> bulkRollback(stage));
+
+        ContextMenu contextMenu = new ContextMenu(viewVersions, bulkRollback);
         table.setContextMenu(contextMenu);
 
 
-        BorderPane root = new BorderPane(); root.setTop(top); root.setCenter(table);
+        BorderPane root = new BorderPane(); root.setTop(new VBox(top, filterBar())); root.setCenter(table);
         BorderPane.setMargin(table, new Insets(10));
-        stage.setScene(new Scene(root, 1080, 560)); stage.show();
+        Scene scene = new Scene(root, 1080, 560);
+        scene.addPostLayoutPulseListener(new Runnable() {
+            @Override public void run() {
+                scene.removePostLayoutPulseListener(this);
+                Startup.mark("firstPaint");
+            }
+        });
+        stage.setScene(scene); stage.show();
+
+        // 窗口先出来；数据库在后台打开，要用分类的按钮等预热完成再启用
+        List<Button> needData = List.of(btnAdd, btnEdit, btnCat, btnGenExam, btnMerge);
+        needData.forEach(b -> b.setDisable(true));
+        warmUp(needData, lblStatus);
+    }
+
+    // 后台预热：取连接（第一次会跑迁移、切 WAL）、读分类和最新一页题目，回到 FX 线程填界面（TTI），
+    // 然后再准备 PDF 字体，第一次导出就不用现解析
+    private void warmUp(List<Button> needData, Label lblStatus) {
+        Thread.ofPlatform().daemon().name("startup-warmup").start(() -> {
+            long t = Metrics.start();
+            try {
+                List<Category> cats;
+                List<QuestionRow> rows = new ArrayList<>();
+                try (var c = db()) {
+                    cats = readCategories(c);
+                    Map<Integer, String> names = new HashMap<>();
+                    for (Category cat : cats) names.put(cat.id, cat.name);
+                    var page = store.search(c, null, null, null, FIRST_PAGE);
+                    Map<Integer, TableIndex.CategorySet> setsByQuestion = Map.of();
+                    if (!page.isEmpty()) {
+                        PreparedStatement ps = StatementCache.of(c).prepare(FIRST_PAGE_CATEGORIES_SQL);
+                        ps.setInt(1, page.get(page.size() - 1).id);   // 按 id 倒序取的，最后一个最小
+                        setsByQuestion = readCategorySets(ps, new TableIndex.CategorySets(names::get));
+                    }
+                    for (var q : page) {
+                        rows.add(new QuestionRow(q.id, q.difficulty, q.text, setsByQuestion.getOrDefault(q.id, TableIndex.CategorySet.EMPTY)));
+                    }
+                }
+                Platform.runLater(() -> {
+                    // 预热期间已经点过 Load 的话，以 Load 的结果为准
+                    if (Categories.isEmpty()) cats.forEach(cat -> Categories.put(cat.id, cat));
+                    if (data.isEmpty()) {
+                        data.setAll(rows);
+                        if (rows.size() == FIRST_PAGE) lblStatus.setText("Showing the newest " + FIRST_PAGE + " questions. Load shows all.");
+                    }
+                    table.setPlaceholder(new Label("No questions."));
+                    needData.forEach(b -> b.setDisable(false));
+                    Startup.mark("interactive");
+                    // 平时不往 stdout 打；--metrics 时已经记成 startup.* 计时器
+                    if (Boolean.getBoolean("exam.startup.log")) System.out.println(Startup.summary());
+                    // 近似重复提示不用等 Load
+                    withSimilarityIndex(null);
+                });
+                PdfFonts.shared();
+            } catch (Exception ex) {
+                Platform.runLater(() -> {
+                    table.setPlaceholder(new Label("No questions."));
+                    needData.forEach(b -> b.setDisable(false));
+                    warn("Failed to open database: " + ex.getMessage());
+                });
+            } finally {
+                Metrics.stop("startup.warmUp", t);
+            }
+        });
     }
 
     //Load data from DB
@@ -128,25 +268,20 @@ public class UiApp extends Application {
         data.clear();
         loadCategoriesFromDb();
 
-        try (var c = Database.get()) {
+        try (var c = db()) {
             var questions = store.findAll(c);
 
-            Map<Integer, List<String>> catsByQuestion = new HashMap<>();
-            try (PreparedStatement ps = c.prepareStatement(
-                    "SELECT qc.question_id, c.name FROM Question_Categories qc " +
-                            "JOIN Categories c ON qc.category_id = c.id")) {
-                ResultSet rs = ps.executeQuery();
-                while (rs.next()) {
-                    int qId = rs.getInt("question_id");
-                    String catName = rs.getString("name");
-                    catsByQuestion.computeIfAbsent(qId, k -> new ArrayList<>()).add(catName);
-                }
-            }
+            // 每次 Load 一个新的驻留池，删掉的分类组合不会一直留着
+            categorySets = new TableIndex.CategorySets(this::categoryName);
+            Map<Integer, TableIndex.CategorySet> setsByQuestion =
+                    readCategorySets(StatementCache.of(c).prepare(ROW_CATEGORIES_SQL), categorySets);
 
+            List<QuestionRow> rows = new ArrayList<>(questions.size());
             for (var q : questions) {
-                List<String> cats = catsByQuestion.getOrDefault(q.id, Collections.emptyList());
-                data.add(new QuestionRow(q.id, q.difficulty, q.text, cats));
+                rows.add(new QuestionRow(q.id, q.difficulty, q.text, setsByQuestion.getOrDefault(q.id, TableIndex.CategorySet.EMPTY)));
             }
+            data.setAll(rows);
+            withSimilarityIndex(null);
 
             info("Loaded " + questions.size() + " questions from database.");
         } catch (Exception ex) {
@@ -166,6 +301,15 @@ public class UiApp extends Application {
         TextArea taText = new TextArea(existing == null ? "" : existing.getText());
         taText.setPrefRowCount(6);
 
+        // 边输入边查近似重复（索引查询是微秒级的）
+        Label lblDup = new Label();
+        lblDup.setStyle("-fx-text-fill: #b35900; -fx-font-size: 11px;");
+        lblDup.setWrapText(true);
+        lblDup.setMaxWidth(460);
+        int selfId = existing == null ? -1 : existing.getId();
+        taText.textProperty().addListener((obs, o, n) -> lblDup.setText(duplicateWarning(n, selfId)));
+        lblDup.setText(duplicateWarning(taText.getText(), selfId));
+
         ComboBox<String> cbDiff = new ComboBox<>(FXCollections.observableArrayList("Easy","Medium","Hard"));
         cbDiff.getSelectionModel().select(existing == null ? 0 :
                 switch(existing.getDifficulty()){case "Medium"->1; case "Hard"->2; default->0;});
@@ -192,12 +336,14 @@ public class UiApp extends Application {
         btnAddCat.setOnAction(e -> {
             String n = opt(tfNewCat.getText());
             if (!n.isEmpty() && !allCats.contains(n)) {
-                int id = insertCategoryIntoDb(n);
-                if (id > 0) {
-                    allCats.add(n);
-                    FXCollections.sort(allCats);
+                submitWrite(c -> findOrInsertCategory(c, n), r -> {
+                    rememberCategory(r, n);
+                    if (!allCats.contains(n)) {
+                        allCats.add(n);
+                        FXCollections.sort(allCats);
+                    }
                     info("Category added: " + n);
-                }
+                }, "Failed to insert category");
             }
             tfNewCat.clear();
         });
@@ -206,11 +352,11 @@ public class UiApp extends Application {
         btnDelCat.setOnAction(e -> {
             String selected = lvCats.getSelectionModel().getSelectedItem();
             if (selected == null) { warn("Select a category to delete."); return; }
-            if (deleteCategoryFromDb(selected)) {
+            deleteCategoryFromDb(selected, () -> {
                 allCats.remove(selected);
                 selectedCats.remove(selected);
                 info("Category deleted: " + selected);
-            }
+            });
         });
 
         Label lblHint = new Label("Select one or more categories below:");
@@ -218,10 +364,35 @@ public class UiApp extends Application {
 
         GridPane gp = new GridPane(); gp.setHgap(10); gp.setVgap(10); gp.setPadding(new Insets(10));
         gp.addRow(0, new Label("Difficulty:"), cbDiff);
-        gp.add(new Label("Text:"),0,1); gp.add(taText,1,1);
-        gp.add(lblHint,1,2);
-        gp.add(lvCats,1,3);
-        gp.add(new HBox(6, tfNewCat, btnAddCat, btnDelCat),1,4);
+        // 图片存进 Attachments（按内容去重），题干里插入引用标记
+        Button btnImage = new Button("Attach Image...");
+        btnImage.setOnAction(e -> {
+            FileChooser fc = new FileChooser();
+            fc.setTitle("Attach image");
+            fc.getExtensionFilters().add(new FileChooser.ExtensionFilter("Images", "*.png", "*.jpg", "*.jpeg", "*.gif", "*.bmp"));
+            File f = fc.showOpenDialog(dlg.getOwner());
+            if (f == null) return;
+            byte[] bytes;
+            try {
+                bytes = Files.readAllBytes(f.toPath());
+            } catch (IOException ex) {
+                warn("Failed to attach image: " + ex.getMessage());
+                return;
+            }
+            submitWrite(c -> {
+                try {
+                    return attachments.put(c, bytes);
+                } catch (IOException ex) {
+                    throw new SQLException(ex.getMessage(), ex);
+                }
+            }, hash -> taText.insertText(taText.getCaretPosition(), AttachmentStore.marker(hash)), "Failed to attach image");
+        });
+
+        gp.add(new Label("Text:"),0,1); gp.add(new VBox(6, taText, btnImage),1,1);
+        gp.add(lblDup,1,2);
+        gp.add(lblHint,1,3);
+        gp.add(lvCats,1,4);
+        gp.add(new HBox(6, tfNewCat, btnAddCat, btnDelCat),1,5);
 
         dlg.getDialogPane().setContent(gp);
         dlg.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
@@ -232,119 +403,432 @@ public class UiApp extends Application {
             if (text.isEmpty()) { warn("Text required."); return false; }
             String diff = cbDiff.getValue();
 
-            List<Integer> catIds = new ArrayList<>();
-            for (String n : selectedCats) if (!n.isBlank()) catIds.add(ensureCategory(n.trim()));
+            List<String> catNames = new ArrayList<>();
+            for (String n : selectedCats) if (!n.isBlank()) catNames.add(n.trim());
 
-            if (existing == null) {
-                try (var c = Database.get()) {
-                    int qid = store.insert(c, text, "short", diff);
-                    for (int cid : catIds) store.linkQuestionCategory(c, qid, cid);
-                    info("Question saved (ID: " + qid + ")");
-                } catch (Exception ex) { warn("Failed to save: " + ex.getMessage()); }
-            } else {
-                try (var c = Database.get()) {
-                    store.update(c, existing.getId(), text, "short", diff);
-                    store.deleteQuestionCategories(c, existing.getId());
-                    for (int cid : catIds) store.linkQuestionCategory(c, existing.getId(), cid);
-                    info("Question updated (ID: " + existing.getId() + ")");
-                } catch (Exception ex) { warn("Failed to update: " + ex.getMessage()); }
-            }
-            loadFromDatabase();
+            // 新分类和题目在写线程的同一个事务里建；提交后重新 Load（分类也一起重读）
+            submitWrite(c -> {
+                List<Integer> catIds = new ArrayList<>();
+                for (String n : catNames) catIds.add(findOrInsertCategory(c, n)[0]);
+                int id;
+                if (existing == null) {
+                    id = store.insert(c, text, "short", diff);
+                } else {
+                    id = existing.getId();
+                    store.update(c, id, text, "short", diff);
+                }
+                store.relinkCategories(c, id, catIds);
+                return id;
+            }, qid -> {
+                if (similarity != null) similarity.put(qid, text);
+                loadFromDatabase();
+                info(existing == null ? "Question saved (ID: " + qid + ")" : "Question updated (ID: " + qid + ")");
+            }, existing == null ? "Failed to save" : "Failed to update");
             return true;
         });
         dlg.showAndWait();
     }
 
     private void deleteSelected() {
-        QuestionRow sel = table.getSelectionModel().getSelectedItem();
-        if (sel == null) { warn("Select a row."); return; }
+        List<QuestionRow> sel = List.copyOf(table.getSelectionModel().getSelectedItems());
+        if (sel.isEmpty()) { warn("Select a row."); return; }
         Alert a = new Alert(Alert.AlertType.CONFIRMATION,
-                "Delete question #" + sel.getId() + "?",
+                sel.size() == 1 ? "Delete question #" + sel.get(0).getId() + "?"
+                        : "Delete " + sel.size() + " selected questions?",
                 ButtonType.OK, ButtonType.CANCEL);
         a.setHeaderText(null);
         a.showAndWait().ifPresent(bt -> {
             if (bt == ButtonType.OK) {
-                try (var c = Database.get()) {
-                    QuestionStore store = new QuestionStore();
-                    boolean ok = store.deleteQuestion(c, sel.getId());
-                    if (ok) {
-                        info("Question deleted.");
-                        loadFromDatabase();           // 刷新列表
+                Set<Integer> ids = new HashSet<>();
+                for (QuestionRow r : sel) ids.add(r.getId());
+                submitWrite(c -> store.deleteQuestions(c, ids), deleted -> {
+                    if (deleted > 0) {
+                        // 只从表格里去掉删掉的行，不整表重载
+                        data.removeIf(r -> ids.contains(r.getId()));
+                        if (similarity != null) ids.forEach(similarity::remove);
+                        info(deleted == 1 ? "Question deleted." : deleted + " questions deleted.");
                     } else {
                         warn("Delete failed: question not found.");
                     }
-                } catch (Exception ex) {
-                    warn("Failed to delete: " + ex.getMessage());
+                }, "Failed to delete");
+            }
+        });
+    }
+
+    // 批量给选中的题目加上 / 去掉一个分类（一个事务），只刷新受影响的行
+    private void recategorizeSelected(Stage owner) {
+        List<QuestionRow> sel = List.copyOf(table.getSelectionModel().getSelectedItems());
+        if (sel.isEmpty()) { warn("Select one or more rows."); return; }
+
+        Dialog<Boolean> dlg = new Dialog<>();
+        dlg.initOwner(owner);
+        dlg.initModality(Modality.WINDOW_MODAL);
+        dlg.setTitle("Categorize Selected");
+        dlg.setHeaderText(sel.size() + " question(s) selected");
+
+        ComboBox<String> cbCat = new ComboBox<>(FXCollections.observableArrayList(Categories.values().stream()
+                .map(c -> c.name).sorted().toList()));
+        cbCat.setEditable(true);
+        cbCat.setPromptText("Category");
+        ToggleGroup mode = new ToggleGroup();
+        RadioButton rbAssign = new RadioButton("Assign");
+        RadioButton rbUnassign = new RadioButton("Unassign");
+        rbAssign.setToggleGroup(mode);
+        rbUnassign.setToggleGroup(mode);
+        rbAssign.setSelected(true);
+
+        GridPane gp = new GridPane(); gp.setHgap(10); gp.setVgap(10); gp.setPadding(new Insets(10));
+        gp.addRow(0, new Label("Category:"), cbCat);
+        gp.addRow(1, new Label("Action:"), new HBox(10, rbAssign, rbUnassign));
+        dlg.getDialogPane().setContent(gp);
+        dlg.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+        dlg.setResultConverter(bt -> bt == ButtonType.OK);
+        if (!dlg.showAndWait().orElse(false)) return;
+
+        String name = opt(cbCat.getEditor().getText());
+        if (name.isEmpty()) { warn("Choose a category."); return; }
+        boolean assign = rbAssign.isSelected();
+        int existingId = assign ? 0 : findCategoryIdByName(name);
+        if (!assign && existingId <= 0) { warn("Unknown category: " + name); return; }
+
+        List<Integer> ids = new ArrayList<>();
+        for (QuestionRow r : sel) ids.add(r.getId());
+        // 返回 {分类 id, 1 = 新建的分类, 改了几道题}；Assign 时找分类 / 建分类和加关联在同一个事务里
+        submitWrite(c -> {
+            if (!assign) return new int[]{existingId, 0, store.unassignCategory(c, ids, existingId)};
+            int[] cat = findOrInsertCategory(c, name);
+            return new int[]{cat[0], cat[1], store.assignCategory(c, ids, cat[0])};
+        }, result -> {
+            int catId = result[0];
+            rememberCategory(result, name);
+            String catName = Categories.containsKey(catId) ? Categories.get(catId).name : name;
+            Set<Integer> selIds = new HashSet<>(ids);
+            for (int i = 0; i < data.size(); i++) {
+                QuestionRow r = data.get(i);
+                if (!selIds.contains(r.getId())) continue;
+                TableIndex.CategorySet cats = assign ? categorySets.with(r.getCategorySet(), catId)
+                        : categorySets.without(r.getCategorySet(), catId);
+                if (cats != r.getCategorySet()) data.set(i, new QuestionRow(r.getId(), r.getDifficulty(), r.getText(), cats));
+            }
+            info((assign ? "Assigned '" : "Removed '") + catName + "' " + (assign ? "to " : "from ") + result[2] + " question(s).");
+        }, "Failed to update categories");
+    }
+
+
+
+    // 近似重复索引在后台线程建（10 万题要 5 秒左右），建好后回到 FX 线程发布；onReady 在 FX 线程拿到索引，
+    // 已经有索引时立即调用，null 表示只触发建索引
+    // 建的时候题库又变了（数据指纹不同）就重建：建好之前的增删改（那时 put / remove 被跳过）不会漏掉
+    private void withSimilarityIndex(Consumer<SimilarityIndex> onReady) {
+        if (similarity != null) {
+            if (onReady != null) onReady.accept(similarity);
+            return;
+        }
+        if (onReady != null) similarityWaiters.add(onReady);
+        if (similarityBuilding) return;
+        similarityBuilding = true;
+        Thread.ofPlatform().daemon().name("similarity-index").start(() -> {
+            SimilarityIndex idx = null;
+            String fingerprint = null;
+            Exception failure = null;
+            try (Connection c = db()) {
+                for (int attempt = 0; attempt < 3; attempt++) {
+                    String before = BankIndex.fingerprint(c);
+                    idx = SimilarityIndex.build(c, SimilarityIndex.DEFAULT_THRESHOLD);
+                    fingerprint = BankIndex.fingerprint(c);
+                    if (before.equals(fingerprint)) break;
                 }
+            } catch (Exception ex) {
+                failure = ex;
+            }
+            SimilarityIndex built = idx;
+            String fp = fingerprint;
+            Exception err = failure;
+            Platform.runLater(() -> publishSimilarityIndex(built, fp, err));
+        });
+    }
+
+    private void publishSimilarityIndex(SimilarityIndex built, String fingerprint, Exception failure) {
+        similarityBuilding = false;
+        if (failure != null) {
+            similarityWaiters.clear();
+            warn("Failed to build the duplicate index: " + failure.getMessage());
+            return;
+        }
+        // 建好到现在之间提交的写，它们的 FX 回调可能已经跑过了（那时索引还是 null）：再比一次指纹
+        try (Connection c = db()) {
+            if (!fingerprint.equals(BankIndex.fingerprint(c))) {
+                withSimilarityIndex(null);
+                return;
+            }
+        } catch (SQLException ex) {
+            similarityWaiters.clear();
+            warn("Failed to build the duplicate index: " + ex.getMessage());
+            return;
+        }
+        similarity = built;
+        List<Consumer<SimilarityIndex>> waiting = List.copyOf(similarityWaiters);
+        similarityWaiters.clear();
+        waiting.forEach(w -> w.accept(built));
+    }
+
+    private String duplicateWarning(String text, int selfId) {
+        if (similarity == null || opt(text).isEmpty()) return "";
+        List<SimilarityIndex.Match> matches = similarity.similarTo(text, selfId);
+        if (matches.isEmpty()) return "";
+        Map<Integer, String> texts = new HashMap<>();
+        for (QuestionRow r : data) texts.put(r.getId(), r.getText());
+        StringBuilder sb = new StringBuilder("Possible duplicate of:");
+        for (var m : matches.subList(0, Math.min(3, matches.size()))) {
+            String t = texts.getOrDefault(m.id(), "");
+            if (t.length() > 80) t = t.substring(0, 80) + "…";
+            sb.append(String.format("%n#%d (%.0f%%) %s", m.id(), m.similarity() * 100, t.replace('\n', ' ')));
+        }
+        if (matches.size() > 3) sb.append("\n… and ").append(matches.size() - 3).append(" more");
+        return sb.toString();
+    }
+
+    // 全库近似重复报告：一组一段，组长在前
+    private void showDuplicateReport(Stage owner) {
+        withSimilarityIndex(index -> showDuplicateReport(owner, index));
+    }
+
+    private void showDuplicateReport(Stage owner, SimilarityIndex index) {
+        long t0 = System.currentTimeMillis();
+        List<SimilarityIndex.Group> groups = index.duplicateReport();
+        long ms = System.currentTimeMillis() - t0;
+
+        Map<Integer, QuestionRow> rows = new HashMap<>();
+        for (QuestionRow r : data) rows.put(r.getId(), r);
+        TreeItem<String> root = new TreeItem<>();
+        int members = 0;
+        for (int i = 0; i < groups.size(); i++) {
+            var g = groups.get(i);
+            members += g.ids().size();
+            TreeItem<String> item = new TreeItem<>(String.format("Group %d: %d questions, up to %.0f%% similar",
+                    i + 1, g.ids().size(), g.similarity() * 100));
+            for (int id : g.ids()) {
+                QuestionRow r = rows.get(id);
+                item.getChildren().add(new TreeItem<>("#" + id + "  " + (r == null ? "" : r.getText().replace('\n', ' '))));
+            }
+            root.getChildren().add(item);
+        }
+        TreeView<String> tree = new TreeView<>(root);
+        tree.setShowRoot(false);
+        tree.setPrefSize(820, 480);
+
+        Dialog<Void> dlg = new Dialog<>();
+        dlg.initOwner(owner);
+        dlg.setTitle("Near-duplicate Questions");
+        dlg.setHeaderText(String.format("%d groups, %d questions (threshold %.0f%%, %d ms)",
+                groups.size(), members, index.threshold() * 100, ms));
+        dlg.getDialogPane().setContent(tree);
+        dlg.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+        dlg.show();
+    }
+
+    // 合并另一位老师的题库文件（BankSync）；再次合并同一个来源只传上次之后改过的题
+    private void mergeBank(Stage owner) {
+        FileChooser fc = new FileChooser();
+        fc.setTitle("Merge question bank");
+        fc.getExtensionFilters().add(new FileChooser.ExtensionFilter("Question bank", "*.db", "*.sqlite"));
+        File f = fc.showOpenDialog(owner);
+        if (f == null) return;
+        try (var c = db()) {
+            BankSync.Report r = BankSync.merge(c, f.toPath());
+            similarity = null;
+            loadCategoriesFromDb();
+            info(r + (r.conflicts > 0 ? "\n\nConflicting questions were kept as they are here and listed in SyncConflicts." : "")
+                    + "\n\nClick Load to see the merged questions.");
+        } catch (Exception ex) {
+            warn("Merge failed: " + ex.getMessage());
+        }
+    }
+
+    // 过滤栏：分类 / 难度下拉 + 文字（边打边过滤）
+    private HBox filterBar() {
+        String anyCategory = "Any category", anyDifficulty = "Any difficulty";
+        ComboBox<String> cbCat = new ComboBox<>(FXCollections.observableArrayList(anyCategory));
+        cbCat.getSelectionModel().selectFirst();
+        // 分类会增删，打开下拉时再取
+        cbCat.setOnShowing(e -> {
+            String sel = cbCat.getValue();
+            List<String> items = new ArrayList<>();
+            items.add(anyCategory);
+            Categories.values().stream().map(cat -> cat.name).sorted(String.CASE_INSENSITIVE_ORDER).forEach(items::add);
+            cbCat.getItems().setAll(items);
+            cbCat.setValue(items.contains(sel) ? sel : anyCategory);
+        });
+        ComboBox<String> cbDiff = new ComboBox<>(FXCollections.observableArrayList(anyDifficulty));
+        cbDiff.getItems().addAll(ExamGenerator.DIFFICULTIES);
+        cbDiff.getSelectionModel().selectFirst();
+        TextField tfText = new TextField();
+        tfText.setPromptText("Filter text");
+        tfText.setPrefColumnCount(30);
+        Button btnClear = new Button("Clear");
+        lblFilterCount.setStyle("-fx-text-fill: #666666;");
+
+        Runnable apply = () -> {
+            String cat = cbCat.getValue();
+            int catId = 0;
+            if (cat != null && !cat.equals(anyCategory)) {
+                catId = -1;   // 分类已经不在了：什么也不匹配
+                for (Category c : Categories.values()) if (c.name.equals(cat)) catId = c.id;
             }
+            String diff = cbDiff.getValue();
+            byte d = diff == null || diff.equals(anyDifficulty) ? -1 : TableIndex.difficultyCode(diff);
+            applyFilter(new TableIndex.Filter(catId, d, tfText.getText()));
+        };
+        cbCat.valueProperty().addListener((obs, o, n) -> { if (n != null) apply.run(); });
+        cbDiff.valueProperty().addListener((obs, o, n) -> apply.run());
+        tfText.textProperty().addListener((obs, o, n) -> apply.run());
+        btnClear.setOnAction(e -> {
+            tfText.clear();
+            cbCat.setValue(anyCategory);
+            cbDiff.setValue(anyDifficulty);
         });
+
+        HBox bar = new HBox(10, new Label("Filter:"), cbCat, cbDiff, tfText, btnClear, lblFilterCount);
+        bar.setPadding(new Insets(0, 10, 0, 10));
+        bar.setAlignment(Pos.CENTER_LEFT);
+        return bar;
     }
 
+    private void applyFilter(TableIndex.Filter f) {
+        filter = f;
+        if (f.isEmpty()) {
+            filtered.setPredicate(null);
+            lblFilterCount.setText("");
+            return;
+        }
+        BitSet hits = tableIndex.match(f);
+        filtered.setPredicate(r -> hits.get(r.getId()));
+        lblFilterCount.setText(filtered.size() + " of " + data.size());
+    }
 
+    private void scheduleRefilter() {
+        if (filter.isEmpty() || refilterPending) return;
+        refilterPending = true;
+        Platform.runLater(() -> {
+            refilterPending = false;
+            applyFilter(filter);
+        });
+    }
+
+    // 按 question_id 排好序的 (question_id, category_id) -> 每道题的分类组合（驻留）
+    private static Map<Integer, TableIndex.CategorySet> readCategorySets(PreparedStatement ps, TableIndex.CategorySets sets) throws SQLException {
+        Map<Integer, TableIndex.CategorySet> out = new HashMap<>();
+        int[] buf = new int[16];
+        int n = 0, current = Integer.MIN_VALUE;
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                int q = rs.getInt(1);
+                if (q != current) {
+                    if (n > 0) out.put(current, sets.of(buf, n));
+                    current = q;
+                    n = 0;
+                }
+                if (n == buf.length) buf = Arrays.copyOf(buf, n * 2);
+                buf[n++] = rs.getInt(2);
+            }
+            if (n > 0) out.put(current, sets.of(buf, n));
+        }
+        return out;
+    }
+
+    private String categoryName(int id) {
+        Category c = Categories.get(id);
+        return c == null ? null : c.name;
+    }
 
     //Category helpers
     private void loadCategoriesFromDb() {
         Categories.clear();
-        try (var c = Database.get()) {
-            PreparedStatement ps = c.prepareStatement("SELECT id, name FROM Categories ORDER BY name");
-            ResultSet rs = ps.executeQuery();
+        try (var c = db()) {
+            for (Category cat : readCategories(c)) Categories.put(cat.id, cat);
+        } catch (Exception ex) { warn("Failed to load categories: " + ex.getMessage()); }
+    }
+
+    // 不碰界面状态，预热线程也能用
+    private static List<Category> readCategories(Connection c) throws SQLException {
+        List<Category> out = new ArrayList<>();
+        PreparedStatement ps = StatementCache.of(c).prepare("SELECT id, name FROM Categories ORDER BY name");
+        try (ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
                 Category cat = new Category();
                 cat.id = rs.getInt("id");
                 cat.name = rs.getString("name");
-                Categories.put(cat.id, cat);
+                out.add(cat);
             }
-        } catch (Exception ex) { warn("Failed to load categories: " + ex.getMessage()); }
+        }
+        return out;
     }
 
-    private int ensureCategory(String name) { return insertCategoryIntoDb(name); }
+    // 在写线程的事务里按名字找分类，没有就插入：查找和插入在同一个事务里，不会并发插出两个同名分类
+    // 返回 {id, 1 = 新建的}
+    private static int[] findOrInsertCategory(Connection c, String name) throws SQLException {
+        StatementCache cache = StatementCache.of(c);
+        PreparedStatement find = cache.prepare("SELECT id FROM Categories WHERE LOWER(name)=LOWER(?)");
+        find.setString(1, name);
+        try (ResultSet fr = find.executeQuery()) {
+            if (fr.next()) return new int[]{fr.getInt("id"), 0};
+        }
 
-    private int insertCategoryIntoDb(String name) {
-        try (var c = Database.get()) {
-            PreparedStatement find = c.prepareStatement("SELECT id FROM Categories WHERE LOWER(name)=LOWER(?)");
-            find.setString(1, name);
-            ResultSet fr = find.executeQuery();
-            if (fr.next()) return fr.getInt("id");
+        PreparedStatement ps = cache.prepareWithKeys("INSERT INTO Categories(name) VALUES(?)");
+        ps.setString(1, name);
+        ps.executeUpdate();
+        try (ResultSet rs = ps.getGeneratedKeys()) {
+            if (rs.next()) return new int[]{rs.getInt(1), 1};
+        }
+        throw new SQLException("No id returned for category " + name);
+    }
 
-            PreparedStatement ps = c.prepareStatement("INSERT INTO Categories(name) VALUES(?)", Statement.RETURN_GENERATED_KEYS);
-            ps.setString(1, name);
-            ps.executeUpdate();
-            ResultSet rs = ps.getGeneratedKeys();
-            if (rs.next()) {
-                int newId = rs.getInt(1);
-                Category cat = new Category(); cat.id = newId; cat.name = name;
-                Categories.put(newId, cat);
-                return newId;
-            }
-        } catch (Exception ex) { warn("Failed to insert category: " + ex.getMessage()); }
-        return 0;
+    // findOrInsertCategory 新建了分类时记进界面的分类表（FX 线程）
+    private void rememberCategory(int[] result, String name) {
+        if (result[1] != 1) return;
+        Category cat = new Category(); cat.id = result[0]; cat.name = name;
+        Categories.put(result[0], cat);
     }
 
-    private boolean deleteCategoryFromDb(String name) {
-        try (var c = Database.get()) {
-            PreparedStatement check = c.prepareStatement("""
+    // 删掉了才回调 onDeleted（FX 线程）
+    private void deleteCategoryFromDb(String name, Runnable onDeleted) {
+        // -1 = 还有题目在用
+        submitWrite(c -> {
+            StatementCache cache = StatementCache.of(c);
+            PreparedStatement check = cache.prepare("""
                 SELECT COUNT(*) AS cnt FROM Question_Categories qc
                 JOIN Categories c2 ON qc.category_id = c2.id
                 WHERE LOWER(c2.name) = LOWER(?)
             """);
             check.setString(1, name);
-            ResultSet crs = check.executeQuery();
-            if (crs.next() && crs.getInt("cnt") > 0) {
-                warn("Category '" + name + "' is used by some questions and cannot be deleted.");
-                return false;
+            try (ResultSet crs = check.executeQuery()) {
+                if (crs.next() && crs.getInt("cnt") > 0) return -1;
             }
 
-            PreparedStatement del = c.prepareStatement("DELETE FROM Categories WHERE LOWER(name)=LOWER(?)");
+            PreparedStatement del = cache.prepare("DELETE FROM Categories WHERE LOWER(name)=LOWER(?)");
             del.setString(1, name);
-            int rows = del.executeUpdate();
-            if (rows > 0) {
+            return del.executeUpdate();
+        }, rows -> {
+            if (rows < 0) {
+                warn("Category '" + name + "' is used by some questions and cannot be deleted.");
+            } else if (rows > 0) {
                 Categories.values().removeIf(cat -> cat.name.equalsIgnoreCase(name));
-                return true;
+                onDeleted.run();
             }
-        } catch (Exception ex) {
-            warn("Failed to delete category: " + ex.getMessage());
-        }
-        return false;
+        }, "Failed to delete category");
+    }
+
+    // 写操作交给写线程排队，FX 线程不等提交（多进程争用时 busy_timeout 加退避重试要好几秒，界面会卡住）；
+    // 提交后在 FX 线程处理结果，失败时提示 failure + 原因
+    private <T> void submitWrite(WriteQueue.Op<T> op, Consumer<T> onDone, String failure) {
+        writes().submit(op).whenComplete((result, err) -> Platform.runLater(() -> {
+            if (err == null) {
+                onDone.accept(result);
+                return;
+            }
+            Throwable cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+            warn(failure + ": " + cause.getMessage());
+        }));
     }
 
     //Utils
@@ -411,45 +895,148 @@ public class UiApp extends Application {
         Map<String, Spinner<Integer>> easySpinners = new HashMap<>();
         Map<String, Spinner<Integer>> medSpinners = new HashMap<>();
         Map<String, Spinner<Integer>> hardSpinners = new HashMap<>();
+        Map<String, Spinner<Integer>> anySpinners = new HashMap<>();
+
+        // 每个 分类 × 难度 还有多少题（计数表，一次读完）：标签上显示，数量框最多只能选这么多
+        Map<String, Integer> catIds = new HashMap<>();
+        for (Category c : Categories.values()) catIds.putIfAbsent(c.name, c.id);
+        Availability avail;
+        try (Connection conn = db()) {
+            avail = Availability.read(conn);
+        } catch (SQLException ex) {
+            warn("Error reading question counts: " + ex.getMessage());
+            return;
+        }
 
         int row = 0;
         for (String cat : selectedCategories) {
             grid.add(new Label(cat + ":"), 0, row);
+            int catId = catIds.getOrDefault(cat, -1);
 
-            Spinner<Integer> spEasy = new Spinner<>(0, 50, 0);
-            Spinner<Integer> spMed = new Spinner<>(0, 50, 0);
-            Spinner<Integer> spHard = new Spinner<>(0, 50, 0);
-            spEasy.setEditable(true); spMed.setEditable(true); spHard.setEditable(true);
+            Spinner<Integer> spEasy = new Spinner<>(0, avail.of(catId, "Easy"), 0);
+            Spinner<Integer> spMed = new Spinner<>(0, avail.of(catId, "Medium"), 0);
+            Spinner<Integer> spHard = new Spinner<>(0, avail.of(catId, "Hard"), 0);
+            Spinner<Integer> spAny = new Spinner<>(0, avail.total(catId), 0);
+            spEasy.setEditable(true); spMed.setEditable(true); spHard.setEditable(true); spAny.setEditable(true);
 
             easySpinners.put(cat, spEasy);
             medSpinners.put(cat, spMed);
             hardSpinners.put(cat, spHard);
+            anySpinners.put(cat, spAny);
+
+            // Any 只能用指定难度剩下的题：另外三个一变，Any 的上限和剩余数跟着变
+            Label lblLeft = new Label();
+            lblLeft.setStyle("-fx-text-fill: #666666;");
+            Runnable updateLeft = () -> {
+                int left = Math.max(0, avail.total(catId) - spEasy.getValue() - spMed.getValue() - spHard.getValue());
+                ((SpinnerValueFactory.IntegerSpinnerValueFactory) spAny.getValueFactory()).setMax(left);
+                lblLeft.setText((left - spAny.getValue()) + " left");
+            };
+            for (Spinner<Integer> sp : List.of(spEasy, spMed, spHard, spAny)) {
+                sp.valueProperty().addListener((obs, o, n) -> updateLeft.run());
+            }
+            updateLeft.run();
 
-            grid.add(new Label("Easy:"), 1, row);
+            grid.add(new Label("Easy (" + avail.of(catId, "Easy") + "):"), 1, row);
             grid.add(spEasy, 2, row);
-            grid.add(new Label("Medium:"), 3, row);
+            grid.add(new Label("Medium (" + avail.of(catId, "Medium") + "):"), 3, row);
             grid.add(spMed, 4, row);
-            grid.add(new Label("Hard:"), 5, row);
+            grid.add(new Label("Hard (" + avail.of(catId, "Hard") + "):"), 5, row);
             grid.add(spHard, 6, row);
+            grid.add(new Label("Any:"), 7, row);
+            grid.add(spAny, 8, row);
+            grid.add(lblLeft, 9, row);
             row++;
         }
 
+        CheckBox cbNoDups = new CheckBox("Never pick two near-duplicate questions");
+        cbNoDups.setSelected(true);
+        grid.add(cbNoDups, 0, row++, 10, 1);
+        CheckBox cbBalance = new CheckBox("Prefer rarely used questions");
+        cbBalance.setSelected(true);
+        grid.add(cbBalance, 0, row++, 10, 1);
+
+        // 约束（都可以留空）；填了任何一项或用了 Any，就交给 BlueprintSolver 组卷
+        TextField tfMinPoints = new TextField();
+        TextField tfMaxPoints = new TextField();
+        TextField tfMaxMinutes = new TextField();
+        TextField tfMaxPerTopic = new TextField();
+        TextField tfMandatory = new TextField();
+        tfMandatory.setPromptText("question ids, e.g. 12, 40");
+        Spinner<Integer> spAvoid = new Spinner<>(0, 100, 0);
+        spAvoid.setEditable(true);
+        GridPane cons = new GridPane();
+        cons.setHgap(10);
+        cons.setVgap(6);
+        cons.addRow(0, new Label("Points from:"), tfMinPoints, new Label("to:"), tfMaxPoints);
+        cons.addRow(1, new Label("Max minutes:"), tfMaxMinutes, new Label("Max per topic:"), tfMaxPerTopic);
+        cons.addRow(2, new Label("No overlap with last exams:"), spAvoid);
+        cons.add(new Label("Mandatory:"), 0, 3);
+        cons.add(tfMandatory, 1, 3, 3, 1);
+        cons.add(new Label("Constraints use the blueprint solver; the two options above do not apply to it."), 0, 4, 4, 1);
+        TitledPane consPane = new TitledPane("Constraints (optional)", cons);
+        consPane.setExpanded(false);
+        grid.add(consPane, 0, row, 10, 1);
+
         dialog.getDialogPane().setContent(grid);
         dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
         ButtonType backButtonType = new ButtonType("Back", ButtonBar.ButtonData.BACK_PREVIOUS);
         dialog.getDialogPane().getButtonTypes().add(backButtonType);
 
+        Supplier<Map<String, Map<String, Integer>>> readSelections = () -> {
+            Map<String, Map<String, Integer>> selections = new LinkedHashMap<>();
+            for (String cat : selectedCategories) {
+                Map<String, Integer> diffs = new LinkedHashMap<>();
+                diffs.put("Easy", easySpinners.get(cat).getValue());
+                diffs.put("Medium", medSpinners.get(cat).getValue());
+                diffs.put("Hard", hardSpinners.get(cat).getValue());
+                diffs.put(BlueprintSolver.ANY, anySpinners.get(cat).getValue());
+                selections.put(cat, diffs);
+            }
+            return selections;
+        };
+
+        // 点 OK 前用最新的计数校验整个蓝图（期间可能有人删了题）；不够就提示，对话框不关
+        Button okBtn = (Button) dialog.getDialogPane().lookupButton(ButtonType.OK);
+        okBtn.addEventFilter(ActionEvent.ACTION, ev -> {
+            List<String> problems;
+            try (Connection conn = db()) {
+                problems = Availability.read(conn).shortfalls(catIds, readSelections.get());
+            } catch (SQLException ex) {
+                warn("Error reading question counts: " + ex.getMessage());
+                ev.consume();
+                return;
+            }
+            if (!problems.isEmpty()) {
+                warn("Not enough questions for this blueprint:\n- " + String.join("\n- ", problems));
+                ev.consume();
+            }
+        });
+
         dialog.setResultConverter(bt -> {
             if (bt == ButtonType.OK) {
-                Map<String, Map<String, Integer>> selections = new LinkedHashMap<>();
-                for (String cat : selectedCategories) {
-                    Map<String, Integer> diffs = new LinkedHashMap<>();
-                    diffs.put("Easy", easySpinners.get(cat).getValue());
-                    diffs.put("Medium", medSpinners.get(cat).getValue());
-                    diffs.put("Hard", hardSpinners.get(cat).getValue());
-                    selections.put(cat, diffs);
+                Map<String, Map<String, Integer>> selections = readSelections.get();
+                BlueprintSolver.Blueprint bp = new BlueprintSolver.Blueprint();
+                bp.cells.putAll(selections);
+                try {
+                    bp.minPoints = intOr(tfMinPoints.getText(), bp.minPoints);
+                    bp.maxPoints = intOr(tfMaxPoints.getText(), bp.maxPoints);
+                    bp.maxMinutes = intOr(tfMaxMinutes.getText(), bp.maxMinutes);
+                    bp.maxPerTopic = intOr(tfMaxPerTopic.getText(), bp.maxPerTopic);
+                    for (String id : tfMandatory.getText().split("[,;\\s]+")) {
+                        if (!id.isBlank()) bp.mandatory.add(Integer.parseInt(id.trim().replace("#", "")));
+                    }
+                } catch (NumberFormatException bad) {
+                    warn("Constraints must be whole numbers: " + bad.getMessage());
+                    return false;
                 }
-                generateAndExportExam(examName, selections);
+                bp.avoidLastExams = spAvoid.getValue();
+                boolean useSolver = bp.minPoints > 0 || bp.maxPoints != Integer.MAX_VALUE
+                        || bp.maxMinutes != Integer.MAX_VALUE || bp.maxPerTopic != Integer.MAX_VALUE
+                        || !bp.mandatory.isEmpty() || bp.avoidLastExams > 0
+                        || anySpinners.values().stream().anyMatch(sp -> sp.getValue() > 0);
+                if (useSolver) assembleWithSolver(examName, bp);
+                else generateAndExportExam(examName, selections, cbNoDups.isSelected(), cbBalance.isSelected());
                 return true;
             } else if (bt.getButtonData() == ButtonBar.ButtonData.BACK_PREVIOUS) {
                 List<String> newSelection = showCategorySelectionDialog(owner);
@@ -464,81 +1051,90 @@ public class UiApp extends Application {
     }
 
     // Exam Preview + Replace + Export
-    private static class ExamQuestionItem {
-        int id;
-        String text;
-        String difficulty;
-        String category;
-
-        ExamQuestionItem(int id, String text, String diff, String cat) {
-            this.id = id;
-            this.text = text;
-            this.difficulty = diff;
-            this.category = cat;
-        }
-
-        @Override
-        public String toString() {
-            return "[" + difficulty + "] " + text;
-        }
+    private void generateAndExportExam(String examName, Map<String, Map<String, Integer>> selections,
+                                       boolean avoidDuplicates, boolean balanceExposure) {
+        if (avoidDuplicates) withSimilarityIndex(index -> generateAndExportExam(examName, selections, index, balanceExposure));
+        else generateAndExportExam(examName, selections, null, balanceExposure);
     }
 
-    private void generateAndExportExam(String examName, Map<String, Map<String, Integer>> selections) {
-        List<ExamQuestionItem> previewList = new ArrayList<>();
-
-        try (Connection conn = Database.get()) {
-            for (var entry : selections.entrySet()) {
-                String catName = entry.getKey();
-                int catId = Categories.values().stream().filter(c -> c.name.equals(catName)).map(c -> c.id).findFirst().orElse(-1);
-                if (catId == -1) continue;
-
-                for (var diff : List.of("Easy", "Medium", "Hard")) {
-                    int count = entry.getValue().getOrDefault(diff, 0);
-                    if (count <= 0) continue;
-
-                    PreparedStatement ps = conn.prepareStatement("""
-                        SELECT
-                        ql.question_id AS id,
-                        ql.text,
-                        ql.difficulty
-                        FROM QuestionLatest ql
-                        JOIN Question_Categories qc ON ql.question_id = qc.question_id
-                        WHERE qc.category_id = ? AND ql.difficulty = ?
-                        ORDER BY RANDOM() LIMIT ?
-                    """);
-                    ps.setInt(1, catId);
-                    ps.setString(2, diff);
-                    ps.setInt(3, count);
-                    ResultSet rs = ps.executeQuery();
-                    while (rs.next()) {
-                        previewList.add(new ExamQuestionItem(
-                                rs.getInt("id"),
-                                rs.getString("text"),
-                                rs.getString("difficulty"),
-                                catName
-                        ));
-                    }
-                }
-            }
+    private void generateAndExportExam(String examName, Map<String, Map<String, Integer>> selections,
+                                       SimilarityIndex dedupe, boolean balanceExposure) {
+        ExamGenerator.Exam exam;
+
+        Map<String, Integer> catIds = new HashMap<>();
+        for (Category c : Categories.values()) catIds.putIfAbsent(c.name, c.id);
+
+        try (Connection conn = db()) {
+            ExamGenerator generator = new ExamGenerator(dedupe, balanceExposure ? exposure : null);
+            exam = generator.generate(conn, catIds, selections);
         } catch (Exception ex) {
             warn("Error generating preview: " + ex.getMessage());
             ex.printStackTrace();
             return;
         }
 
-        if (previewList.isEmpty()) {
+        if (exam.questions.isEmpty()) {
             warn("No questions found for selected parameters.");
             return;
         }
 
-        showExamPreview(new Stage(), examName, previewList);
+        showExamPreview(new Stage(), examName, exam);
+    }
+
+    // 带约束组卷：不可行时把求解器给的原因列出来
+    // 求解在后台线程跑（第一次要建 BankIndex，大库上要一两秒），结果回到 FX 线程再提示 / 预览
+    private void assembleWithSolver(String examName, BlueprintSolver.Blueprint bp) {
+        Map<String, Integer> catIds = new HashMap<>();
+        for (Category c : Categories.values()) catIds.putIfAbsent(c.name, c.id);
+
+        Thread.ofPlatform().daemon().name("blueprint-solver").start(() -> {
+            BlueprintSolver.Result result;
+            try (Connection conn = db()) {
+                result = new BlueprintSolver().solve(conn, catIds, bp);
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                Platform.runLater(() -> warn("Error assembling exam: " + ex.getMessage()));
+                return;
+            }
+            Platform.runLater(() -> {
+                if (!result.feasible()) {
+                    warn("The blueprint cannot be satisfied:\n- " + String.join("\n- ", result.problems));
+                    return;
+                }
+                showExamPreview(new Stage(), examName, result.exam());
+            });
+        });
+    }
+
+    // 导出的试卷存档，QuestionUsage 由触发器更新；缓存的抽样权重同步调整
+    // 存档提交后才回调 onSaved（FX 线程）
+    private void archiveExam(String examName, List<ExamQuestionItem> shown, Runnable onSaved) {
+        List<ExamQuestionItem> items = List.copyOf(shown);
+        submitWrite(c -> examStore.saveExam(c, examName, items), examId -> {
+            exposure.recordUse(items.stream().map(q -> q.id).toList());
+            onSaved.run();
+        }, "Exam exported, but saving it failed");
+    }
+
+    // 导出时按 hash 取附件图片
+    private byte[] loadAttachment(String hash) throws IOException {
+        try (Connection c = db()) {
+            return attachments.get(c, hash);
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private static int intOr(String s, int fallback) {
+        return s == null || s.isBlank() ? fallback : Integer.parseInt(s.trim());
     }
 
-    private void showExamPreview(Stage owner, String examName, List<ExamQuestionItem> examQuestions) {
+    private void showExamPreview(Stage owner, String examName, ExamGenerator.Exam exam) {
+        List<ExamQuestionItem> examQuestions = exam.questions;
         Stage stage = new Stage();
         stage.initOwner(owner);
         stage.initModality(Modality.WINDOW_MODAL);
-        stage.setTitle("Preview Exam: " + examName);
+        stage.setTitle("Preview Exam: " + examName + " (data version " + exam.dataVersion + ")");
 
         ListView<ExamQuestionItem> listView = new ListView<>();
         listView.setCellFactory(param -> new ListCell<>() {
@@ -572,26 +1168,72 @@ public class UiApp extends Application {
         listView.getItems().addAll(examQuestions);
 
         Button btnExport = new Button("Export to PDF");
+        Button btnExportKey = new Button("Export PDF + Answer Key");
+        Button btnExportWeb = new Button("Export HTML / Markdown");
         Button btnCancel = new Button("Cancel");
 
         btnExport.setOnAction(e -> {
             try {
-                List<String> lines = new ArrayList<>();
-                int pos = 1;
-                for (ExamQuestionItem item : listView.getItems()) {
-                    lines.add(pos++ + ". " + item.text);
+                List<String> lines = ExamGenerator.toLines(listView.getItems());
+                if (!PDFGenerator.generate(stage, examName, lines, this::loadAttachment)) return;
+                archiveExam(examName, listView.getItems(), () -> {
+                    info("Exam exported successfully.");
+                    stage.close();
+                });
+            } catch (Exception ex) {
+                warn("Failed to export PDF: " + ex.getMessage());
+            }
+        });
+
+        // 学生版和教师版一次排版、一起导出；教师版每题后面是题目 metadata 里的答案 / 评分说明
+        btnExportKey.setOnAction(e -> {
+            try {
+                List<ExamQuestionItem> items = listView.getItems();
+                Map<Integer, String> metadata;
+                try (Connection conn = db()) {
+                    metadata = store.findMetadata(conn, items.stream().map(q -> q.id).toList());
                 }
-                PDFGenerator.generate(stage, examName, lines);
-                info("Exam exported successfully.");
-                stage.close();
+                if (!PDFGenerator.generateEditions(stage, examName, ExamGenerator.toLines(items),
+                        ExamGenerator.toAnswers(items, metadata), this::loadAttachment)) return;
+                archiveExam(examName, items, () -> {
+                    info("Exam and answer key exported successfully.");
+                    stage.close();
+                });
             } catch (Exception ex) {
                 warn("Failed to export PDF: " + ex.getMessage());
             }
         });
 
+        // 格式按文件扩展名选；图片内嵌成 data: URI，导出的是单个文件
+        btnExportWeb.setOnAction(e -> {
+            FileChooser fc = new FileChooser();
+            fc.setTitle("Save Exam as HTML or Markdown");
+            fc.getExtensionFilters().addAll(
+                    new FileChooser.ExtensionFilter("HTML", "*.html"),
+                    new FileChooser.ExtensionFilter("Markdown", "*.md"));
+            fc.setInitialFileName("Exam_" + examName.replaceAll("\\s+", "_") + ".html");
+            File file = fc.showSaveDialog(stage);
+            if (file == null) return;
+            String name = file.getName();
+            ExamExporter.Format format = ExamExporter.Format.of(name.substring(name.lastIndexOf('.') + 1));
+            if (format == null) format = fc.getSelectedExtensionFilter() != null
+                    && fc.getSelectedExtensionFilter().getDescription().equals("Markdown")
+                    ? ExamExporter.Format.MARKDOWN : ExamExporter.Format.HTML;
+            try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                new ExamExporter(this::loadAttachment, null).write(out, format, examName, listView.getItems().iterator());
+            } catch (Exception ex) {
+                warn("Failed to export: " + ex.getMessage());
+                return;
+            }
+            archiveExam(examName, listView.getItems(), () -> {
+                info("Exam exported successfully.");
+                stage.close();
+            });
+        });
+
         btnCancel.setOnAction(e -> stage.close());
 
-        HBox bottom = new HBox(10, btnExport, btnCancel);
+        HBox bottom = new HBox(10, btnExport, btnExportKey, btnExportWeb, btnCancel);
         bottom.setAlignment(Pos.CENTER_RIGHT);
         bottom.setPadding(new Insets(10));
 
@@ -626,10 +1268,40 @@ public class UiApp extends Application {
 
         TextField tfKeyword = new TextField();
         tfKeyword.setPromptText("keyword in question text...");
-        Button btnSearch = new Button("Search");
+        Label lblCount = new Label();
+        lblCount.setStyle("-fx-text-fill: #666666;");
+
+        // 边打字边搜：停顿 250 ms 才查，查询在后台跑，新查询会取消旧的；滚到底部再取下一页
+        CandidateSearch search = new CandidateSearch(catId, item.difficulty, item.id, item.category);
+        long[] shown = {0};                     // 当前列表对应的查询序号，过时的结果丢掉
+        boolean[] more = {false}, loading = {false};
+        int[] lastId = {Integer.MAX_VALUE};
+        String[] keyword = {""};                // 第一页用的关键词，翻页沿用它（输入框可能已经又改了）
 
         ListView<ExamQuestionItem> lv = new ListView<>();
         lv.setPrefHeight(320);
+
+        Consumer<Boolean> load = nextPage -> {
+            long seq = ++shown[0];
+            loading[0] = true;
+            lblCount.setText("Searching...");
+            if (!nextPage) keyword[0] = tfKeyword.getText();
+            search.fetch(keyword[0], nextPage ? lastId[0] : Integer.MAX_VALUE).whenComplete((page, err) ->
+                    Platform.runLater(() -> {
+                        if (seq != shown[0]) return;
+                        loading[0] = false;
+                        if (err != null) {
+                            if (!(err instanceof CancellationException)) lblCount.setText("Search failed: " + err.getMessage());
+                            return;
+                        }
+                        if (nextPage) lv.getItems().addAll(page.items());
+                        else lv.getItems().setAll(page.items());
+                        more[0] = page.more();
+                        lastId[0] = page.lastId();
+                        lblCount.setText(lv.getItems().size() + (more[0] ? "+" : "") + " candidates");
+                    }));
+        };
+
         lv.setCellFactory(v -> new ListCell<>() {
             @Override protected void updateItem(ExamQuestionItem q, boolean empty) {
                 super.updateItem(q, empty);
@@ -637,37 +1309,33 @@ public class UiApp extends Application {
                 String s = q.text == null ? "" : q.text;
                 if (s.length() > 100) s = s.substring(0, 100) + "…";
                 setText("#" + q.id + " [" + q.difficulty + "] " + s);
+                // 显示到最后几行时取下一页
+                if (more[0] && !loading[0] && getIndex() >= lv.getItems().size() - 10) load.accept(true);
             }
         });
 
-        VBox box = new VBox(8, new Label("Keyword"), tfKeyword, btnSearch,
-                new Label("Candidates"), lv);
+        PauseTransition debounce = new PauseTransition(Duration.millis(250));
+        debounce.setOnFinished(e -> load.accept(false));
+        tfKeyword.textProperty().addListener((obs, o, n) -> debounce.playFromStart());
+        tfKeyword.setOnAction(e -> {
+            debounce.stop();
+            load.accept(false);
+        });
+
+        VBox box = new VBox(8, new Label("Keyword"), tfKeyword, new Label("Candidates"), lv, lblCount);
         box.setPadding(new Insets(10));
         dlg.getDialogPane().setContent(box);
 
-        //行为：搜索 & 选择
-        Runnable doSearch = () -> {
-            try {
-                String kw = tfKeyword.getText();
-                if (kw != null && kw.isBlank()) kw = null;
-                List<ExamQuestionItem> candidates =
-                        queryCandidates(catId, item.difficulty, kw, item.id, item.category);
-                lv.getItems().setAll(candidates);
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                warn("Search failed: " + ex.getMessage());
-            }
-        };
-        btnSearch.setOnAction(e -> doSearch.run());
-        tfKeyword.setOnAction(e -> doSearch.run());
         lv.getSelectionModel().selectedItemProperty()
                 .addListener((obs, a, b) -> okBtn.setDisable(b == null));
 
         // 先加载一次默认候选
-        doSearch.run();
+        load.accept(false);
 
         dlg.setResultConverter(bt -> (bt == ButtonType.OK) ? lv.getSelectionModel().getSelectedItem() : null);
         ExamQuestionItem picked = dlg.showAndWait().orElse(null);
+        debounce.stop();
+        search.close();
         if (picked == null) return;
 
         //应用替换（更新 UI）
@@ -682,8 +1350,8 @@ public class UiApp extends Application {
     // 通过分类名拿到 category_id；找不到返回 -1
     private int findCategoryIdByName(String categoryName) {
         if (categoryName == null || categoryName.isBlank()) return -1;
-        try (var c = Database.get();
-             var ps = c.prepareStatement("SELECT id FROM Categories WHERE name = ? LIMIT 1")) {
+        try (var c = db()) {
+            var ps = StatementCache.of(c).prepare("SELECT id FROM Categories WHERE name = ? LIMIT 1");
             ps.setString(1, categoryName.trim());
             try (var rs = ps.executeQuery()) {
                 if (rs.next()) return rs.getInt("id");
@@ -694,57 +1362,124 @@ public class UiApp extends Application {
         return -1;
     }
 
-    // 查询候选题：同分类 + 同难度，可选关键词，排除当前题
-    private List<ExamQuestionItem> queryCandidates(int categoryId,
-                                                   String difficulty,
-                                                   String keyword,
-                                                   int excludeQuestionId,
-                                                   String categoryNameForDisplay) throws java.sql.SQLException {
-        List<ExamQuestionItem> out = new ArrayList<>();
-        String base = """
-    SELECT
-      ql.question_id AS id,
-      ql.text,
-      ql.difficulty
-    FROM QuestionLatest ql
-    JOIN Question_Categories qc ON ql.question_id = qc.question_id
-    WHERE qc.category_id = ?
-      AND ql.difficulty = ?
-      AND ql.question_id <> ?
-""";
-
-        String tail = " ORDER BY ql.question_id DESC LIMIT 200";
-
-        String sql = (keyword == null || keyword.isBlank())
-                ? base + tail
-                : base + " AND LOWER(ql.text) LIKE ? " + tail;
-
-// 绑定参数顺序（保持和 WHERE 的顺序一致）
-        try (var conn = Database.get(); var ps = conn.prepareStatement(sql)) {
-            int i = 1;
-            ps.setInt(i++, categoryId);
-            ps.setString(i++, difficulty);
-            ps.setInt(i++, excludeQuestionId);
-            if (keyword != null && !keyword.isBlank()) {
-                ps.setString(i++, "%" + keyword.toLowerCase() + "%");
-            }
+    // 批量回滚：选中的题或整个分类，回到某个版本号或某个时刻（UTC）
+    // 先预览会改哪些题，确认后一个事务里一条 UPDATE 做完，报告用时和每秒行数
+    private void bulkRollback(Stage owner) {
+        List<Integer> selIds = table.getSelectionModel().getSelectedItems().stream().map(QuestionRow::getId).toList();
 
-            try (var rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    out.add(new ExamQuestionItem(
-                            rs.getInt("id"),
-                            rs.getString("text"),
-                            rs.getString("difficulty"),
-                            categoryNameForDisplay
-                    ));
+        Dialog<Boolean> dlg = new Dialog<>();
+        dlg.initOwner(owner);
+        dlg.initModality(Modality.WINDOW_MODAL);
+        dlg.setTitle("Bulk Rollback");
+        dlg.setHeaderText("Revert many questions at once (each one gets a new version in its history)");
+
+        ToggleGroup scope = new ToggleGroup();
+        RadioButton rbSelected = new RadioButton("Selected questions (" + selIds.size() + ")");
+        RadioButton rbCategory = new RadioButton("Category:");
+        rbSelected.setToggleGroup(scope);
+        rbCategory.setToggleGroup(scope);
+        rbSelected.setDisable(selIds.isEmpty());
+        (selIds.isEmpty() ? rbCategory : rbSelected).setSelected(true);
+        ComboBox<String> cbCat = new ComboBox<>(FXCollections.observableArrayList(Categories.values().stream()
+                .map(c -> c.name).sorted().toList()));
+        cbCat.setPromptText("Category");
+
+        ToggleGroup target = new ToggleGroup();
+        RadioButton rbVersion = new RadioButton("Version:");
+        RadioButton rbAsOf = new RadioButton("As of (UTC):");
+        rbVersion.setToggleGroup(target);
+        rbAsOf.setToggleGroup(target);
+        rbAsOf.setSelected(true);
+        Spinner<Integer> spVersion = new Spinner<>(1, 9999, 1);
+        spVersion.setEditable(true);
+        TextField tfAsOf = new TextField(QuestionStore.timestamp(Instant.now()));
+        tfAsOf.setPromptText("yyyy-MM-dd HH:mm:ss");
+
+        Button btnPreview = new Button("Preview");
+        Label lblPreview = new Label();
+        lblPreview.setStyle("-fx-text-fill: #666666;");
+        ListView<String> lv = new ListView<>();
+        lv.setPrefHeight(260);
+
+        GridPane gp = new GridPane(); gp.setHgap(10); gp.setVgap(10); gp.setPadding(new Insets(10));
+        gp.addRow(0, new Label("Questions:"), rbSelected);
+        gp.addRow(1, new Label(), new HBox(10, rbCategory, cbCat));
+        gp.addRow(2, new Label("Roll back to:"), new HBox(10, rbVersion, spVersion));
+        gp.addRow(3, new Label(), new HBox(10, rbAsOf, tfAsOf));
+        gp.addRow(4, btnPreview, lblPreview);
+        gp.add(lv, 0, 5, 2, 1);
+        dlg.getDialogPane().setContent(gp);
+        dlg.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+        Button okBtn = (Button) dlg.getDialogPane().lookupButton(ButtonType.OK);
+        okBtn.setText("Roll Back");
+        okBtn.setDisable(true);
+
+        // 预览过的条件；改了任何条件都要重新预览
+        record Plan(List<Integer> ids, Integer categoryId, QuestionStore.RollbackTarget target) {}
+        Plan[] planned = {null};
+        Runnable invalidate = () -> {
+            okBtn.setDisable(true);
+            lblPreview.setText("");
+            lv.getItems().clear();
+        };
+        scope.selectedToggleProperty().addListener((o, a, b) -> invalidate.run());
+        target.selectedToggleProperty().addListener((o, a, b) -> invalidate.run());
+        cbCat.valueProperty().addListener((o, a, b) -> invalidate.run());
+        spVersion.valueProperty().addListener((o, a, b) -> invalidate.run());
+        tfAsOf.textProperty().addListener((o, a, b) -> invalidate.run());
+
+        btnPreview.setOnAction(e -> {
+            invalidate.run();
+            Integer catId = null;
+            if (rbCategory.isSelected()) {
+                catId = findCategoryIdByName(cbCat.getValue());
+                if (catId <= 0) { warn("Choose a category."); return; }
+            }
+            QuestionStore.RollbackTarget tg;
+            if (rbVersion.isSelected()) {
+                tg = QuestionStore.RollbackTarget.version(spVersion.getValue());
+            } else {
+                // 只写日期 = 那一天结束时
+                String ts = tfAsOf.getText().strip();
+                if (ts.length() == 10) ts += " 23:59:59";
+                try {
+                    QuestionStore.TIMESTAMP.parse(ts);
+                } catch (DateTimeParseException bad) {
+                    warn("Use the format yyyy-MM-dd HH:mm:ss (UTC).");
+                    return;
                 }
+                tg = QuestionStore.RollbackTarget.asOf(ts);
             }
-        }
-
-        return out;
-    }
+            List<Integer> ids = catId == null ? selIds : null;
+            List<QuestionStore.RollbackChange> changes;
+            try (Connection c = db()) {
+                changes = store.previewRollback(c, ids, catId, tg);
+            } catch (SQLException ex) {
+                warn("Preview failed: " + ex.getMessage());
+                return;
+            }
+            List<String> lines = new ArrayList<>(changes.size());
+            for (QuestionStore.RollbackChange ch : changes) {
+                String text = ch.targetText() == null ? "" : ch.targetText();
+                lines.add("#" + ch.id() + "  v" + ch.currentVersion() + " \u2192 v" + ch.targetVersion() + "  "
+                        + (text.length() > 120 ? text.substring(0, 120) + "..." : text));
+            }
+            lv.getItems().setAll(lines);
+            lblPreview.setText(changes.size() + " question(s) will change (" + tg + ")");
+            planned[0] = new Plan(ids, catId, tg);
+            okBtn.setDisable(changes.isEmpty());
+        });
 
+        dlg.setResultConverter(bt -> bt == ButtonType.OK);
+        if (!dlg.showAndWait().orElse(false)) return;
 
+        Plan p = planned[0];
+        submitWrite(c -> store.rollback(c, p.ids(), p.categoryId(), p.target()), report -> {
+            similarity = null;
+            loadFromDatabase();
+            info(report.toString());
+        }, "Bulk rollback failed");
+    }
 
     // 回滚按钮：选中一行 → 回滚 → 刷新历史和主表
     private void onRollbackVersion(QuestionStore store, int questionId, TableView<QuestionStore.QuestionVersion> tbl) {
@@ -764,22 +1499,22 @@ public class UiApp extends Application {
         var res = alert.showAndWait().orElse(ButtonType.CANCEL);
         if (res != ButtonType.OK) return;
 
-        try (Connection c2 = Database.get()) {
-            boolean ok = store.rollbackToVersion(c2, questionId, sel.getVersion());
-            if (ok) {
-                //刷新历史列表
-                var refreshed = store.findVersions(c2, questionId);
-                tbl.setItems(FXCollections.observableArrayList(refreshed));
-                //刷新主页
-                loadFromDatabase();
-                info("Rolled back to v" + sel.getVersion() + " and created a new current version.");
-            } else {
+        submitWrite(c -> store.rollbackToVersion(c, questionId, sel.getVersion()), ok -> {
+            if (!ok) {
                 warn("Rollback failed: target version not found.");
+                return;
             }
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            warn("Rollback error: " + ex.getMessage());
-        }
+            if (similarity != null) similarity.put(questionId, sel.getText());
+            //刷新历史列表
+            try (Connection c2 = db()) {
+                tbl.setItems(FXCollections.observableArrayList(store.findVersions(c2, questionId)));
+            } catch (SQLException ex) {
+                warn("Rolled back, but reloading the history failed: " + ex.getMessage());
+            }
+            //刷新主页
+            loadFromDatabase();
+            info("Rolled back to v" + sel.getVersion() + " and created a new current version.");
+        }, "Rollback error");
     }
 
 
@@ -792,7 +1527,7 @@ public class UiApp extends Application {
             return;
         }
 
-        try (Connection c = Database.get()) {
+        try (Connection c = db()) {
             List<QuestionStore.QuestionVersion> versions = store.findVersions(c, selected.getId());
             if (versions.isEmpty()) {
                 warn("No version history found.");
@@ -843,4 +1578,162 @@ public class UiApp extends Application {
     }
 
 
+
+    // 在线备份 / 恢复（DatabaseBackup）：备份、恢复都在后台线程做，编辑照常
+    private void showBackups(Stage owner) {
+        Stage stage = new Stage();
+        stage.initOwner(owner);
+        stage.setTitle("Backups");
+
+        DatabaseBackup backup = DatabaseBackup.shared();
+        ListView<java.nio.file.Path> lvSnapshots = new ListView<>();
+        lvSnapshots.setCellFactory(lv -> new ListCell<>() {
+            @Override protected void updateItem(java.nio.file.Path p, boolean empty) {
+                super.updateItem(p, empty);
+                String size = "";
+                if (!empty && p != null) {
+                    try { size = String.format(Locale.ROOT, "  (%.1f MB)", Files.size(p) / 1048576.0); } catch (IOException ignore) {}
+                }
+                setText(empty || p == null ? null : p.getFileName() + size);
+            }
+        });
+        Label lblStatus = new Label("Snapshots in " + backup.dir());
+        lblStatus.setWrapText(true);
+        Runnable refresh = () -> {
+            try {
+                lvSnapshots.setItems(FXCollections.observableArrayList(backup.list()));
+            } catch (IOException ex) {
+                lblStatus.setText("Cannot list snapshots: " + ex.getMessage());
+            }
+        };
+        refresh.run();
+
+        Button btnNow = new Button("Back Up Now");
+        Button btnRestore = new Button("Restore Selected...");
+        btnNow.setOnAction(e -> {
+            btnNow.setDisable(true);
+            lblStatus.setText("Backing up...");
+            Thread.ofPlatform().daemon().name("db-backup").start(() -> {
+                String msg;
+                try {
+                    msg = "Backup " + backup.snapshot();
+                } catch (Exception ex) {
+                    msg = "Backup failed: " + ex.getMessage();
+                }
+                String result = msg;
+                Platform.runLater(() -> {
+                    lblStatus.setText(result);
+                    btnNow.setDisable(false);
+                    refresh.run();
+                });
+            });
+        });
+        btnRestore.setOnAction(e -> {
+            java.nio.file.Path sel = lvSnapshots.getSelectionModel().getSelectedItem();
+            if (sel == null) { warn("Select a snapshot."); return; }
+            Alert confirm = new Alert(Alert.AlertType.CONFIRMATION,
+                    "Replace the current question bank with " + sel.getFileName() + "?\n"
+                            + "A snapshot of the current state is taken first.", ButtonType.OK, ButtonType.CANCEL);
+            confirm.setHeaderText(null);
+            if (confirm.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) return;
+            // 恢复前还要先拍一份快照，和 Back Up Now 一样放到后台线程
+            btnNow.setDisable(true);
+            btnRestore.setDisable(true);
+            lblStatus.setText("Restoring " + sel.getFileName() + "...");
+            Thread.ofPlatform().daemon().name("db-restore").start(() -> {
+                DatabaseBackup.Result r = null;
+                String failure = null;
+                try {
+                    r = backup.restore(sel);
+                } catch (Exception ex) {
+                    failure = "Restore failed: " + ex.getMessage();
+                }
+                DatabaseBackup.Result restored = r;
+                String msg = failure;
+                Platform.runLater(() -> {
+                    if (restored != null) {
+                        similarity = null;
+                        data.clear();
+                        loadCategoriesFromDb();
+                        lblStatus.setText("Restored " + restored + ". Click Load to see the restored questions.");
+                    } else {
+                        lblStatus.setText(msg);
+                    }
+                    btnNow.setDisable(false);
+                    btnRestore.setDisable(false);
+                    refresh.run();
+                });
+            });
+        });
+
+        VBox box = new VBox(8, lvSnapshots, new HBox(10, btnNow, btnRestore), lblStatus);
+        box.setPadding(new Insets(10));
+        VBox.setVgrow(lvSnapshots, Priority.ALWAYS);
+        stage.setScene(new Scene(box, 560, 400));
+        stage.show();
+    }
+
+    //Diagnostics panel：显示 Metrics 的计时器和计数器
+    private void showDiagnostics(Stage owner) {
+        Stage stage = new Stage();
+        stage.initOwner(owner);
+        stage.setTitle("Diagnostics");
+
+        TableView<Metrics.Snapshot> tbl = new TableView<>();
+        String[][] cols = {
+                {"Timer", "name"}, {"Count", "count"}, {"Total ms", "totalMs"},
+                {"p50 ms", "p50Ms"}, {"p95 ms", "p95Ms"}, {"p99 ms", "p99Ms"}, {"Max ms", "maxMs"}
+        };
+        for (String[] col : cols) {
+            TableColumn<Metrics.Snapshot, Object> tc = new TableColumn<>(col[0]);
+            tc.setCellValueFactory(new PropertyValueFactory<>(col[1]));
+            tbl.getColumns().add(tc);
+        }
+        tbl.getColumns().get(0).setPrefWidth(220);
+
+        TextArea taCounters = new TextArea();
+        taCounters.setEditable(false);
+        taCounters.setPrefRowCount(6);
+
+        Runnable refresh = () -> {
+            tbl.setItems(FXCollections.observableArrayList(Metrics.timers()));
+            StringBuilder sb = new StringBuilder();
+            Metrics.counters().forEach((k, v) -> sb.append(k).append(" = ").append(v).append('\n'));
+            taCounters.setText(sb.toString());
+        };
+        refresh.run();
+
+        Button btnRefresh = new Button("Refresh");
+        btnRefresh.setOnAction(e -> refresh.run());
+        Button btnReset = new Button("Reset");
+        btnReset.setOnAction(e -> { Metrics.reset(); refresh.run(); });
+        Button btnCopy = new Button("Copy JSON");
+        btnCopy.setOnAction(e -> {
+            var cb = new javafx.scene.input.ClipboardContent();
+            cb.putString(Metrics.toJson());
+            javafx.scene.input.Clipboard.getSystemClipboard().setContent(cb);
+        });
+
+        TextArea taAudit = new TextArea();
+        taAudit.setEditable(false);
+        taAudit.setStyle("-fx-font-family: monospace;");
+        Runnable refreshAudit = () -> taAudit.setText(QueryAudit.isEnabled()
+                ? QueryAudit.report() : "SQL audit is off (start with --audit-sql).");
+        refreshAudit.run();
+        btnRefresh.setOnAction(e -> { refresh.run(); refreshAudit.run(); });
+
+        HBox buttons = new HBox(10, btnRefresh, btnReset, btnCopy);
+        TabPane tabs = new TabPane(
+                new Tab("Timers", new VBox(8, tbl, new Label("Counters"), taCounters)),
+                new Tab("SQL audit", taAudit));
+        tabs.setTabClosingPolicy(TabPane.TabClosingPolicy.UNAVAILABLE);
+        VBox box = new VBox(8, tabs, buttons);
+        box.setPadding(new Insets(10));
+        VBox.setVgrow(tbl, Priority.ALWAYS);
+        VBox.setVgrow(tabs, Priority.ALWAYS);
+
+        stage.setScene(new Scene(box, 900, 600));
+        stage.show();
+    }
+
 }
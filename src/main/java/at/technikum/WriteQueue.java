@@ -0,0 +1,238 @@
+package at.technikum;
+
+import org.sqlite.SQLiteErrorCode;
+import org.sqlite.SQLiteException;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+// 所有写操作排队交给一个写线程（单写者），攒一小批一起提交（group commit）
+//   写线程提交上一批期间排进来的操作会成为下一批（最多 -Dexam.write.batch=256 个），
+//   BEGIN IMMEDIATE 一次、COMMIT 一次：一批只付一次 fsync，进程里的写也不会互相抢锁
+//   -Dexam.write.groupMs=N 让写线程拿到第一个操作后再多等 N 毫秒凑批；调用方都是同步等结果时
+//   这段等待只会拖慢（压测里 2 ms 比 0 慢一倍），所以默认 0
+//   每个操作包在自己的 SAVEPOINT 里，失败只撤销它自己，同批的其他操作照常提交
+//   操作拿到的连接上 setAutoCommit / commit 是空操作、rollback 回到它的 SAVEPOINT，
+//   所以 QuestionStore / ExamStore 里自己管事务的方法可以原样放进来
+// 队列有界（-Dexam.write.queue=1024），满了提交方最多等 5 秒
+// 多进程共用一个库时靠 busy_timeout（Database 里设置）等锁；BEGIN IMMEDIATE 仍然 BUSY 就指数退避重试
+public final class WriteQueue implements AutoCloseable {
+
+    @FunctionalInterface
+    public interface Op<T> {
+        T run(Connection c) throws SQLException;
+    }
+
+    static final int GROUP_MS = Integer.getInteger("exam.write.groupMs", 0);
+    static final int MAX_BATCH = Integer.getInteger("exam.write.batch", 256);
+    static final int CAPACITY = Integer.getInteger("exam.write.queue", 1024);
+    static final int BEGIN_RETRIES = 8;
+    static final long BACKOFF_START_MS = 10;
+
+    private static volatile WriteQueue shared;
+
+    private record Task<T>(Op<T> op, CompletableFuture<T> future) {}
+
+    private final BlockingQueue<Task<?>> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final Thread writer;
+    private volatile boolean closed;
+
+    public WriteQueue() {
+        writer = Thread.ofPlatform().daemon().name("db-writer").start(this::loop);
+    }
+
+    public static WriteQueue shared() {
+        WriteQueue q = shared;
+        if (q != null) return q;
+        synchronized (WriteQueue.class) {
+            if (shared == null) shared = new WriteQueue();
+            return shared;
+        }
+    }
+
+    // 排队执行，写线程提交之后 future 才完成
+    public <T> CompletableFuture<T> submit(Op<T> op) {
+        CompletableFuture<T> f = new CompletableFuture<>();
+        if (closed) {
+            f.completeExceptionally(new SQLException("Write queue is closed"));
+            return f;
+        }
+        try {
+            if (!queue.offer(new Task<>(op, f), 5, TimeUnit.SECONDS)) {
+                Metrics.count("write.rejected");
+                f.completeExceptionally(new SQLException("Write queue is full"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            f.completeExceptionally(new SQLException("Interrupted while queueing a write", e));
+        }
+        return f;
+    }
+
+    // 同步调用方用：提交并等结果，SQLException 原样抛出
+    public <T> T call(Op<T> op) throws SQLException {
+        try {
+            return submit(op).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException sql) throw sql;
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new SQLException(e.getCause());
+        }
+    }
+
+    private void loop() {
+        Connection c = null;
+        List<Task<?>> batch = new ArrayList<>(MAX_BATCH);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Task<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(GROUP_MS);
+                while (batch.size() < MAX_BATCH) {
+                    long left = deadline - System.nanoTime();
+                    Task<?> next = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                if (c == null || c.isClosed()) c = Database.get();
+                runBatch(c, batch);
+                // 这一批的操作都结束了，它们用过的缓存语句可以淘汰了
+                StatementCache.of(c).endLease();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (SQLException e) {
+                // 连不上库：这一批都失败，下一批重新连
+                for (Task<?> t : batch) t.future.completeExceptionally(e);
+                closeQuietly(c);
+                c = null;
+            } finally {
+                batch.clear();
+            }
+        }
+        for (Task<?> t; (t = queue.poll()) != null; ) t.future.completeExceptionally(new SQLException("Write queue is closed"));
+        closeQuietly(c);
+    }
+
+    private void runBatch(Connection c, List<Task<?>> batch) throws SQLException {
+        long t = Metrics.start();
+        Object[] results = new Object[batch.size()];
+        Throwable[] errors = new Throwable[batch.size()];
+        try (Statement st = c.createStatement()) {
+            begin(st);
+            Connection view = opView(c, st);
+            for (int i = 0; i < batch.size(); i++) {
+                st.execute("SAVEPOINT op");
+                try {
+                    results[i] = batch.get(i).op.run(view);
+                    st.execute("RELEASE op");
+                } catch (Throwable e) {
+                    errors[i] = e;
+                    st.execute("ROLLBACK TO op");
+                    st.execute("RELEASE op");
+                }
+            }
+            try {
+                st.execute("COMMIT");
+            } catch (SQLException e) {
+                try { st.execute("ROLLBACK"); } catch (SQLException ignore) {}
+                throw e;
+            }
+        }
+        Metrics.count("write.ops", batch.size());
+        Metrics.count("write.commits");
+        Metrics.stop("write.batch", t);
+        for (int i = 0; i < batch.size(); i++) complete(batch.get(i), results[i], errors[i]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void complete(Task<T> task, Object result, Throwable error) {
+        if (error != null) task.future.completeExceptionally(error);
+        else task.future.complete((T) result);
+    }
+
+    // 别的进程正拿着写锁、busy_timeout 也等完了：退避后重试
+    private static void begin(Statement st) throws SQLException {
+        long backoff = BACKOFF_START_MS;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                st.execute("BEGIN IMMEDIATE");
+                return;
+            } catch (SQLException e) {
+                if (!isBusy(e) || attempt >= BEGIN_RETRIES) throw e;
+                Metrics.count("write.busyRetries");
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                backoff = Math.min(backoff * 2, 1000);
+            }
+        }
+    }
+
+    static boolean isBusy(SQLException e) {
+        if (e instanceof SQLiteException se) {
+            SQLiteErrorCode code = se.getResultCode();
+            return code.code == SQLiteErrorCode.SQLITE_BUSY.code || (code.code & 0xFF) == SQLiteErrorCode.SQLITE_BUSY.code
+                    || (code.code & 0xFF) == SQLiteErrorCode.SQLITE_LOCKED.code;
+        }
+        return e.getErrorCode() == SQLiteErrorCode.SQLITE_BUSY.code;
+    }
+
+    // 交给操作的连接：事务由写线程管
+    private static Connection opView(Connection real, Statement st) {
+        return (Connection) Proxy.newProxyInstance(WriteQueue.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, m, args) -> {
+                    switch (m.getName()) {
+                        case "getAutoCommit" -> { return true; }
+                        case "setAutoCommit", "commit", "close" -> { return null; }
+                        case "rollback" -> {
+                            if (args == null) {
+                                st.execute("ROLLBACK TO op");
+                                return null;
+                            }
+                        }
+                        default -> { }
+                    }
+                    try {
+                        return m.invoke(real, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private static void closeQuietly(Connection c) {
+        if (c == null) return;
+        try {
+            c.close();
+        } catch (SQLException ignore) {}
+    }
+
+    // 不再接新操作；已经排队的写完再停
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (WriteQueue.class) {
+            if (shared == this) shared = null;
+        }
+        try {
+            writer.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
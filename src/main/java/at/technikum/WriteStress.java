@@ -0,0 +1,169 @@
+package at.technikum;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 多进程写入压测：同时起几个 JVM 往同一个库里存题（insert + 关联分类，和界面里保存一样）
+//   direct  每个线程从连接池借连接直接写，自动提交（引入 WriteQueue 之前的写法）
+//   queue   每个进程的写都交给 WriteQueue
+// 每个进程报告写了多少、遇到几次 SQLITE_BUSY / 其他错误，最后汇总成 writes/s
+// 会往 -Dexam.db 指向的库里插题目（正文以 "write-stress " 开头），请在副本上跑
+//   App --write-stress [--procs=4] [--threads=4] [--seconds=10] [--mode=direct|queue|both]
+public final class WriteStress {
+
+    static final String PREFIX = "write-stress ";
+    static final String CATEGORY_SQL = "SELECT id FROM Categories ORDER BY id LIMIT 2";
+
+    public static final class Options {
+        public int procs = 4;
+        public int threads = 4;
+        public int seconds = 10;
+        public String mode = "both";
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            for (String a : args) {
+                if (a.startsWith("--procs=")) o.procs = Integer.parseInt(a.substring("--procs=".length()));
+                else if (a.startsWith("--threads=")) o.threads = Integer.parseInt(a.substring("--threads=".length()));
+                else if (a.startsWith("--seconds=")) o.seconds = Integer.parseInt(a.substring("--seconds=".length()));
+                else if (a.startsWith("--mode=")) o.mode = a.substring("--mode=".length());
+            }
+            return o;
+        }
+    }
+
+    public static final class Report {
+        public final String mode;
+        public final int procs;
+        public long writes;
+        public long busy;
+        public long errors;
+        public double seconds;
+
+        Report(String mode, int procs) {
+            this.mode = mode;
+            this.procs = procs;
+        }
+
+        public double writesPerSecond() {
+            return seconds <= 0 ? 0 : writes / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-6s %d procs: %,d writes in %.1f s = %,.0f writes/s, %d busy, %d other errors",
+                    mode, procs, writes, seconds, writesPerSecond(), busy, errors);
+        }
+    }
+
+    private WriteStress() {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--worker")) {
+            worker(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]), Long.parseLong(args[4]));
+            return;
+        }
+        Options o = Options.parse(args);
+        // 先在父进程里做完迁移，子进程不用抢着迁移
+        try (Connection c = Database.get()) {
+            c.isValid(1);
+        }
+        List<String> modes = o.mode.equals("both") ? List.of("direct", "queue") : List.of(o.mode);
+        for (String mode : modes) System.out.println(run(o, mode));
+    }
+
+    public static Report run(Options o, String mode) throws IOException, InterruptedException {
+        // 子进程 JVM 启动时间不一样，约好同一时刻开始
+        long startAt = System.currentTimeMillis() + 2000;
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> children = new ArrayList<>();
+        for (int i = 0; i < o.procs; i++) {
+            List<String> cmd = new ArrayList<>(List.of(java, "-cp", System.getProperty("java.class.path"),
+                    "-Dexam.db=" + Database.file()));
+            for (String p : List.of("exam.db.busyTimeout", "exam.write.groupMs", "exam.write.batch")) {
+                if (System.getProperty(p) != null) cmd.add("-D" + p + "=" + System.getProperty(p));
+            }
+            cmd.addAll(List.of(WriteStress.class.getName(), "--worker", mode,
+                    Integer.toString(o.threads), Integer.toString(o.seconds), Long.toString(startAt)));
+            children.add(new ProcessBuilder(cmd).redirectErrorStream(true).start());
+        }
+        Report r = new Report(mode, o.procs);
+        for (Process p : children) {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+                for (String line; (line = in.readLine()) != null; ) {
+                    if (!line.startsWith("RESULT ")) {
+                        System.err.println(line);
+                        continue;
+                    }
+                    String[] f = line.split(" ");
+                    r.writes += Long.parseLong(f[1]);
+                    r.busy += Long.parseLong(f[2]);
+                    r.errors += Long.parseLong(f[3]);
+                    r.seconds = Math.max(r.seconds, Double.parseDouble(f[4]));
+                }
+            }
+            p.waitFor();
+        }
+        return r;
+    }
+
+    private static void worker(String mode, int threads, int seconds, long startAt) throws Exception {
+        QuestionStore store = new QuestionStore();
+        List<Integer> cats = new ArrayList<>();
+        try (Connection c = Database.get(); Statement st = c.createStatement(); ResultSet rs = st.executeQuery(CATEGORY_SQL)) {
+            while (rs.next()) cats.add(rs.getInt(1));
+        }
+        boolean queued = mode.equals("queue");
+        AtomicLong writes = new AtomicLong(), busy = new AtomicLong(), errors = new AtomicLong();
+        long pid = ProcessHandle.current().pid();
+
+        Thread.sleep(Math.max(0, startAt - System.currentTimeMillis()));
+        long t0 = System.nanoTime();
+        long end = t0 + seconds * 1_000_000_000L;
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            int thread = i;
+            workers.add(Thread.ofPlatform().start(() -> {
+                for (int n = 0; System.nanoTime() < end; n++) {
+                    String text = PREFIX + pid + "-" + thread + "-" + n;
+                    try {
+                        if (queued) {
+                            WriteQueue.shared().call(c -> save(store, c, text, cats));
+                        } else {
+                            try (Connection c = ConnectionPool.shared().get()) {
+                                save(store, c, text, cats);
+                            }
+                        }
+                        writes.incrementAndGet();
+                    } catch (SQLException e) {
+                        (WriteQueue.isBusy(e) ? busy : errors).incrementAndGet();
+                    } catch (RuntimeException e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread w : workers) w.join();
+        double elapsed = (System.nanoTime() - t0) / 1e9;
+        if (queued) WriteQueue.shared().close();
+        ConnectionPool.shared().close();
+        System.out.printf(Locale.ROOT, "RESULT %d %d %d %.3f%n", writes.get(), busy.get(), errors.get(), elapsed);
+    }
+
+    private static int save(QuestionStore store, Connection c, String text, List<Integer> cats) throws SQLException {
+        int id = store.insert(c, text, "short", "easy");
+        store.relinkCategories(c, id, cats);
+        return id;
+    }
+}
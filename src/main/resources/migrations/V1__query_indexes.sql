@@ -0,0 +1,21 @@
+-- 按分类抽题 / 找候选题时要按 category_id 查 Question_Categories（主键是 question_id 在前，用不上）
+CREATE INDEX IF NOT EXISTS idx_qc_category ON Question_Categories(category_id, question_id);
+
+-- 旧视图先 GROUP BY 整张 QuestionVersions 再 JOIN，每次都全表扫描；
+-- 改成按题目用 uq_qv_qid_ver 取最新版本，结果相同
+DROP VIEW IF EXISTS QuestionLatest;
+
+CREATE VIEW QuestionLatest AS
+SELECT
+  q.id                AS question_id,
+  v.version           AS latest_version,
+  v.text              AS text,          -- 最新题干
+  q.type,
+  q.difficulty,
+  q.topic,
+  q.metadata,
+  v.created_at
+FROM Questions q
+JOIN QuestionVersions v
+  ON v.question_id = q.id
+ AND v.version = (SELECT MAX(version) FROM QuestionVersions WHERE question_id = q.id);
@@ -0,0 +1,2 @@
+-- Exam_Questions 的主键是 exam_id 在前：按 question_id 删除、以及删 Questions 时的外键检查都要全表扫描
+CREATE INDEX IF NOT EXISTS idx_eq_question ON Exam_Questions(question_id);
@@ -0,0 +1,34 @@
+-- 每道题的曝光统计：被放进过几份试卷、最近一次是哪天；由 Exam_Questions 上的触发器增量维护
+CREATE TABLE IF NOT EXISTS QuestionUsage (
+  question_id  INTEGER PRIMARY KEY,
+  times_used   INTEGER NOT NULL DEFAULT 0,
+  last_used    TEXT
+);
+
+-- 已有的试卷先统计一遍
+INSERT OR REPLACE INTO QuestionUsage (question_id, times_used, last_used)
+SELECT eq.question_id, COUNT(*), MAX(e.created_at)
+FROM Exam_Questions eq
+LEFT JOIN Exams e ON e.id = eq.exam_id
+GROUP BY eq.question_id;
+
+CREATE TRIGGER IF NOT EXISTS trg_eq_insert_usage
+AFTER INSERT ON Exam_Questions
+BEGIN
+  INSERT INTO QuestionUsage (question_id, times_used, last_used)
+  VALUES (NEW.question_id, 1, (SELECT created_at FROM Exams WHERE id = NEW.exam_id))
+  ON CONFLICT (question_id) DO UPDATE SET
+    times_used = times_used + 1,
+    last_used  = MAX(COALESCE(last_used, ''), COALESCE(excluded.last_used, ''));
+END;
+
+CREATE TRIGGER IF NOT EXISTS trg_eq_delete_usage
+AFTER DELETE ON Exam_Questions
+BEGIN
+  UPDATE QuestionUsage
+  SET times_used = MAX(times_used - 1, 0),
+      last_used  = (SELECT MAX(e.created_at)
+                    FROM Exam_Questions eq JOIN Exams e ON e.id = eq.exam_id
+                    WHERE eq.question_id = OLD.question_id)
+  WHERE question_id = OLD.question_id;
+END;
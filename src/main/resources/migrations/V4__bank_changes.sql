@@ -0,0 +1,32 @@
+-- 组卷用的内存索引（BankIndex）靠它判断要不要重建：
+-- 新增 / 编辑题目已经会让 QuestionVersions 的最大 id 变大，这里只补上删除题目和分类关联的增删改
+CREATE TABLE IF NOT EXISTS BankChanges (
+  id  INTEGER PRIMARY KEY CHECK (id = 1),
+  n   INTEGER NOT NULL
+);
+
+INSERT OR IGNORE INTO BankChanges (id, n) VALUES (1, 0);
+
+CREATE TRIGGER IF NOT EXISTS trg_bank_question_delete
+AFTER DELETE ON Questions
+BEGIN
+  UPDATE BankChanges SET n = n + 1 WHERE id = 1;
+END;
+
+CREATE TRIGGER IF NOT EXISTS trg_bank_link_insert
+AFTER INSERT ON Question_Categories
+BEGIN
+  UPDATE BankChanges SET n = n + 1 WHERE id = 1;
+END;
+
+CREATE TRIGGER IF NOT EXISTS trg_bank_link_delete
+AFTER DELETE ON Question_Categories
+BEGIN
+  UPDATE BankChanges SET n = n + 1 WHERE id = 1;
+END;
+
+CREATE TRIGGER IF NOT EXISTS trg_bank_link_update
+AFTER UPDATE ON Question_Categories
+BEGIN
+  UPDATE BankChanges SET n = n + 1 WHERE id = 1;
+END;
@@ -0,0 +1,12 @@
+-- 题目附件（图表、代码截图、公式图片）：按内容的 SHA-256 只存一份
+-- 题干里用 [[image:<hash>]] 引用，所以 QuestionVersions 的每个版本只多出 64 个字符，不会复制图片本身
+CREATE TABLE IF NOT EXISTS Attachments (
+  id          INTEGER PRIMARY KEY AUTOINCREMENT,
+  hash        TEXT NOT NULL UNIQUE,   -- SHA-256，小写十六进制
+  mime        TEXT NOT NULL,
+  width       INTEGER,
+  height      INTEGER,
+  size        INTEGER NOT NULL,
+  data        BLOB NOT NULL,
+  created_at  TEXT DEFAULT CURRENT_TIMESTAMP
+);
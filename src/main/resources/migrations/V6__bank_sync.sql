@@ -0,0 +1,43 @@
+-- 合并另一位老师的题库文件（BankSync）
+-- BankInfo：本库的随机标识。别的库同步本库时用它认出来源，文件拷贝 / 改名后还是同一个来源
+CREATE TABLE IF NOT EXISTS BankInfo (
+  id    INTEGER PRIMARY KEY CHECK (id = 1),
+  uuid  TEXT NOT NULL
+);
+
+INSERT OR IGNORE INTO BankInfo (id, uuid) VALUES (1, lower(hex(randomblob(16))));
+
+-- 每个来源上次同步到哪里：来源 QuestionVersions 的最大 id、来源 BankChanges 计数（-1 = 来源没有这张表）
+CREATE TABLE IF NOT EXISTS SyncState (
+  source        TEXT PRIMARY KEY,
+  path          TEXT,
+  version_mark  INTEGER NOT NULL DEFAULT 0,
+  links_mark    INTEGER NOT NULL DEFAULT -1,
+  synced_at     TEXT
+);
+
+-- 来源题目 -> 本库题目；hash 是上次同步时来源那边的内容 hash（两边共同的基线）
+CREATE TABLE IF NOT EXISTS SyncMap (
+  source          TEXT NOT NULL,
+  remote_id       INTEGER NOT NULL,
+  local_id        INTEGER NOT NULL,
+  remote_version  INTEGER,
+  hash            TEXT NOT NULL,
+  PRIMARY KEY (source, remote_id)
+);
+
+-- 两边都改过的题：本库内容不动，记下来人工处理
+CREATE TABLE IF NOT EXISTS SyncConflicts (
+  id              INTEGER PRIMARY KEY AUTOINCREMENT,
+  source          TEXT NOT NULL,
+  local_id        INTEGER NOT NULL,
+  remote_id       INTEGER NOT NULL,
+  local_version   INTEGER,
+  remote_version  INTEGER,
+  local_hash      TEXT,
+  remote_hash     TEXT,
+  detected_at     TEXT DEFAULT (datetime('now')),
+  resolved        INTEGER NOT NULL DEFAULT 0
+);
+
+CREATE INDEX IF NOT EXISTS idx_sync_conflicts_open ON SyncConflicts(resolved, local_id);
@@ -0,0 +1,73 @@
+-- 每个 分类 × 难度 有多少道题：组卷对话框显示可用数量、校验蓝图都只读这张小表，不用跑抽题查询
+-- 由 Questions / Question_Categories 上的触发器增量维护；难度按原样存（抽题也是按原样比较），NULL 记成 ''
+-- 删题时先删关联还是先删题都对：关联的触发器只在题目还在时计数，题目的触发器只算还挂着的关联
+-- （导入时先插关联再插题也一样）
+CREATE TABLE IF NOT EXISTS CategoryDifficultyCounts (
+  category_id  INTEGER NOT NULL,
+  difficulty   TEXT    NOT NULL,
+  n            INTEGER NOT NULL DEFAULT 0,
+  PRIMARY KEY (category_id, difficulty)
+) WITHOUT ROWID;
+
+-- 已有的题先统计一遍
+INSERT OR REPLACE INTO CategoryDifficultyCounts (category_id, difficulty, n)
+SELECT qc.category_id, COALESCE(q.difficulty, ''), COUNT(*)
+FROM Question_Categories qc
+JOIN Questions q ON q.id = qc.question_id
+GROUP BY qc.category_id, COALESCE(q.difficulty, '');
+
+CREATE TRIGGER IF NOT EXISTS trg_counts_link_insert
+AFTER INSERT ON Question_Categories
+BEGIN
+  INSERT INTO CategoryDifficultyCounts (category_id, difficulty, n)
+  SELECT NEW.category_id, COALESCE(difficulty, ''), 1 FROM Questions WHERE id = NEW.question_id
+  ON CONFLICT (category_id, difficulty) DO UPDATE SET n = n + 1;
+END;
+
+CREATE TRIGGER IF NOT EXISTS trg_counts_link_delete
+AFTER DELETE ON Question_Categories
+BEGIN
+  UPDATE CategoryDifficultyCounts SET n = MAX(n - 1, 0)
+  WHERE category_id = OLD.category_id
+    AND difficulty = (SELECT COALESCE(difficulty, '') FROM Questions WHERE id = OLD.question_id);
+END;
+
+CREATE TRIGGER IF NOT EXISTS trg_counts_link_update
+AFTER UPDATE OF question_id, category_id ON Question_Categories
+BEGIN
+  UPDATE CategoryDifficultyCounts SET n = MAX(n - 1, 0)
+  WHERE category_id = OLD.category_id
+    AND difficulty = (SELECT COALESCE(difficulty, '') FROM Questions WHERE id = OLD.question_id);
+  INSERT INTO CategoryDifficultyCounts (category_id, difficulty, n)
+  SELECT NEW.category_id, COALESCE(difficulty, ''), 1 FROM Questions WHERE id = NEW.question_id
+  ON CONFLICT (category_id, difficulty) DO UPDATE SET n = n + 1;
+END;
+
+CREATE TRIGGER IF NOT EXISTS trg_counts_question_insert
+AFTER INSERT ON Questions
+BEGIN
+  INSERT INTO CategoryDifficultyCounts (category_id, difficulty, n)
+  SELECT category_id, COALESCE(NEW.difficulty, ''), 1 FROM Question_Categories WHERE question_id = NEW.id
+  ON CONFLICT (category_id, difficulty) DO UPDATE SET n = n + 1;
+END;
+
+CREATE TRIGGER IF NOT EXISTS trg_counts_question_delete
+AFTER DELETE ON Questions
+BEGIN
+  UPDATE CategoryDifficultyCounts SET n = MAX(n - 1, 0)
+  WHERE difficulty = COALESCE(OLD.difficulty, '')
+    AND category_id IN (SELECT category_id FROM Question_Categories WHERE question_id = OLD.id);
+END;
+
+-- 改难度：这道题的每个分类从旧难度挪到新难度
+CREATE TRIGGER IF NOT EXISTS trg_counts_question_update
+AFTER UPDATE OF difficulty ON Questions
+WHEN OLD.difficulty IS NOT NEW.difficulty
+BEGIN
+  UPDATE CategoryDifficultyCounts SET n = MAX(n - 1, 0)
+  WHERE difficulty = COALESCE(OLD.difficulty, '')
+    AND category_id IN (SELECT category_id FROM Question_Categories WHERE question_id = NEW.id);
+  INSERT INTO CategoryDifficultyCounts (category_id, difficulty, n)
+  SELECT category_id, COALESCE(NEW.difficulty, ''), 1 FROM Question_Categories WHERE question_id = NEW.id
+  ON CONFLICT (category_id, difficulty) DO UPDATE SET n = n + 1;
+END;
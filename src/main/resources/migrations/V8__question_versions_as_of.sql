@@ -0,0 +1,4 @@
+-- 按时间点重建题库（QuestionStore.streamAsOf）：每道题在那个时刻之前的最后一个版本
+-- 窗口按 (question_id, created_at, rowid) 排，正好是这个索引的顺序（索引项末尾带 rowid），
+-- 整个历史只顺着索引扫一遍、不用排序，命中的版本再按 rowid 回表取正文
+CREATE INDEX IF NOT EXISTS idx_qv_qid_created ON QuestionVersions(question_id, created_at);
@@ -0,0 +1,70 @@
+-- exam_manager.db 的表结构（与仓库里自带的数据库文件一致）
+CREATE TABLE IF NOT EXISTS Questions (id INTEGER PRIMARY KEY AUTOINCREMENT, text TEXT NOT NULL, type TEXT, difficulty TEXT, topic TEXT, metadata TEXT, created_at TEXT DEFAULT CURRENT_TIMESTAMP, updated_at TEXT DEFAULT CURRENT_TIMESTAMP, version INTEGER DEFAULT 1);
+
+CREATE TABLE IF NOT EXISTS Categories (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL);
+
+CREATE TABLE IF NOT EXISTS Question_Categories (question_id INTEGER NOT NULL, category_id INTEGER NOT NULL, FOREIGN KEY (question_id) REFERENCES Questions(id), FOREIGN KEY (category_id) REFERENCES Categories(id), PRIMARY KEY (question_id, category_id));
+
+CREATE TABLE IF NOT EXISTS Exams (id INTEGER PRIMARY KEY AUTOINCREMENT, title TEXT NOT NULL, created_at TEXT DEFAULT CURRENT_TIMESTAMP);
+
+CREATE TABLE IF NOT EXISTS Exam_Questions (exam_id INTEGER NOT NULL, question_id INTEGER NOT NULL, order_index INTEGER, FOREIGN KEY (exam_id) REFERENCES Exams(id), FOREIGN KEY (question_id) REFERENCES Questions(id), PRIMARY KEY (exam_id, question_id));
+
+CREATE TABLE IF NOT EXISTS QuestionVersions (
+  id           INTEGER PRIMARY KEY AUTOINCREMENT,
+  question_id  INTEGER NOT NULL,     -- 指向 Questions.id
+  version      INTEGER NOT NULL,     -- 版本号：1,2,3...
+  text         TEXT,
+  type         TEXT,
+  difficulty   TEXT,
+  topic        TEXT,
+  metadata     TEXT,
+  created_at   TEXT DEFAULT (datetime('now')),
+  FOREIGN KEY (question_id) REFERENCES Questions(id)
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS uq_qv_qid_ver
+ON QuestionVersions(question_id, version);
+
+CREATE TRIGGER IF NOT EXISTS trg_q_insert_versions
+AFTER INSERT ON Questions
+BEGIN
+  INSERT INTO QuestionVersions (question_id, version, text, type, difficulty, topic, metadata)
+  SELECT
+    NEW.id,
+    1,
+    NEW.text, NEW.type, NEW.difficulty, NEW.topic, NEW.metadata
+  WHERE NOT EXISTS (
+    SELECT 1 FROM QuestionVersions
+    WHERE question_id = NEW.id AND version = 1
+  );
+END;
+
+CREATE TRIGGER IF NOT EXISTS trg_q_update_versions
+AFTER UPDATE OF text, type, difficulty, topic, metadata ON Questions
+BEGIN
+  INSERT INTO QuestionVersions (question_id, version, text, type, difficulty, topic, metadata)
+  SELECT
+    NEW.id,
+    COALESCE((SELECT MAX(version) FROM QuestionVersions WHERE question_id = NEW.id), 0) + 1,
+    NEW.text, NEW.type, NEW.difficulty, NEW.topic, NEW.metadata;
+END;
+
+CREATE VIEW IF NOT EXISTS QuestionLatest AS
+SELECT
+  q.id                AS question_id,
+  v.version           AS latest_version,
+  v.text              AS text,          -- 最新题干
+  q.type,
+  q.difficulty,
+  q.topic,
+  q.metadata,
+  v.created_at
+FROM Questions q
+JOIN (
+  SELECT question_id, MAX(version) AS version
+  FROM QuestionVersions
+  GROUP BY question_id
+) lv
+  ON lv.question_id = q.id
+JOIN QuestionVersions v
+  ON v.question_id = lv.question_id AND v.version = lv.version;